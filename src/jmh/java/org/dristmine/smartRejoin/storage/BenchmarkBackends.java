@@ -0,0 +1,58 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Creates the backends under benchmark. New backends only need a case here to be covered by every benchmark.
+ */
+final class BenchmarkBackends {
+
+    static final Logger LOGGER = LoggerFactory.getLogger("SmartRejoin-Benchmark");
+
+    private BenchmarkBackends() {
+    }
+
+    /**
+     * @param type One of yaml, yaml-sharded, sqlite, sqlite-durable, sqlite-throughput, sqlite-sharded, journal, mmap or jdbc-sqlite
+     */
+    static StorageBackend create(String type, Path directory) {
+        return switch (type) {
+            // Write-behind, as a per-write rewrite of data.yml would only measure file copying
+            case "yaml" -> new YAMLStorageBackend(LOGGER, directory, true, 5000, 1000);
+            case "yaml-sharded" -> new ShardedYAMLStorageBackend(LOGGER, directory, true, 5000, 1000);
+            case "sqlite" -> new SQLiteStorageBackend(LOGGER, directory);
+            // The other pragma profiles; "sqlite" uses the default, balanced
+            case "sqlite-durable" -> new SQLiteStorageBackend(LOGGER, directory, 500, 50, 10000, SQLiteProfile.DURABLE);
+            case "sqlite-throughput" -> new SQLiteStorageBackend(LOGGER, directory, 500, 50, 10000, SQLiteProfile.THROUGHPUT);
+            case "sqlite-sharded" -> new ShardedSQLiteStorageBackend(LOGGER, directory, 8, 500, 50, 10000);
+            case "journal" -> new JournalStorageBackend(LOGGER, directory, false, 2.0, 1024 * 1024);
+            case "mmap" -> new MappedStorageBackend(LOGGER, directory);
+            // The shared JDBC backend against an embedded database, without its near-cache
+            case "jdbc-sqlite" -> new JdbcStorageBackend(LOGGER, "jdbc:sqlite:" + directory.resolve("shared.db"), "", "",
+                    "smartrejoin_last_server", 4, 5000, 200, 50, 10000, 0, 0);
+            default -> throw new IllegalArgumentException("Unknown backend " + type);
+        };
+    }
+
+    static Path createDirectory() throws IOException {
+        return Files.createTempDirectory("smartrejoin-bench");
+    }
+
+    static void deleteRecursively(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
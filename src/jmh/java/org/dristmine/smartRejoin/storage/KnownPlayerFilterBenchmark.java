@@ -0,0 +1,103 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup cost of the known players filter after it has grown past its first stage.
+ * <p>
+ * The setup also checks the filter: every added player must be found again, also after a save and
+ * load, and the false-positive rate measured over {@code players} players that were never added must
+ * stay within the target. The trial fails otherwise, and prints the measured rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class KnownPlayerFilterBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000000"})
+    public int players;
+
+    // Ten times smaller than players, so the filter grows through several stages
+    @Param({"100000"})
+    public long expectedPlayers;
+
+    @Param({"0.01"})
+    public double falsePositiveRate;
+
+    private KnownPlayerFilter filter;
+    private final UUID[] added = new UUID[PROBES];
+    private final UUID[] unseen = new UUID[PROBES];
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        filter = new KnownPlayerFilter(expectedPlayers, falsePositiveRate);
+        UUID[] all = new UUID[players];
+        for (int i = 0; i < players; i++) {
+            all[i] = UUID.randomUUID();
+            filter.add(all[i]);
+        }
+
+        File file = File.createTempFile("known_players", ".bloom");
+        try {
+            filter.save(file, "benchmark");
+            KnownPlayerFilter loaded = KnownPlayerFilter.load(file, "benchmark", expectedPlayers, falsePositiveRate);
+            for (UUID playerUuid : all) {
+                if (!filter.mightContain(playerUuid) || loaded == null || !loaded.mightContain(playerUuid)) {
+                    throw new IllegalStateException("Added player " + playerUuid + " is not found");
+                }
+            }
+        } finally {
+            file.delete();
+        }
+
+        long falsePositives = 0;
+        for (int i = 0; i < players; i++) {
+            if (filter.mightContain(UUID.randomUUID())) {
+                falsePositives++;
+            }
+        }
+        double measured = (double) falsePositives / players;
+        System.out.printf("%nKnown players filter: %s, measured false-positive rate %.4f%%%n",
+                filter.getStatistics(), measured * 100);
+        if (measured > falsePositiveRate) {
+            throw new IllegalStateException("False-positive rate " + measured + " is above the target " + falsePositiveRate);
+        }
+
+        System.arraycopy(all, 0, added, 0, PROBES);
+        for (int i = 0; i < PROBES; i++) {
+            unseen[i] = UUID.randomUUID();
+        }
+    }
+
+    @Benchmark
+    public boolean lookupAdded() {
+        return filter.mightContain(added[next++ & (PROBES - 1)]);
+    }
+
+    @Benchmark
+    public boolean lookupUnseen() {
+        return filter.mightContain(unseen[next++ & (PROBES - 1)]);
+    }
+}
@@ -0,0 +1,88 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to migrate {@code records} players into an empty backend.
+ * <p>
+ * The 'synthetic' source measures the target's import path alone. The 'yaml' source streams a real
+ * data.yml, which is what the startup migration from YAML does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MigrationBenchmark {
+
+    @Param({"sqlite", "sqlite-sharded", "journal", "mmap", "yaml", "jdbc-sqlite"})
+    public String target;
+
+    @Param({"synthetic", "yaml"})
+    public String source;
+
+    @Param({"100000", "1000000"})
+    public int records;
+
+    private Path sourceDirectory;
+    private StorageBackend sourceBackend;
+    private Path targetDirectory;
+    private StorageBackend targetBackend;
+
+    @Setup(Level.Trial)
+    public void prepareSource() throws Exception {
+        SyntheticSource synthetic = new SyntheticSource(records, 64);
+        if ("yaml".equals(source)) {
+            sourceDirectory = BenchmarkBackends.createDirectory();
+            StorageBackend writer = BenchmarkBackends.create("yaml", sourceDirectory);
+            writer.initialize();
+            writer.migrateFrom(synthetic, (current, total, message) -> {
+            });
+            writer.shutdown();
+            // Not initialized, so data.yml is streamed instead of loaded
+            sourceBackend = BenchmarkBackends.create("yaml", sourceDirectory);
+        } else {
+            sourceBackend = synthetic;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareTarget() throws Exception {
+        targetDirectory = BenchmarkBackends.createDirectory();
+        targetBackend = BenchmarkBackends.create(target, targetDirectory);
+        targetBackend.initialize();
+    }
+
+    @Benchmark
+    public int migrate() throws Exception {
+        return targetBackend.migrateFrom(sourceBackend, (current, total, message) -> {
+        });
+    }
+
+    @TearDown(Level.Invocation)
+    public void dropTarget() throws Exception {
+        targetBackend.shutdown();
+        BenchmarkBackends.deleteRecursively(targetDirectory);
+    }
+
+    @TearDown(Level.Trial)
+    public void dropSource() throws Exception {
+        BenchmarkBackends.deleteRecursively(sourceDirectory);
+    }
+}
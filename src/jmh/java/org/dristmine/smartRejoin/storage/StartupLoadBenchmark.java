@@ -0,0 +1,76 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from opening a backend holding {@code records} players until it has answered its first lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StartupLoadBenchmark {
+
+    @Param({"yaml", "yaml-sharded", "sqlite", "journal", "mmap"})
+    public String backend;
+
+    @Param({"10000", "1000000", "5000000"})
+    public int records;
+
+    private Path directory;
+    private UUID probe;
+    private StorageBackend opened;
+
+    @Setup(Level.Trial)
+    public void populate() throws Exception {
+        directory = BenchmarkBackends.createDirectory();
+        StorageBackend storage = BenchmarkBackends.create(backend, directory);
+        storage.initialize();
+        storage.migrateFrom(new SyntheticSource(records, 64), (current, total, message) -> {
+        });
+        storage.shutdown();
+
+        UUID[] first = new UUID[1];
+        new SyntheticSource(1, 1).forEachEntry((uuid, server) -> first[0] = uuid);
+        probe = first[0];
+    }
+
+    @Benchmark
+    public Optional<String> startup() throws Exception {
+        opened = BenchmarkBackends.create(backend, directory);
+        opened.initialize();
+        return opened.getLastServer(probe);
+    }
+
+    @TearDown(Level.Invocation)
+    public void close() {
+        if (opened != null) {
+            opened.shutdown();
+            opened = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws Exception {
+        BenchmarkBackends.deleteRecursively(directory);
+    }
+}
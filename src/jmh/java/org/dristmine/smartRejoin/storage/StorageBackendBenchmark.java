@@ -0,0 +1,149 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of setLastServer and getLastServer on a backend holding {@code players} players,
+ * from one thread, from eight threads, and with readers and writers mixed, plus the bulk variants
+ * for groups of {@value #GROUP_SIZE} players.
+ * <p>
+ * Backends with a background writer accept writes into a bounded queue, so a sustained write
+ * benchmark settles at the rate the writer commits.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StorageBackendBenchmark {
+
+    private static final int GROUP_SIZE = 100;
+
+    @Param({"yaml", "yaml-sharded", "sqlite", "sqlite-durable", "sqlite-throughput", "sqlite-sharded", "journal", "mmap", "jdbc-sqlite"})
+    public String backend;
+
+    @Param({"100000"})
+    public int players;
+
+    private Path directory;
+    private StorageBackend storage;
+    private UUID[] knownPlayers;
+    private String[] servers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        directory = BenchmarkBackends.createDirectory();
+        storage = BenchmarkBackends.create(backend, directory);
+        storage.initialize();
+
+        SyntheticSource source = new SyntheticSource(players, 64);
+        storage.migrateFrom(source, (current, total, message) -> {
+        });
+        knownPlayers = source.uuids();
+        servers = source.servers();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        storage.shutdown();
+        BenchmarkBackends.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void setSingleThreaded() {
+        write();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Optional<String> getSingleThreaded() {
+        return read();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void setContended() {
+        write();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Optional<String> getContended() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(6)
+    public Optional<String> mixedGet() {
+        return read();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(2)
+    public void mixedSet() {
+        write();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(GROUP_SIZE)
+    public void setBulk() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<UUID, String> group = new HashMap<>();
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            group.put(knownPlayers[random.nextInt(knownPlayers.length)], servers[random.nextInt(servers.length)]);
+        }
+        storage.setLastServers(group);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(GROUP_SIZE)
+    public Map<UUID, String> getBulk() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<UUID> group = new ArrayList<>(GROUP_SIZE);
+        for (int i = 0; i < GROUP_SIZE; i++) {
+            group.add(knownPlayers[random.nextInt(knownPlayers.length)]);
+        }
+        return storage.getLastServers(group);
+    }
+
+    private void write() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        storage.setLastServer(knownPlayers[random.nextInt(knownPlayers.length)], servers[random.nextInt(servers.length)]);
+    }
+
+    private Optional<String> read() {
+        return storage.getLastServer(knownPlayers[ThreadLocalRandom.current().nextInt(knownPlayers.length)]);
+    }
+}
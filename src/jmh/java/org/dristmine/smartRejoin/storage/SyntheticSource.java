@@ -0,0 +1,85 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.util.Optional;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only source of generated players, used to fill backends through their bulk migration path.
+ * The same seed always yields the same players, so they never have to be held in memory.
+ */
+final class SyntheticSource implements StorageBackend {
+
+    private static final long SEED = 0x5EED;
+
+    private final int players;
+    private final String[] servers;
+
+    /**
+     * @param players Number of players to generate
+     * @param serverCount Number of distinct server names
+     */
+    SyntheticSource(int players, int serverCount) {
+        this.players = players;
+        this.servers = new String[serverCount];
+        for (int i = 0; i < serverCount; i++) {
+            servers[i] = "server-" + i;
+        }
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) {
+        Random random = new Random(SEED);
+        for (int i = 0; i < players; i++) {
+            consumer.accept(new UUID(random.nextLong(), random.nextLong()), servers[i % servers.length]);
+        }
+    }
+
+    /**
+     * Get the generated UUIDs, in generation order.
+     */
+    UUID[] uuids() {
+        UUID[] uuids = new UUID[players];
+        int[] index = {0};
+        forEachEntry((uuid, server) -> uuids[index[0]++] = uuid);
+        return uuids;
+    }
+
+    String[] servers() {
+        return servers.clone();
+    }
+
+    @Override
+    public void setLastServer(UUID playerUuid, String serverName) {
+        throw new UnsupportedOperationException("Synthetic source is read-only");
+    }
+
+    @Override
+    public Optional<String> getLastServer(UUID playerUuid) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public String getBackendName() {
+        return "Synthetic";
+    }
+
+    @Override
+    public boolean supportsMigration() {
+        return false;
+    }
+
+    @Override
+    public int migrateFrom(StorageBackend source, MigrationCallback callback) {
+        throw new UnsupportedOperationException("Synthetic source is read-only");
+    }
+}
@@ -289,6 +289,14 @@ public class ConfigManager {
         return def;
     }
 
+    public double getDouble(String path, double def) {
+        Object val = get(path, def);
+        if (val instanceof Number) {
+            return ((Number) val).doubleValue();
+        }
+        return def;
+    }
+
     @SuppressWarnings("unchecked")
     private Object get(String path, Object def) {
         if (config == null) return def;
@@ -311,6 +319,378 @@ public class ConfigManager {
         return def;
     }
 
+    // --- Storage Config Methods ---
+
+    /**
+     * Get the number of threads used for asynchronous storage reads.
+     * Returns 4 as default if not configured.
+     */
+    public int getStorageIoThreads() {
+        return getInt("storage.io_threads", 4);
+    }
+
+    /**
+     * Get whether a player's last server is looked up while they are still logging in.
+     * Returns true as default if not configured.
+     */
+    public boolean getStoragePrefetchEnabled() {
+        return getBoolean("storage.prefetch", true);
+    }
+
+    /**
+     * Get whether writes of a last server that storage already holds are skipped.
+     * Returns true as default if not configured.
+     */
+    public boolean getStorageWriteElisionEnabled() {
+        return getBoolean("storage.write_elision", true);
+    }
+
+    /**
+     * Check if the player data cache is enabled for backends that read from disk.
+     * Returns true as default if not configured.
+     */
+    public boolean getStorageCacheEnabled() {
+        return getBoolean("storage.cache.enabled", true);
+    }
+
+    /**
+     * Get the maximum number of players kept in the player data cache.
+     * Returns 10000 as default if not configured.
+     */
+    public int getStorageCacheMaxEntries() {
+        return getInt("storage.cache.max_entries", 10000);
+    }
+
+    /**
+     * Get the number of recently active players loaded into the cache at startup.
+     * Returns 5000 as default if not configured.
+     */
+    public int getStorageCacheWarmEntries() {
+        return getInt("storage.cache.warm_entries", 5000);
+    }
+
+    /**
+     * Check if the YAML backend should save in the background instead of on every write.
+     * Returns false as default if not configured.
+     */
+    public boolean getStorageYamlWriteBehind() {
+        return getBoolean("storage.yaml.write_behind", false);
+    }
+
+    /**
+     * Get how often (in milliseconds) pending YAML writes are flushed in write-behind mode.
+     * Returns 5000 (5 seconds) as default if not configured.
+     */
+    public int getStorageYamlFlushInterval() {
+        return getInt("storage.yaml.flush_interval", 5000);
+    }
+
+    /**
+     * Get the number of pending YAML writes that triggers an immediate flush in write-behind mode.
+     * Returns 1000 as default if not configured.
+     */
+    public int getStorageYamlMaxPendingWrites() {
+        return getInt("storage.yaml.max_pending_writes", 1000);
+    }
+
+    /**
+     * Check if the YAML backend should spread players over 256 files in yaml-shards/ instead of data.yml.
+     * Returns false as default if not configured.
+     */
+    public boolean getStorageYamlSharded() {
+        return getBoolean("storage.yaml.sharded", false);
+    }
+
+    /**
+     * Check if data.yml should be loaded in the background while the proxy finishes starting.
+     * Returns true as default if not configured.
+     */
+    public boolean getStorageYamlAsyncLoad() {
+        return getBoolean("storage.yaml.async_load", true);
+    }
+
+    /**
+     * Get the longest time in milliseconds a login waits for data.yml to finish loading.
+     * Returns 5000 as default if not configured.
+     */
+    public int getStorageYamlLoadWaitTimeout() {
+        return getInt("storage.yaml.load_wait_timeout", 5000);
+    }
+
+    /**
+     * Get the name of the pragma profile applied to SQLite connections: durable, balanced or throughput.
+     * Returns "balanced" as default if not configured.
+     */
+    public String getStorageSqliteProfile() {
+        return getString("storage.sqlite.profile", "balanced");
+    }
+
+    /**
+     * Get the number of database files SQLite storage is split over, each with its own writer.
+     * Returns 1 as default if not configured.
+     */
+    public int getStorageSqliteShards() {
+        return getInt("storage.sqlite.shards", 1);
+    }
+
+    /**
+     * Get the maximum number of SQLite writes committed in one transaction.
+     * Returns 500 as default if not configured.
+     */
+    public int getStorageSqliteBatchSize() {
+        return getInt("storage.sqlite.batch_size", 500);
+    }
+
+    /**
+     * Get the maximum time (in milliseconds) a SQLite write waits before its batch is committed.
+     * Returns 50 as default if not configured.
+     */
+    public int getStorageSqliteMaxBatchDelay() {
+        return getInt("storage.sqlite.max_batch_delay", 50);
+    }
+
+    /**
+     * Get the maximum number of SQLite writes that may be queued before callers have to wait.
+     * Returns 10000 as default if not configured.
+     */
+    public int getStorageSqliteQueueCapacity() {
+        return getInt("storage.sqlite.queue_capacity", 10000);
+    }
+
+    /**
+     * Check if the journal backend should force every record to disk before returning.
+     * Returns false as default if not configured.
+     */
+    public boolean getStorageJournalFsync() {
+        return getBoolean("storage.journal.fsync", false);
+    }
+
+    /**
+     * Get how large the journal may grow, relative to the last snapshot, before it is compacted.
+     * Returns 2.0 as default if not configured.
+     */
+    public double getStorageJournalCompactionRatio() {
+        return getDouble("storage.journal.compaction_ratio", 2.0);
+    }
+
+    /**
+     * Get the journal size (in kilobytes) below which compaction never runs.
+     * Returns 1024 (1 MB) as default if not configured.
+     */
+    public int getStorageJournalMinCompactionSize() {
+        return getInt("storage.journal.min_compaction_size", 1024);
+    }
+
+    /**
+     * Get the JDBC URL of the database shared by the 'jdbc' backend.
+     * Returns an empty string as default if not configured.
+     */
+    public String getStorageJdbcUrl() {
+        return getString("storage.jdbc.url", "");
+    }
+
+    /**
+     * Get the user name for the shared database.
+     * Returns an empty string as default if not configured.
+     */
+    public String getStorageJdbcUsername() {
+        return getString("storage.jdbc.username", "");
+    }
+
+    /**
+     * Get the password for the shared database.
+     * Returns an empty string as default if not configured.
+     */
+    public String getStorageJdbcPassword() {
+        return getString("storage.jdbc.password", "");
+    }
+
+    /**
+     * Get the name of the table the 'jdbc' backend stores last servers in.
+     * Returns "smartrejoin_last_server" as default if not configured.
+     */
+    public String getStorageJdbcTable() {
+        return getString("storage.jdbc.table", "smartrejoin_last_server");
+    }
+
+    /**
+     * Get the maximum number of open connections to the shared database.
+     * Returns 8 as default if not configured.
+     */
+    public int getStorageJdbcPoolSize() {
+        return getInt("storage.jdbc.pool_size", 8);
+    }
+
+    /**
+     * Get the maximum time (in milliseconds) to wait for a free database connection.
+     * Returns 5000 as default if not configured.
+     */
+    public int getStorageJdbcConnectionTimeout() {
+        return getInt("storage.jdbc.connection_timeout", 5000);
+    }
+
+    /**
+     * Get the maximum number of JDBC writes committed in a single transaction.
+     * Returns 200 as default if not configured.
+     */
+    public int getStorageJdbcBatchSize() {
+        return getInt("storage.jdbc.batch_size", 200);
+    }
+
+    /**
+     * Get the maximum time (in milliseconds) a JDBC write waits before its batch is committed.
+     * Returns 50 as default if not configured.
+     */
+    public int getStorageJdbcMaxBatchDelay() {
+        return getInt("storage.jdbc.max_batch_delay", 50);
+    }
+
+    /**
+     * Get the maximum number of JDBC writes that may be queued before callers have to wait.
+     * Returns 10000 as default if not configured.
+     */
+    public int getStorageJdbcQueueCapacity() {
+        return getInt("storage.jdbc.queue_capacity", 10000);
+    }
+
+    /**
+     * Check if recently looked up players are answered from a local near-cache.
+     * Returns true as default if not configured.
+     */
+    public boolean getStorageJdbcNearCacheEnabled() {
+        return getBoolean("storage.jdbc.near_cache.enabled", true);
+    }
+
+    /**
+     * Get how long (in milliseconds) a near-cached player is answered locally.
+     * Returns 2000 as default if not configured.
+     */
+    public int getStorageJdbcNearCacheTtl() {
+        return getInt("storage.jdbc.near_cache.ttl", 2000);
+    }
+
+    /**
+     * Get the maximum number of players in the near-cache.
+     * Returns 10000 as default if not configured.
+     */
+    public int getStorageJdbcNearCacheMaxEntries() {
+        return getInt("storage.jdbc.near_cache.max_entries", 10000);
+    }
+
+    /**
+     * Check if a filter of known players is kept so lookups for new players can skip storage.
+     * Returns true as default if not configured.
+     */
+    public boolean getStorageKnownPlayersEnabled() {
+        return getBoolean("storage.known_players.enabled", true);
+    }
+
+    /**
+     * Get the number of players the known players filter is initially sized for.
+     * Returns 100000 as default if not configured.
+     */
+    public int getStorageKnownPlayersExpected() {
+        return getInt("storage.known_players.expected_players", 100000);
+    }
+
+    /**
+     * Get the target false-positive rate of the known players filter.
+     * Returns 0.01 as default if not configured.
+     */
+    public double getStorageKnownPlayersFalsePositiveRate() {
+        return getDouble("storage.known_players.false_positive_rate", 0.01);
+    }
+
+    /**
+     * Get whether players unseen for longer than the retention period are deleted.
+     * Returns false as default if not configured.
+     */
+    public boolean getStorageRetentionEnabled() {
+        return getBoolean("storage.retention.enabled", false);
+    }
+
+    /**
+     * Get the number of days after which an unseen player is deleted.
+     * Returns 180 as default if not configured.
+     */
+    public int getStorageRetentionDays() {
+        return getInt("storage.retention.days", 180);
+    }
+
+    /**
+     * Get the maximum number of players deleted per retention batch.
+     * Returns 500 as default if not configured.
+     */
+    public int getStorageRetentionBatchSize() {
+        return getInt("storage.retention.batch_size", 500);
+    }
+
+    /**
+     * Get the pause between retention batches (in milliseconds).
+     * Returns 50 as default if not configured.
+     */
+    public int getStorageRetentionBatchDelay() {
+        return getInt("storage.retention.batch_delay", 50);
+    }
+
+    /**
+     * Get the time budget of a single retention sweep (in milliseconds).
+     * Returns 5000 (5 seconds) as default if not configured.
+     */
+    public int getStorageRetentionMaxSweepTime() {
+        return getInt("storage.retention.max_sweep_time", 5000);
+    }
+
+    /**
+     * Get how often the retention sweep runs (in minutes).
+     * Returns 60 (1 hour) as default if not configured.
+     */
+    public int getStorageRetentionInterval() {
+        return getInt("storage.retention.interval", 60);
+    }
+
+    /**
+     * Check if backups of the player data are written on a schedule.
+     * Returns false as default if not configured.
+     */
+    public boolean getStorageBackupEnabled() {
+        return getBoolean("storage.backup.enabled", false);
+    }
+
+    /**
+     * Get how often a scheduled backup is written (in minutes).
+     * Returns 1440 (1 day) as default if not configured.
+     */
+    public int getStorageBackupInterval() {
+        return getInt("storage.backup.interval", 1440);
+    }
+
+    /**
+     * Get the number of backups kept in backups/, for scheduled and manual backups alike.
+     * Returns 7 as default if not configured.
+     */
+    public int getStorageBackupKeep() {
+        return getInt("storage.backup.keep", 7);
+    }
+
+    // --- Server Status Config Methods ---
+
+    /**
+     * Get how long (in milliseconds) a server's ping answers server selection and the rejoin queue.
+     * Returns 1000 (1 second) as default if not configured.
+     */
+    public int getServerStatusTtl() {
+        return getInt("server_status.ttl", 1000);
+    }
+
+    /**
+     * Get how long (in milliseconds) past its TTL a ping still answers server selection while it is refreshed.
+     * Returns 4000 (4 seconds) as default if not configured.
+     */
+    public int getServerStatusStaleTtl() {
+        return getInt("server_status.stale_while_revalidate", 4000);
+    }
+
     // --- Rejoin Queue Config Methods ---
 
     /**
@@ -1,14 +1,16 @@
 package org.dristmine.smartRejoin;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.LoginEvent;
+import com.velocitypowered.api.event.connection.PreLoginEvent;
 import com.velocitypowered.api.event.player.PlayerChooseInitialServerEvent;
 import com.velocitypowered.api.event.player.ServerConnectedEvent;
 import com.velocitypowered.api.event.player.ServerPostConnectEvent;
 import com.velocitypowered.api.proxy.Player;
-import com.velocitypowered.api.proxy.server.RegisteredServer;
 
-import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
 public class PlayerEventHandler {
@@ -19,6 +21,27 @@ public class PlayerEventHandler {
         this.plugin = plugin;
     }
 
+    /**
+     * Fired before the player is authenticated.
+     * Clients since 1.19.1 send their UUID here, so the last-server lookup can run during authentication.
+     * In offline mode the final UUID is derived from the username instead, so the sent one is not used.
+     */
+    @Subscribe
+    public void onPreLogin(PreLoginEvent event) {
+        UUID playerUuid = event.getUniqueId();
+        if (playerUuid != null && plugin.getServer().getConfiguration().isOnlineMode()) {
+            plugin.getStorageManager().prefetchLastServer(playerUuid);
+        }
+    }
+
+    /**
+     * Fired once the player is authenticated. Starts the last-server lookup if pre-login could not.
+     */
+    @Subscribe
+    public void onLogin(LoginEvent event) {
+        plugin.getStorageManager().prefetchLastServer(event.getPlayer().getUniqueId());
+    }
+
     /**
      * Fired when a player successfully connects to a server.
      * We use this to track player connections for the rejoin queue.
@@ -48,7 +71,7 @@ public class PlayerEventHandler {
         // This fixes the bug where players are sent back to old servers after restarts
         if (!plugin.isPlayerRoutedViaModdedRouting(player.getUniqueId())) {
             // Only update last server if the player wasn't routed via modded routing
-            plugin.getStorageManager().setLastServer(player.getUniqueId(), serverName);
+            plugin.getStorageManager().setLastServerAsync(player.getUniqueId(), serverName);
             plugin.logInfo("Player " + player.getUsername() + " connected to '" + serverName + "'. Updated last server.");
         }
     }
@@ -73,11 +96,11 @@ public class PlayerEventHandler {
                     plugin.logInfo("Player " + player.getUsername() + " is disconnecting from modded routing target. Skipping storage update.");
                 } else {
                     // Player was marked for modded routing but connected to a different server, record it
-                    plugin.getStorageManager().setLastServer(player.getUniqueId(), serverName);
+                    plugin.getStorageManager().setLastServerAsync(player.getUniqueId(), serverName);
                 }
             } else {
                 // Normal behavior: record the last server
-                plugin.getStorageManager().setLastServer(player.getUniqueId(), serverName);
+                plugin.getStorageManager().setLastServerAsync(player.getUniqueId(), serverName);
             }
 
             // Notify rejoin queue manager of the disconnect
@@ -93,32 +116,37 @@ public class PlayerEventHandler {
 
         // Always clear the modded routing flag on disconnect
         plugin.removePlayerFromModdedRoutingTracking(player.getUniqueId());
+
+        // The last write for this session has been submitted
+        plugin.getStorageManager().onPlayerQuit(player.getUniqueId());
     }
 
     /**
      * Fired when a player is logging in and Velocity needs to decide which server to send them to.
      * This is the perfect place to implement our custom logic.
+     * The storage lookup and server pings run asynchronously; Velocity resumes the event once they finish.
+     * The lookup was usually already started during login, see {@link #onPreLogin(PreLoginEvent)}.
      */
     @Subscribe
-    public void onPlayerChooseInitialServer(PlayerChooseInitialServerEvent event) {
+    public EventTask onPlayerChooseInitialServer(PlayerChooseInitialServerEvent event) {
         Player player = event.getPlayer();
-        Optional<String> lastServerNameOpt = plugin.getStorageManager().getLastServer(player.getUniqueId());
 
-        CompletableFuture<Optional<RegisteredServer>> futureServer;
-
-        if (lastServerNameOpt.isPresent()) {
-            String lastServerName = lastServerNameOpt.get();
-            plugin.logInfo("Player " + player.getUsername() + " is rejoining. Last seen on: " + lastServerName);
-            futureServer = plugin.getServerFinder().findServerFor(player, lastServerName);
-        } else {
-            plugin.logInfo("Player " + player.getUsername() + " has no previous server data. Using fallback logic.");
-            futureServer = plugin.getServerFinder().findFallbackServer();
-        }
-
-        try {
-            futureServer.join().ifPresent(event::setInitialServer);
-        } catch (Exception e) {
-            plugin.getLogger().error("An exception occurred while finding an initial server for " + player.getUsername(), e);
-        }
+        CompletableFuture<Void> routing = plugin.getStorageManager().getPrefetchedLastServerAsync(player.getUniqueId())
+                .thenCompose(lastServerNameOpt -> {
+                    if (lastServerNameOpt.isPresent()) {
+                        String lastServerName = lastServerNameOpt.get();
+                        plugin.logInfo("Player " + player.getUsername() + " is rejoining. Last seen on: " + lastServerName);
+                        return plugin.getServerFinder().findServerFor(player, lastServerName);
+                    }
+                    plugin.logInfo("Player " + player.getUsername() + " has no previous server data. Using fallback logic.");
+                    return plugin.getServerFinder().findFallbackServer();
+                })
+                .thenAccept(serverOpt -> serverOpt.ifPresent(event::setInitialServer))
+                .exceptionally(throwable -> {
+                    plugin.getLogger().error("An exception occurred while finding an initial server for " + player.getUsername(), throwable);
+                    return null;
+                });
+
+        return EventTask.resumeWhenComplete(routing);
     }
 }
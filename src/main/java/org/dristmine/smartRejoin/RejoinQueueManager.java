@@ -3,7 +3,6 @@ package org.dristmine.smartRejoin;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
-import com.velocitypowered.api.proxy.server.ServerPing;
 import com.velocitypowered.api.scheduler.ScheduledTask;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.minimessage.MiniMessage;
@@ -11,7 +10,6 @@ import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.slf4j.Logger;
 
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
@@ -25,6 +23,7 @@ public class RejoinQueueManager {
     private final ProxyServer proxy;
     private final Logger logger;
     private final ConfigManager config;
+    private final ServerStatusCache statusCache;
 
     /**
      * Represents the state of a monitored server.
@@ -93,6 +92,7 @@ public class RejoinQueueManager {
         this.proxy = plugin.getServer();
         this.logger = plugin.getLogger();
         this.config = plugin.getConfigManager();
+        this.statusCache = plugin.getServerStatusCache();
         this.debugEnabled = config.getRejoinQueueDebug();
     }
 
@@ -274,17 +274,11 @@ public class RejoinQueueManager {
             String serverName = server.getServerInfo().getName();
             ServerMonitorData data = serverMonitors.computeIfAbsent(serverName, k -> new ServerMonitorData());
 
-            // Ping the server to check availability
-            CompletableFuture<ServerPing> pingFuture = server.ping();
+            // Check availability through the shared status cache, so logins and the monitor share pings
             final ServerMonitorData monitorData = data;
 
-            pingFuture.whenComplete((ping, throwable) -> {
-                ServerState newState;
-                if (throwable != null) {
-                    newState = ServerState.DOWN;
-                } else {
-                    newState = ServerState.UP;
-                }
+            statusCache.getFreshStatus(server).thenAccept(status -> {
+                ServerState newState = status.isOnline() ? ServerState.UP : ServerState.DOWN;
 
                 handleServerStateChange(serverName, server, monitorData, newState);
             });
@@ -1,11 +1,17 @@
 package org.dristmine.smartRejoin;
 
+import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.command.SimpleCommand;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
+import java.util.List;
+import java.util.concurrent.CompletionException;
+
 public class ReloadCommand implements SimpleCommand {
 
+    private static final List<String> SUBCOMMANDS = List.of("stats", "backup", "export", "import");
+
     private final SmartRejoin plugin;
 
     public ReloadCommand(SmartRejoin plugin) {
@@ -14,8 +20,136 @@ public class ReloadCommand implements SimpleCommand {
 
     @Override
     public void execute(Invocation invocation) {
+        String[] args = invocation.arguments();
+        if (args.length > 0 && args[0].equalsIgnoreCase("stats")) {
+            sendStats(invocation.source());
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("backup")) {
+            startBackup(invocation.source());
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("export")) {
+            startExport(invocation.source(), args.length > 1 ? args[1] : null);
+            return;
+        }
+        if (args.length > 0 && args[0].equalsIgnoreCase("import")) {
+            if (args.length < 2) {
+                invocation.source().sendMessage(Component.text("Usage: /srr import <file in exports/>", NamedTextColor.RED));
+                return;
+            }
+            startImport(invocation.source(), args[1]);
+            return;
+        }
+
         plugin.reload();
         invocation.source().sendMessage(Component.text("SmartRejoin configuration has been reloaded.", NamedTextColor.GREEN));
+
+        StorageManager storageManager = plugin.getStorageManager();
+        if (storageManager != null && storageManager.isSwitchingBackend()) {
+            invocation.source().sendMessage(Component.text("Storage is switching to the new backend in the background. Use /srr stats to follow its progress.", NamedTextColor.YELLOW));
+        }
+    }
+
+    /**
+     * Print storage and server status statistics to the command source.
+     */
+    private void sendStats(CommandSource source) {
+        StorageManager storageManager = plugin.getStorageManager();
+        if (storageManager == null) {
+            source.sendMessage(Component.text("Storage is not initialized.", NamedTextColor.RED));
+            return;
+        }
+
+        source.sendMessage(Component.text("SmartRejoin storage statistics:", NamedTextColor.GREEN));
+        storageManager.getStatistics().forEach((key, value) ->
+                source.sendMessage(Component.text(" " + key + ": " + value, NamedTextColor.GRAY)));
+
+        ServerStatusCache statusCache = plugin.getServerStatusCache();
+        if (statusCache != null) {
+            statusCache.getStatistics().forEach((key, value) ->
+                    source.sendMessage(Component.text(" server_status." + key + ": " + value, NamedTextColor.GRAY)));
+        }
+    }
+
+    /**
+     * Write a backup in the background and report the result to the command source.
+     */
+    private void startBackup(CommandSource source) {
+        StorageManager storageManager = plugin.getStorageManager();
+        if (storageManager == null) {
+            source.sendMessage(Component.text("Storage is not initialized.", NamedTextColor.RED));
+            return;
+        }
+
+        source.sendMessage(Component.text("Writing a backup of the player data...", NamedTextColor.GRAY));
+        storageManager.backup().whenComplete((backup, error) -> {
+            if (error != null) {
+                source.sendMessage(Component.text("Backup failed: " + failureReason(error), NamedTextColor.RED));
+                return;
+            }
+            source.sendMessage(Component.text("Backup of " + backup.backendName() + " storage written to backups/" + backup.directory().getName()
+                    + " in " + backup.durationMillis() + "ms (" + backup.sizeBytes() / 1024 + " KB).", NamedTextColor.GREEN));
+        });
+    }
+
+    /**
+     * Export every player to exports/ in the background, reporting progress to the command source.
+     */
+    private void startExport(CommandSource source, String fileName) {
+        StorageManager storageManager = plugin.getStorageManager();
+        if (storageManager == null) {
+            source.sendMessage(Component.text("Storage is not initialized.", NamedTextColor.RED));
+            return;
+        }
+
+        source.sendMessage(Component.text("Exporting player data...", NamedTextColor.GRAY));
+        storageManager.exportPlayers(fileName, (current, total, message) -> sendProgress(source, total, message))
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        source.sendMessage(Component.text("Export failed: " + failureReason(error), NamedTextColor.RED));
+                    }
+                });
+    }
+
+    /**
+     * Import a file from exports/ in the background, reporting progress to the command source.
+     */
+    private void startImport(CommandSource source, String fileName) {
+        StorageManager storageManager = plugin.getStorageManager();
+        if (storageManager == null) {
+            source.sendMessage(Component.text("Storage is not initialized.", NamedTextColor.RED));
+            return;
+        }
+
+        source.sendMessage(Component.text("Importing player data from exports/" + fileName + "...", NamedTextColor.GRAY));
+        storageManager.importPlayers(fileName, (current, total, message) -> sendProgress(source, total, message))
+                .whenComplete((result, error) -> {
+                    if (error != null) {
+                        source.sendMessage(Component.text("Import failed: " + failureReason(error), NamedTextColor.RED));
+                    }
+                });
+    }
+
+    /**
+     * Progress is sent with a total only once the transfer has finished.
+     */
+    private static void sendProgress(CommandSource source, int total, String message) {
+        source.sendMessage(Component.text(message, total > 0 ? NamedTextColor.GREEN : NamedTextColor.GRAY));
+    }
+
+    private static String failureReason(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause().getMessage() : error.getMessage();
+    }
+
+    @Override
+    public List<String> suggest(Invocation invocation) {
+        String[] args = invocation.arguments();
+        if (args.length <= 1) {
+            String prefix = args.length == 0 ? "" : args[0].toLowerCase();
+            return SUBCOMMANDS.stream().filter(subcommand -> subcommand.startsWith(prefix)).toList();
+        }
+        return List.of();
     }
 
     @Override
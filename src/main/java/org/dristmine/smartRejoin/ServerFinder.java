@@ -3,7 +3,6 @@ package org.dristmine.smartRejoin;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
-import com.velocitypowered.api.proxy.server.ServerPing;
 import org.slf4j.Logger;
 
 import java.util.*;
@@ -17,6 +16,7 @@ public class ServerFinder {
     private final SmartRejoin plugin;
     private final ProxyServer proxy;
     private final ConfigManager config;
+    private final ServerStatusCache statusCache;
 
     private static final Pattern SMART_CLEANUP_PATTERN = Pattern.compile("[_\\- ]*\\d+$");
 
@@ -67,6 +67,7 @@ public class ServerFinder {
         this.plugin = plugin;
         this.proxy = plugin.getServer();
         this.config = plugin.getConfigManager();
+        this.statusCache = plugin.getServerStatusCache();
     }
 
     public CompletableFuture<Optional<RegisteredServer>> findServerFor(Player player, String lastServerName) {
@@ -170,33 +171,34 @@ public class ServerFinder {
             return CompletableFuture.completedFuture(Optional.empty());
         }
 
-        Map<RegisteredServer, CompletableFuture<ServerPing>> pingFutures = new HashMap<>();
+        // Statuses come from the shared cache, so logins arriving together share one ping per server
+        Map<RegisteredServer, CompletableFuture<ServerStatusCache.Status>> statusFutures = new HashMap<>();
         for (RegisteredServer server : candidates) {
-            pingFutures.put(server, server.ping());
+            statusFutures.put(server, statusCache.getStatus(server));
         }
 
-        return CompletableFuture.allOf(pingFutures.values().toArray(new CompletableFuture[0]))
-                .handle((v, throwable) -> {
-                    Map<RegisteredServer, ServerPing> onlineServers = new HashMap<>();
-                    for (Map.Entry<RegisteredServer, CompletableFuture<ServerPing>> entry : pingFutures.entrySet()) {
-                        if (!entry.getValue().isCompletedExceptionally()) {
-                            onlineServers.put(entry.getKey(), entry.getValue().join());
+        return CompletableFuture.allOf(statusFutures.values().toArray(new CompletableFuture[0]))
+                .thenApply(v -> {
+                    // Player counts include players sent since the ping, so a cached ping does not send everyone to one server
+                    Map<RegisteredServer, Integer> onlineCounts = new HashMap<>();
+                    for (Map.Entry<RegisteredServer, CompletableFuture<ServerStatusCache.Status>> entry : statusFutures.entrySet()) {
+                        ServerStatusCache.Status status = entry.getValue().join();
+                        int online = status.estimatedOnline(entry.getKey());
+                        if (online >= 0 && online < status.ping().getPlayers().get().getMax()) {
+                            onlineCounts.put(entry.getKey(), online);
                         }
                     }
 
-                    List<Map.Entry<RegisteredServer, ServerPing>> availableServers = onlineServers.entrySet().stream()
-                            .filter(entry -> entry.getValue().getPlayers().isPresent() &&
-                                    entry.getValue().getPlayers().get().getOnline() < entry.getValue().getPlayers().get().getMax())
-                            .collect(Collectors.toList());
+                    List<Map.Entry<RegisteredServer, Integer>> availableServers = new ArrayList<>(onlineCounts.entrySet());
 
                     if (availableServers.isEmpty()) {
                         plugin.logWarn("Strategy '" + strategy + "' for name '" + name + "' found no online servers with free slots.");
                         return Optional.empty();
                     }
 
-                    Optional<Map.Entry<RegisteredServer, ServerPing>> selectedEntry = switch (strategy.toUpperCase()) {
-                        case "MOST" -> availableServers.stream().max(Comparator.comparingInt(e -> e.getValue().getPlayers().get().getOnline()));
-                        case "LEAST" -> availableServers.stream().min(Comparator.comparingInt(e -> e.getValue().getPlayers().get().getOnline()));
+                    Optional<Map.Entry<RegisteredServer, Integer>> selectedEntry = switch (strategy.toUpperCase()) {
+                        case "MOST" -> availableServers.stream().max(Map.Entry.comparingByValue());
+                        case "LEAST" -> availableServers.stream().min(Map.Entry.comparingByValue());
                         case "RANDOM" -> Optional.of(availableServers.get(new Random().nextInt(availableServers.size())));
                         case "EQUALS", "SAME" -> availableServers.stream().findFirst();
                         default -> Optional.empty();
@@ -267,22 +269,23 @@ public class ServerFinder {
 
         // Check if server is online and has space
         RegisteredServer server = targetServer.get();
-        try {
-            ServerPing ping = server.ping().join();
-            if (ping.getPlayers().isEmpty()) {
-                return targetServer;
-            }
-
-            ServerPing.Players players = ping.getPlayers().get();
-            if (players.getOnline() >= players.getMax()) {
-                plugin.logWarn("Modded routing target server '" + targetServerName + "' is full.");
-                return Optional.empty();
-            }
+        ServerStatusCache.Status status = statusCache.getStatus(server).join();
+        if (!status.isOnline()) {
+            String reason = status.error() != null ? status.error().getMessage() : "no response";
+            plugin.logWarn("Modded routing target server '" + targetServerName + "' is offline: " + reason);
+            return Optional.empty();
+        }
 
+        int online = status.estimatedOnline(server);
+        if (online < 0) {
             return targetServer;
-        } catch (Exception e) {
-            plugin.logWarn("Modded routing target server '" + targetServerName + "' is offline: " + e.getMessage());
+        }
+
+        if (online >= status.ping().getPlayers().get().getMax()) {
+            plugin.logWarn("Modded routing target server '" + targetServerName + "' is full.");
             return Optional.empty();
         }
+
+        return targetServer;
     }
 }
@@ -0,0 +1,210 @@
+package org.dristmine.smartRejoin;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerPing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the last ping of each backend server, shared by server selection and the rejoin queue.
+ * <p>
+ * A status younger than the TTL is answered without pinging. An older one is still answered for a
+ * while longer, while a single background ping refreshes it. Past that, callers wait for a ping,
+ * and all callers waiting on the same server share it. Failed pings are cached the same way, so an
+ * offline server is not pinged again for every login. With a TTL of 0 nothing is answered from the
+ * cache, but callers asking at the same time still share one ping.
+ */
+public class ServerStatusCache {
+
+    /**
+     * The result of one ping.
+     * @param ping The ping, or null if the server did not answer
+     * @param connectedAtPing Players this proxy had connected to the server when the ping finished
+     * @param pingedAt When the ping finished (epoch ms)
+     */
+    public record Status(ServerPing ping, Throwable error, int connectedAtPing, long pingedAt) {
+
+        public boolean isOnline() {
+            return ping != null;
+        }
+
+        /**
+         * Get the players online as of the ping, plus the players this proxy has connected to the
+         * server since. A login wave is spread out even while every login reads the same ping.
+         * @return The estimate, or -1 if the ping did not report players
+         */
+        public int estimatedOnline(RegisteredServer server) {
+            if (ping == null || ping.getPlayers().isEmpty()) {
+                return -1;
+            }
+            int joinedSince = server.getPlayersConnected().size() - connectedAtPing;
+            return ping.getPlayers().get().getOnline() + Math.max(0, joinedSince);
+        }
+    }
+
+    private static final class Entry {
+        final RegisteredServer server;
+        volatile Status status = null;
+        // Guarded by the entry
+        CompletableFuture<Status> inFlight = null;
+
+        Entry(RegisteredServer server) {
+            this.server = server;
+        }
+    }
+
+    private final ConfigManager config;
+
+    // Server name -> entry. A server registered again under the same name replaces the entry.
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private volatile long ttlMillis;
+    private volatile long staleMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder sharedPings = new LongAdder();
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder failedPings = new LongAdder();
+
+    public ServerStatusCache(SmartRejoin plugin) {
+        this.config = plugin.getConfigManager();
+        reloadSettings();
+    }
+
+    /**
+     * Read the TTLs from the configuration again. Cached statuses are kept.
+     */
+    public void reloadSettings() {
+        this.ttlMillis = Math.max(0, config.getServerStatusTtl());
+        this.staleMillis = Math.max(0, config.getServerStatusStaleTtl());
+    }
+
+    /**
+     * Get the status of a server, answering with a stale status while it is refreshed.
+     * For server selection, where a slightly old player count is fine.
+     */
+    public CompletableFuture<Status> getStatus(RegisteredServer server) {
+        return getStatus(server, true);
+    }
+
+    /**
+     * Get a status no older than the TTL, waiting for a ping if needed.
+     * For the rejoin queue, which must notice a server going down or coming back.
+     */
+    public CompletableFuture<Status> getFreshStatus(RegisteredServer server) {
+        return getStatus(server, false);
+    }
+
+    private CompletableFuture<Status> getStatus(RegisteredServer server, boolean allowStale) {
+        String name = server.getServerInfo().getName();
+        Entry entry = entries.get(name);
+        if (entry == null || entry.server != server) {
+            entry = entries.compute(name, (key, existing) -> existing != null && existing.server == server ? existing : new Entry(server));
+        }
+
+        // With caching turned off every lookup pings, but lookups at the same time still share the ping
+        long ttl = ttlMillis;
+        Status status = entry.status;
+        if (ttl > 0 && status != null) {
+            long age = System.currentTimeMillis() - status.pingedAt();
+            if (age < ttl) {
+                hits.increment();
+                return CompletableFuture.completedFuture(status);
+            }
+            if (allowStale && age < ttl + staleMillis) {
+                staleHits.increment();
+                refresh(entry, false);
+                return CompletableFuture.completedFuture(status);
+            }
+        }
+        misses.increment();
+        return refresh(entry, true);
+    }
+
+    /**
+     * Ping a server unless a ping of it is already running, in which case that one is shared.
+     * @param waiting Whether the caller waits for the result, rather than refreshing in the background
+     */
+    private CompletableFuture<Status> refresh(Entry entry, boolean waiting) {
+        CompletableFuture<Status> future;
+        synchronized (entry) {
+            if (entry.inFlight != null) {
+                if (waiting) {
+                    sharedPings.increment();
+                }
+                return entry.inFlight;
+            }
+            future = new CompletableFuture<>();
+            entry.inFlight = future;
+        }
+
+        pings.increment();
+        ping(entry.server).whenComplete((status, error) -> {
+            try {
+                if (status != null) {
+                    entry.status = status;
+                }
+            } finally {
+                // Always cleared, or every later lookup of the server would wait on this ping forever
+                synchronized (entry) {
+                    entry.inFlight = null;
+                }
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(status);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Ping a server. The returned future never fails; a failed ping gives an offline status.
+     */
+    private CompletableFuture<Status> ping(RegisteredServer server) {
+        CompletableFuture<ServerPing> pingFuture;
+        try {
+            pingFuture = server.ping();
+        } catch (RuntimeException e) {
+            pingFuture = CompletableFuture.failedFuture(e);
+        }
+        return pingFuture.handle((ping, error) -> {
+            if (ping == null) {
+                failedPings.increment();
+            }
+            return new Status(ping, error, server.getPlayersConnected().size(), System.currentTimeMillis());
+        });
+    }
+
+    /**
+     * Get cache statistics for /srr stats.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long staleHitCount = staleHits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + staleHitCount + missCount;
+        long pingCount = pings.sum();
+        stats.put("servers", entries.size());
+        stats.put("ttl_ms", ttlMillis);
+        stats.put("stale_ms", staleMillis);
+        stats.put("hits", hitCount);
+        stats.put("stale_hits", staleHitCount);
+        stats.put("misses", missCount);
+        stats.put("hit_rate", lookups == 0 ? "n/a" : String.format("%.1f%%", (hitCount + staleHitCount) * 100.0 / lookups));
+        stats.put("shared_pings", sharedPings.sum());
+        stats.put("pings", pingCount);
+        // Without the cache, every lookup would have pinged
+        stats.put("pings_avoided", Math.max(0, lookups - pingCount));
+        stats.put("failed_pings", failedPings.sum());
+        return stats;
+    }
+}
@@ -30,6 +30,7 @@ public class SmartRejoin {
     private final Path dataDirectory;
     private ConfigManager configManager;
     private StorageManager storageManager;
+    private ServerStatusCache serverStatusCache;
     private ServerFinder serverFinder;
     private RejoinQueueManager rejoinQueueManager;
     private String leaveQueueCommandName = null;
@@ -62,6 +63,7 @@ public class SmartRejoin {
             return;
         }
 
+        this.serverStatusCache = new ServerStatusCache(this);
         this.serverFinder = new ServerFinder(this);
 
         server.getEventManager().register(this, new PlayerEventHandler(this));
@@ -125,9 +127,13 @@ public class SmartRejoin {
         }
 
         if (configManager.loadConfig()) {
-            // Note: Storage backend cannot be changed without server restart
-            // This is intentional to prevent data loss during runtime
-            logger.info("Storage backend remains: " + storageManager.getBackendName());
+            // A changed storage type is switched in the background while players keep connecting
+            if (storageManager != null && !storageManager.switchBackend(configManager.getString("storage.type", "yaml"))) {
+                logger.info("Storage backend remains: " + storageManager.getBackendName());
+            }
+            if (serverStatusCache != null) {
+                serverStatusCache.reloadSettings();
+            }
 
             // Start RejoinQueueManager if enabled
             if (configManager.getRejoinQueueEnabled()) {
@@ -189,6 +195,10 @@ public class SmartRejoin {
         return null; // Return null to force code updates
     }
 
+    public ServerStatusCache getServerStatusCache() {
+        return serverStatusCache;
+    }
+
     public ServerFinder getServerFinder() {
         return serverFinder;
     }
@@ -1,29 +1,154 @@
 package org.dristmine.smartRejoin;
 
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import org.dristmine.smartRejoin.storage.BackupManager;
+import org.dristmine.smartRejoin.storage.DualWriteStorageBackend;
+import org.dristmine.smartRejoin.storage.JdbcStorageBackend;
+import org.dristmine.smartRejoin.storage.JournalStorageBackend;
+import org.dristmine.smartRejoin.storage.KnownPlayerFilter;
+import org.dristmine.smartRejoin.storage.MappedStorageBackend;
+import org.dristmine.smartRejoin.storage.PlayerDataCache;
+import org.dristmine.smartRejoin.storage.PlayerDataTransfer;
+import org.dristmine.smartRejoin.storage.RetentionSweeper;
+import org.dristmine.smartRejoin.storage.SQLiteBackendProvider;
+import org.dristmine.smartRejoin.storage.SQLiteProfile;
+import org.dristmine.smartRejoin.storage.SQLiteShardRebalancer;
 import org.dristmine.smartRejoin.storage.SQLiteStorageBackend;
+import org.dristmine.smartRejoin.storage.ShardedSQLiteStorageBackend;
+import org.dristmine.smartRejoin.storage.ShardedYAMLStorageBackend;
 import org.dristmine.smartRejoin.storage.StorageBackend;
+import org.dristmine.smartRejoin.storage.StorageBackendProvider;
+import org.dristmine.smartRejoin.storage.StorageBackendProviders;
 import org.dristmine.smartRejoin.storage.YAMLStorageBackend;
 import org.slf4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages storage backend selection and operations.
  * Handles automatic migration between storage backends.
+ * <p>
+ * The async methods keep storage I/O off Velocity's event threads. Reads run on a small
+ * I/O pool, while writes run on a single thread so updates for a player are applied in order.
+ * <p>
+ * The backend can be switched at runtime with {@link #switchBackend(String)}. Writes then go to
+ * both backends while the existing data is copied in the background, and reads move over once
+ * the copy is complete.
  */
 public class StorageManager {
 
+    // How long a prefetched lookup waits to be used before it is dropped
+    private static final long PREFETCH_TTL_MILLIS = 30_000;
+
+    private static final List<String> STORAGE_TYPES = List.of("yaml", "sqlite", "journal", "mmap", "jdbc");
+    // Holds the previous storage type while a runtime switch has not completed
+    private static final String SWITCH_MARKER_FILE = "storage_switch.pending";
+    // Grace period for reads and writes still running against a retired backend
+    private static final long RETIRE_DELAY_SECONDS = 5;
+    private static final String KNOWN_PLAYERS_FILE = "known_players.bloom";
+    // With retention enabled an unchanged value is written again after this long, so its update time moves on
+    private static final long ELISION_REFRESH_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final String EXPORT_DIRECTORY = "exports";
+    private static final DateTimeFormatter EXPORT_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // Players per backend write during an import
+    private static final int IMPORT_BATCH_SIZE = 5000;
+
     private final SmartRejoin plugin;
     private final Logger logger;
     private final Path dataDirectory;
     private final ConfigManager config;
 
-    private StorageBackend currentBackend;
+    private volatile StorageBackend currentBackend;
+    // Storage types added by providers in the plugin jar or the backends/ folder
+    private StorageBackendProviders providers;
     private boolean migrationNeeded = false;
+    private SQLiteProfile sqliteProfile = SQLiteProfile.BALANCED;
+
+    // Runtime switch to another backend, null when none is running
+    private volatile DualWriteStorageBackend activeSwitch = null;
+    private Thread switchThread = null;
+    private StorageBackend retiringBackend = null;
+    private ScheduledTask retireTask = null;
+
+    // Executors for async storage access
+    private ExecutorService readExecutor;
+    private ExecutorService writeExecutor;
+
+    // Writes handed to the write executor but not yet applied, so async reads see them
+    private final Map<UUID, String> pendingWrites = new ConcurrentHashMap<>();
+
+    // Read-through cache for backends that do not keep everything in memory
+    private volatile PlayerDataCache cache = null;
+
+    // Last-server lookups started during login, taken when the initial server is chosen
+    private final Map<UUID, Prefetch> prefetches = new ConcurrentHashMap<>();
+    private volatile long lastPrefetchCleanup = 0;
+    private final AtomicLong prefetchReady = new AtomicLong();
+    private final AtomicLong prefetchWaited = new AtomicLong();
+    private final AtomicLong prefetchMissed = new AtomicLong();
+    private final AtomicLong prefetchExpired = new AtomicLong();
+    private final AtomicLong prefetchInvalidated = new AtomicLong();
+
+    private record Prefetch(CompletableFuture<Optional<String>> lookup, long startedAt) {
+    }
+
+    // Last server known to be in storage for each online player, used to skip writes that change nothing.
+    // Only storage writes update it, so players kept out of storage by modded routing stay correct.
+    private final Map<UUID, StoredValue> storedValues = new ConcurrentHashMap<>();
+    private final LongAdder performedWrites = new LongAdder();
+    private final LongAdder elidedWrites = new LongAdder();
+
+    // Lookups made while the backend was still loading its data at startup
+    private final LongAdder loadHits = new LongAdder();
+    private final LongAdder loadWaits = new LongAdder();
+    private final LongAdder loadWaitTimeouts = new LongAdder();
+
+    /**
+     * @param writtenAt When this proxy wrote the value, or 0 if it was read from storage
+     */
+    private record StoredValue(String serverName, long writtenAt) {
+    }
+
+    // Players that have a stored last server; lookups for anyone else skip storage once it is ready
+    private volatile KnownPlayerFilter knownPlayers = null;
+    private volatile boolean knownPlayersReady = false;
+    private final AtomicLong knownPlayersSkipped = new AtomicLong();
+    private final AtomicLong knownPlayersFalsePositives = new AtomicLong();
+
+    // Background deletion of players that have not been seen for a long time
+    private RetentionSweeper retentionSweeper = null;
+    private ScheduledTask retentionTask = null;
+
+    // On-demand and scheduled backups into backups/
+    private BackupManager backupManager = null;
+    private ScheduledTask backupTask = null;
+
+    // Set while an export or import into exports/ is running
+    private final AtomicBoolean transferRunning = new AtomicBoolean();
 
     public StorageManager(SmartRejoin plugin, Path dataDirectory, Logger logger) {
         this.plugin = plugin;
@@ -36,43 +161,175 @@ public class StorageManager {
      * Initialize the storage manager and detect migration needs.
      */
     public void initialize() throws Exception {
-        String storageType = config.getString("storage.type", "yaml").toLowerCase();
+        providers = new StorageBackendProviders(logger, dataDirectory, getClass().getClassLoader(), STORAGE_TYPES);
+        String requestedType = config.getString("storage.type", "yaml");
+        String configuredType = normalizeType(requestedType);
+        if (!configuredType.equalsIgnoreCase(requestedType)) {
+            logger.warn("Unknown storage.type '" + requestedType + "'. Using yaml. Types added by jars in "
+                    + StorageBackendProviders.BACKENDS_DIRECTORY + "/: " + (providers.getTypes().isEmpty() ? "none" : String.join(", ", providers.getTypes())) + ".");
+        }
+        String storageType = configuredType;
 
+        // A runtime switch that did not finish starts over from the backend that still holds all data
+        String interruptedSwitchFrom = readSwitchMarker();
+        if (interruptedSwitchFrom != null && !interruptedSwitchFrom.equals(configuredType)) {
+            logger.warn("A storage switch from " + interruptedSwitchFrom + " to " + configuredType + " did not finish. Starting with " + interruptedSwitchFrom + " and switching again.");
+            storageType = interruptedSwitchFrom;
+        } else if (interruptedSwitchFrom != null) {
+            deleteSwitchMarker();
+        }
+
+        long startedAt = System.currentTimeMillis();
         logger.info("Initializing storage manager with backend: " + storageType);
+        sqliteProfile = resolveSqliteProfile();
+
+        // Find the existing data from the files alone. Backends are only created for the configured type
+        // and a migration source, so a YAML setup never creates, or even loads, the SQLite backends.
+        File yamlFile = dataDirectory.resolve(YAMLStorageBackend.DATA_FILE).toFile();
+        boolean yamlExists = yamlFile.exists();
+
+        boolean yamlShardsExist = ShardedYAMLStorageBackend.hasData(dataDirectory);
+        boolean yamlSplitInterrupted = yamlShardsExist && ShardedYAMLStorageBackend.hasIncompleteMigration(dataDirectory);
 
-        // Check if this is a new setup or needs migration
-        YAMLStorageBackend yamlBackend = new YAMLStorageBackend(logger, dataDirectory);
-        boolean yamlExists = yamlBackend.getDataFile().exists();
+        // Other backends migrate from whichever YAML layout holds the data
+        boolean yamlShardsComplete = yamlShardsExist && !yamlSplitInterrupted;
+        boolean yamlSourceExists = yamlShardsComplete || yamlExists;
+
+        boolean sqliteExists = dataDirectory.resolve(SQLiteStorageBackend.DATABASE_FILE).toFile().exists();
+
+        // SQLite data of an earlier setup can only be read with the SQLite driver installed in backends/
+        boolean sqliteReadable = true;
+        if (!"sqlite".equals(storageType) && (sqliteExists || SQLiteShardRebalancer.hasShards(dataDirectory))
+                && !SQLiteBackendProvider.isDriverAvailable()) {
+            logger.warn("SQLite data exists, but the SQLite driver is not installed in " + StorageBackendProviders.BACKENDS_DIRECTORY
+                    + "/. It is not migrated into " + storageType + " storage.");
+            sqliteReadable = false;
+        }
 
-        // Initialize YAML backend if it exists (needed for migration)
-        if (yamlExists) {
-            yamlBackend.initialize();
+        // Finish or discard an interrupted shard rebalance before looking at the shards
+        int shardCount = Math.max(1, config.getStorageSqliteShards());
+        SQLiteShardRebalancer rebalancer = null;
+        int existingShards = 0;
+        if (sqliteReadable && ("sqlite".equals(storageType) || SQLiteShardRebalancer.hasShards(dataDirectory))) {
+            rebalancer = createShardRebalancer();
+            rebalancer.recover();
+            existingShards = rebalancer.getCurrentShardCount();
         }
+        ShardedSQLiteStorageBackend shardedBackend = existingShards > 0 ? createShardedSqliteBackend(existingShards) : null;
+        boolean shardsExist = shardedBackend != null;
 
-        SQLiteStorageBackend sqliteBackend = new SQLiteStorageBackend(logger, dataDirectory);
-        boolean sqliteExists = sqliteBackend.getDatabaseFile().exists();
+        // Other backends migrate from whichever SQLite layout holds the data
+        boolean sqliteSourceExists = sqliteReadable && (shardsExist || sqliteExists);
+
+        boolean journalExists = JournalStorageBackend.hasData(dataDirectory);
+        boolean mappedExists = MappedStorageBackend.hasData(dataDirectory);
 
         // Determine which backend to use and if migration is needed
         StorageBackend targetBackend;
+        StorageBackend migrationSource = null;
+
+        if ("sqlite".equals(storageType) && shardCount > 1) {
+            // A migration into the shards that did not finish starts over from its source
+            boolean shardMigrationInterrupted = shardsExist && shardedBackend.hasIncompleteMigration();
+            if (shardMigrationInterrupted) {
+                rebalancer.discard();
+            } else if (shardsExist && existingShards != shardCount) {
+                shardCount = rebalanceShards(rebalancer, existingShards, shardCount);
+            }
+            ShardedSQLiteStorageBackend targetShards = createShardedSqliteBackend(shardCount);
+            targetBackend = targetShards;
 
-        if ("sqlite".equals(storageType)) {
+            // Split the single database file, or data.yml, into shards
+            if (!shardsExist || shardMigrationInterrupted) {
+                if (sqliteExists) {
+                    migrationSource = createSqliteBackend();
+                } else if (yamlSourceExists) {
+                    migrationSource = yamlShardsComplete ? createShardedYamlBackend() : createYamlBackend();
+                }
+            } else if (sqliteExists || yamlSourceExists) {
+                logger.warn("SQLite shards and an older database file or data.yml both exist. Using the shards as configured.");
+            }
+        } else if ("sqlite".equals(storageType)) {
+            SQLiteStorageBackend sqliteBackend = createSqliteBackend();
             targetBackend = sqliteBackend;
 
-            // Check if we need to migrate from YAML
-            if (yamlExists && !sqliteExists) {
-                migrationNeeded = true;
-                logger.info("Migration from YAML to SQLite will be performed.");
+            // storage.sqlite.shards was set back to 1, so the shards are merged into one file
+            if (!sqliteExists && shardsExist && !shardedBackend.hasIncompleteMigration()) {
+                migrationSource = shardedBackend;
+            } else if (yamlSourceExists && (!sqliteExists || sqliteBackend.hasIncompleteMigration())) {
+                migrationSource = yamlShardsComplete ? createShardedYamlBackend() : createYamlBackend();
             } else if (yamlExists && sqliteExists) {
                 logger.warn("Both YAML and SQLite databases exist. Using SQLite as configured.");
-                logger.warn("YAML data file will be kept as backup: " + yamlBackend.getDataFile().getName() + ".bak");
+                logger.warn("YAML data file will be kept as backup: " + yamlFile.getName() + ".bak");
+            }
+        } else if ("journal".equals(storageType)) {
+            targetBackend = createJournalBackend();
+
+            // Prefer SQLite as the migration source, since it is the more likely to be up to date
+            if (!journalExists && sqliteSourceExists) {
+                migrationSource = shardsExist ? shardedBackend : createSqliteBackend();
+            } else if (!journalExists && yamlSourceExists) {
+                migrationSource = yamlShardsComplete ? createShardedYamlBackend() : createYamlBackend();
+            } else if (journalExists && (yamlSourceExists || sqliteSourceExists)) {
+                logger.warn("Journal data and older YAML/SQLite data both exist. Using the journal as configured.");
+            }
+        } else if ("mmap".equals(storageType)) {
+            targetBackend = createMappedBackend();
+
+            // Migrate from whichever other backend holds data, newest format first
+            if (!mappedExists && journalExists) {
+                migrationSource = createJournalBackend();
+            } else if (!mappedExists && sqliteSourceExists) {
+                migrationSource = shardsExist ? shardedBackend : createSqliteBackend();
+            } else if (!mappedExists && yamlSourceExists) {
+                migrationSource = yamlShardsComplete ? createShardedYamlBackend() : createYamlBackend();
+            } else if (mappedExists && (yamlSourceExists || sqliteSourceExists || journalExists)) {
+                logger.warn("Mapped data and older YAML/SQLite/journal data both exist. Using the mapped data as configured.");
+            }
+        } else if ("jdbc".equals(storageType)) {
+            targetBackend = createJdbcBackend();
+
+            // Each proxy adds its local players once; players already in the shared table are kept
+            if (mappedExists) {
+                migrationSource = createMappedBackend();
+            } else if (journalExists) {
+                migrationSource = createJournalBackend();
+            } else if (sqliteSourceExists) {
+                migrationSource = shardsExist ? shardedBackend : createSqliteBackend();
+            } else if (yamlSourceExists) {
+                migrationSource = yamlShardsComplete ? createShardedYamlBackend() : createYamlBackend();
+            }
+        } else if (providers.get(storageType) != null) {
+            targetBackend = createProvidedBackend(storageType);
+
+            // Nothing is known about the files of a provided backend, so existing data is not migrated
+            if (yamlSourceExists || sqliteSourceExists || journalExists || mappedExists) {
+                logger.info("Existing local player data is not migrated into '" + storageType + "' storage automatically. "
+                        + "Use /srr export with the old storage type, then /srr import with the new one.");
             }
         } else {
             // Default to YAML
-            targetBackend = yamlBackend;
+            if (config.getStorageYamlSharded()) {
+                targetBackend = createShardedYamlBackend();
+
+                // One-time split of data.yml, started over if it was interrupted
+                if ((!yamlShardsExist || yamlSplitInterrupted) && yamlExists) {
+                    migrationSource = createYamlBackend();
+                } else if (yamlShardsExist && yamlExists) {
+                    logger.warn("YAML shards and data.yml both exist. Using the shards as configured.");
+                }
+            } else {
+                targetBackend = createYamlBackend();
 
-            if (sqliteExists && !yamlExists) {
+                // storage.yaml.sharded was turned off, so the shards are merged back into data.yml
+                if (!yamlExists && yamlShardsComplete) {
+                    migrationSource = createShardedYamlBackend();
+                }
+            }
+
+            if (sqliteExists && !yamlSourceExists) {
                 logger.warn("SQLite database exists but YAML is configured. Consider migrating to SQLite for better performance.");
-            } else if (sqliteExists && yamlExists) {
+            } else if (sqliteExists && yamlSourceExists) {
                 logger.warn("Both YAML and SQLite databases exist. Using YAML as configured.");
             }
         }
@@ -83,73 +340,1184 @@ public class StorageManager {
 
         logger.info("Storage backend initialized: " + currentBackend.getBackendName());
 
+        int ioThreads = Math.max(1, config.getStorageIoThreads());
+        this.readExecutor = Executors.newFixedThreadPool(ioThreads, threadFactory("SmartRejoin-Storage-IO"));
+        this.writeExecutor = Executors.newSingleThreadExecutor(threadFactory("SmartRejoin-Storage-Write"));
+
+        this.cache = createCache(currentBackend);
+
         // Perform migration if needed
-        if (migrationNeeded) {
-            performMigration(yamlBackend, (SQLiteStorageBackend) targetBackend);
+        if (migrationSource != null) {
+            migrationNeeded = true;
+            logger.info("Migration from " + migrationSource.getBackendName() + " to " + targetBackend.getBackendName() + " will be performed.");
+            performMigration(migrationSource, dataFilesOf(migrationSource), targetBackend);
+        }
+
+        startRetention();
+        startBackups();
+        startKnownPlayers(currentBackend);
+        logStartupTiming(currentBackend, startedAt);
+
+        if (!storageType.equals(configuredType)) {
+            switchBackend(configuredType);
         }
     }
 
     /**
-     * Perform migration from YAML to SQLite.
+     * Log how long startup waited for storage, and, for a backend loading in the background, when its data is ready.
      */
-    private void performMigration(YAMLStorageBackend source, SQLiteStorageBackend target) {
-        logger.info("Starting migration from YAML to SQLite...");
+    private void logStartupTiming(StorageBackend backend, long startedAt) {
+        long blocked = System.currentTimeMillis() - startedAt;
+        CompletableFuture<Void> loaded = backend.whenLoaded();
+        if (loaded.isDone()) {
+            logger.info("Storage ready in " + blocked + "ms.");
+            return;
+        }
+        logger.info("Storage initialized in " + blocked + "ms. Player data is loading in the background; "
+                + "logins wait up to " + config.getStorageYamlLoadWaitTimeout() + "ms for players not loaded yet.");
+        loaded.thenRun(() -> logger.info("Player data ready " + (System.currentTimeMillis() - startedAt) + "ms after storage started initializing. "
+                + loadWaits.sum() + " lookups waited for it, " + loadWaitTimeouts.sum() + " timed out."));
+    }
+
+    /**
+     * Check if a backend benefits from the known players filter. Backends that answer from memory
+     * gain nothing, and backends shared with other proxies gain players this proxy never sees.
+     */
+    private boolean usesKnownPlayers(StorageBackend backend) {
+        return config.getStorageKnownPlayersEnabled() && !backend.isMemoryResident() && !backend.isSharedAcrossProxies();
+    }
 
+    /**
+     * Load the known players filter saved at the last shutdown, or build it by streaming every stored player.
+     * Lookups are not skipped until the filter is complete; writes are added to it from the start.
+     */
+    private void startKnownPlayers(StorageBackend backend) {
+        if (!usesKnownPlayers(backend)) {
+            return;
+        }
+        long expected = config.getStorageKnownPlayersExpected();
+        double falsePositiveRate = config.getStorageKnownPlayersFalsePositiveRate();
+
+        File file = dataDirectory.resolve(KNOWN_PLAYERS_FILE).toFile();
+        if (file.exists()) {
+            try {
+                KnownPlayerFilter loaded = KnownPlayerFilter.load(file, storageSignature(backend), expected, falsePositiveRate);
+                if (loaded != null) {
+                    knownPlayers = loaded;
+                    knownPlayersReady = true;
+                    logger.info("Loaded known players filter with " + loaded.size() + " players.");
+                }
+            } catch (IOException e) {
+                logger.warn("Could not load " + KNOWN_PLAYERS_FILE + ", rebuilding it: " + e.getMessage());
+            }
+            // Writes made from now on are not in the file, so it must not be used again after a crash
+            if (!file.delete()) {
+                logger.warn("Could not delete " + KNOWN_PLAYERS_FILE + ". Delete it by hand if the proxy does not shut down cleanly.");
+            }
+            if (knownPlayersReady) {
+                return;
+            }
+        }
+
+        KnownPlayerFilter filter = new KnownPlayerFilter(expected, falsePositiveRate);
+        knownPlayers = filter;
+        knownPlayersReady = false;
+        buildKnownPlayers(backend, filter);
+    }
+
+    private void buildKnownPlayers(StorageBackend backend, KnownPlayerFilter filter) {
+        readExecutor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                backend.forEachEntry((uuid, server) -> filter.add(uuid));
+                if (knownPlayers == filter) {
+                    knownPlayersReady = true;
+                }
+                logger.info("Built known players filter with " + filter.size() + " players in " + (System.currentTimeMillis() - start) + "ms.");
+            } catch (Exception e) {
+                logger.warn("Failed to build known players filter. Every lookup will query storage: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Describe the files a saved filter was built from, so a filter saved for other data is not used.
+     */
+    private String storageSignature(StorageBackend backend) {
+        StringBuilder signature = new StringBuilder(typeOf(backend));
+        for (File file : dataFilesOf(backend)) {
+            signature.append(':').append(file.getName()).append('/').append(file.length()).append('/').append(file.lastModified());
+        }
+        return signature.toString();
+    }
+
+    /**
+     * Check if a player definitely has no stored last server, so the storage lookup can be skipped.
+     */
+    private boolean isKnownToBeAbsent(UUID playerUuid) {
+        KnownPlayerFilter filter = knownPlayers;
+        if (filter == null || !knownPlayersReady || filter.mightContain(playerUuid)) {
+            return false;
+        }
+        knownPlayersSkipped.incrementAndGet();
+        return true;
+    }
+
+    private void addKnownPlayer(UUID playerUuid) {
+        KnownPlayerFilter filter = knownPlayers;
+        if (filter != null) {
+            filter.add(playerUuid);
+        }
+    }
+
+    /**
+     * Count lookups the filter let through that found nothing.
+     */
+    private Optional<String> recordLookup(Optional<String> result) {
+        if (result.isEmpty() && knownPlayers != null && knownPlayersReady) {
+            knownPlayersFalsePositives.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Create the read cache for a backend, or return null if the backend should not have one.
+     */
+    private PlayerDataCache createCache(StorageBackend backend) {
+        // Another proxy may change a shared backend at any time, so it brings its own expiring near-cache
+        if (!config.getStorageCacheEnabled() || backend.isMemoryResident() || backend.isSharedAcrossProxies()) {
+            return null;
+        }
+        PlayerDataCache newCache = new PlayerDataCache(config.getStorageCacheMaxEntries());
+        logger.info("Player data cache enabled with up to " + config.getStorageCacheMaxEntries() + " entries.");
+        warmCache(backend, newCache, Math.min(config.getStorageCacheWarmEntries(), config.getStorageCacheMaxEntries()));
+        return newCache;
+    }
+
+    private String normalizeType(String type) {
+        String lower = type == null ? "yaml" : type.toLowerCase();
+        return STORAGE_TYPES.contains(lower) || providers.get(lower) != null ? lower : "yaml";
+    }
+
+    /**
+     * Get the storage type name of a backend, as used for storage.type.
+     */
+    private String typeOf(StorageBackend backend) {
+        if (backend instanceof DualWriteStorageBackend dualWrite) {
+            return typeOf(dualWrite.getCurrent());
+        } else if (backend instanceof SQLiteStorageBackend || backend instanceof ShardedSQLiteStorageBackend) {
+            return "sqlite";
+        } else if (backend instanceof JournalStorageBackend) {
+            return "journal";
+        } else if (backend instanceof MappedStorageBackend) {
+            return "mmap";
+        } else if (backend instanceof JdbcStorageBackend) {
+            return "jdbc";
+        } else if (providers.typeOf(backend) != null) {
+            return providers.typeOf(backend);
+        }
+        return "yaml";
+    }
+
+    /**
+     * Describe the layout setting a running backend was created with, or null if its storage type has none.
+     */
+    private String layoutOf(StorageBackend backend) {
+        if (backend instanceof DualWriteStorageBackend dualWrite) {
+            return layoutOf(dualWrite.getCurrent());
+        } else if (backend instanceof ShardedSQLiteStorageBackend shardedBackend) {
+            return "storage.sqlite.shards: " + shardedBackend.getShardCount();
+        } else if (backend instanceof SQLiteStorageBackend) {
+            return "storage.sqlite.shards: 1";
+        } else if (backend instanceof ShardedYAMLStorageBackend) {
+            return "storage.yaml.sharded: true";
+        } else if (backend instanceof YAMLStorageBackend) {
+            return "storage.yaml.sharded: false";
+        }
+        return null;
+    }
+
+    /**
+     * Describe the configured layout setting of a storage type, in the form of {@link #layoutOf}.
+     */
+    private String configuredLayoutOf(String type) {
+        return switch (type) {
+            case "sqlite" -> "storage.sqlite.shards: " + Math.max(1, config.getStorageSqliteShards());
+            case "yaml" -> "storage.yaml.sharded: " + config.getStorageYamlSharded();
+            default -> null;
+        };
+    }
+
+    /**
+     * Create a new, uninitialized backend of the given storage type.
+     */
+    private StorageBackend createBackend(String type) throws Exception {
+        String normalized = normalizeType(type);
+        return switch (normalized) {
+            case "sqlite" -> config.getStorageSqliteShards() > 1
+                    ? createShardedSqliteBackend(config.getStorageSqliteShards())
+                    : createSqliteBackend();
+            case "journal" -> createJournalBackend();
+            case "mmap" -> createMappedBackend();
+            case "jdbc" -> createJdbcBackend();
+            case "yaml" -> config.getStorageYamlSharded() ? createShardedYamlBackend() : createYamlBackend();
+            default -> createProvidedBackend(normalized);
+        };
+    }
+
+    /**
+     * Create a backend of a type added by a provider, configured by its storage.&lt;type&gt; section.
+     */
+    private StorageBackend createProvidedBackend(String type) throws Exception {
+        return providers.create(type, new StorageBackendProvider.Context(logger, dataDirectory, config.getSection("storage." + type)));
+    }
+
+    private YAMLStorageBackend createYamlBackend() {
+        return new YAMLStorageBackend(logger, dataDirectory,
+                config.getStorageYamlWriteBehind(),
+                config.getStorageYamlFlushInterval(),
+                config.getStorageYamlMaxPendingWrites(),
+                config.getStorageYamlAsyncLoad());
+    }
+
+    private ShardedYAMLStorageBackend createShardedYamlBackend() {
+        return new ShardedYAMLStorageBackend(logger, dataDirectory,
+                config.getStorageYamlWriteBehind(),
+                config.getStorageYamlFlushInterval(),
+                config.getStorageYamlMaxPendingWrites());
+    }
+
+    private SQLiteStorageBackend createSqliteBackend() throws Exception {
+        return (SQLiteStorageBackend) createSqliteBackend(1);
+    }
+
+    private ShardedSQLiteStorageBackend createShardedSqliteBackend(int shards) throws Exception {
+        return (ShardedSQLiteStorageBackend) createSqliteBackend(shards);
+    }
+
+    /**
+     * Create SQLite storage through its built-in provider, with the storage.sqlite settings as resolved here.
+     */
+    private StorageBackend createSqliteBackend(int shards) throws Exception {
+        Map<String, Object> options = new HashMap<>();
+        options.put("shards", shards);
+        options.put("batch_size", config.getStorageSqliteBatchSize());
+        options.put("max_batch_delay", config.getStorageSqliteMaxBatchDelay());
+        options.put("queue_capacity", config.getStorageSqliteQueueCapacity());
+        options.put("profile", sqliteProfile.configName());
+        options.put(SQLiteBackendProvider.OPTION_CONVERT_TO_INCREMENTAL_VACUUM, config.getStorageRetentionEnabled());
+        return providers.create(SQLiteBackendProvider.TYPE, new StorageBackendProvider.Context(logger, dataDirectory, options));
+    }
+
+    private SQLiteShardRebalancer createShardRebalancer() {
+        return new SQLiteShardRebalancer(logger, dataDirectory,
+                config.getStorageSqliteBatchSize(),
+                config.getStorageSqliteMaxBatchDelay(),
+                config.getStorageSqliteQueueCapacity(),
+                sqliteProfile);
+    }
+
+    private SQLiteProfile resolveSqliteProfile() {
+        String name = config.getStorageSqliteProfile();
+        SQLiteProfile profile = SQLiteProfile.fromName(name);
+        if (profile == null) {
+            logger.warn("Unknown storage.sqlite.profile '" + name + "'. Use durable, balanced or throughput. Using balanced.");
+            return SQLiteProfile.BALANCED;
+        }
+        return profile;
+    }
+
+    /**
+     * Move the players of the existing shards into the configured number of shards.
+     * @return The shard count to use, which stays the old one if the rebalance failed
+     */
+    private int rebalanceShards(SQLiteShardRebalancer rebalancer, int from, int to) {
+        try {
+            rebalancer.rebalance(to, (current, total, message) -> logger.info(message));
+            return to;
+        } catch (Exception e) {
+            logger.error("Failed to rebalance SQLite storage from " + from + " to " + to + " shards. Continuing with " + from + " shards.", e);
+            return from;
+        }
+    }
+
+    private JournalStorageBackend createJournalBackend() {
+        return new JournalStorageBackend(logger, dataDirectory,
+                config.getStorageJournalFsync(),
+                config.getStorageJournalCompactionRatio(),
+                config.getStorageJournalMinCompactionSize() * 1024L);
+    }
+
+    private MappedStorageBackend createMappedBackend() {
+        return new MappedStorageBackend(logger, dataDirectory);
+    }
+
+    private JdbcStorageBackend createJdbcBackend() {
+        return new JdbcStorageBackend(logger,
+                config.getStorageJdbcUrl(),
+                config.getStorageJdbcUsername(),
+                config.getStorageJdbcPassword(),
+                config.getStorageJdbcTable(),
+                config.getStorageJdbcPoolSize(),
+                config.getStorageJdbcConnectionTimeout(),
+                config.getStorageJdbcBatchSize(),
+                config.getStorageJdbcMaxBatchDelay(),
+                config.getStorageJdbcQueueCapacity(),
+                config.getStorageJdbcNearCacheEnabled() ? config.getStorageJdbcNearCacheTtl() : 0,
+                config.getStorageJdbcNearCacheMaxEntries());
+    }
+
+    /**
+     * Schedule the retention sweep if enabled and supported by the backend.
+     */
+    private void startRetention() {
+        if (!config.getStorageRetentionEnabled() || retentionTask != null) {
+            return;
+        }
+        if (!currentBackend.supportsRetention()) {
+            logger.warn("Retention is enabled, but the " + currentBackend.getBackendName() + " backend does not store when players were last seen, so it keeps every player. Use 'sqlite', 'mmap', 'journal' or 'jdbc' storage for retention.");
+            return;
+        }
+
+        retentionSweeper = new RetentionSweeper(logger, this::getCurrentBackend, this::forgetPrunedPlayer,
+                config.getStorageRetentionDays(),
+                config.getStorageRetentionBatchSize(),
+                config.getStorageRetentionBatchDelay(),
+                config.getStorageRetentionMaxSweepTime());
+        long interval = Math.max(1, config.getStorageRetentionInterval());
+        retentionTask = plugin.getServer().getScheduler().buildTask(plugin, retentionSweeper::sweep)
+                .delay(1, TimeUnit.MINUTES)
+                .repeat(interval, TimeUnit.MINUTES)
+                .schedule();
+        logger.info("Retention enabled: players unseen for " + config.getStorageRetentionDays() + " days are deleted every " + interval + " minutes.");
+    }
+
+    /**
+     * Set up backups, and schedule them if enabled.
+     */
+    private void startBackups() {
+        backupManager = new BackupManager(logger, this::getCurrentBackend, dataDirectory, config.getStorageBackupKeep());
+        if (!config.getStorageBackupEnabled()) {
+            return;
+        }
+
+        long interval = Math.max(1, config.getStorageBackupInterval());
+        backupTask = plugin.getServer().getScheduler().buildTask(plugin, backupManager::backupQuietly)
+                .delay(interval, TimeUnit.MINUTES)
+                .repeat(interval, TimeUnit.MINUTES)
+                .schedule();
+        logger.info("Scheduled backups enabled: every " + interval + " minutes, keeping the newest " + config.getStorageBackupKeep() + ".");
+    }
+
+    /**
+     * Write a backup of the player data on a background thread.
+     * @return Future completed with the backup, or failed if it could not be written or another backup is running
+     */
+    public CompletableFuture<BackupManager.Backup> backup() {
+        CompletableFuture<BackupManager.Backup> result = new CompletableFuture<>();
+        BackupManager manager = backupManager;
+        if (manager == null) {
+            result.completeExceptionally(new IllegalStateException("Storage is not initialized"));
+            return result;
+        }
+        if (manager.isRunning()) {
+            result.completeExceptionally(new IllegalStateException("A backup is already running"));
+            return result;
+        }
+        plugin.getServer().getScheduler().buildTask(plugin, () -> {
+            try {
+                result.complete(manager.backup());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }).schedule();
+        return result;
+    }
+
+    /**
+     * Export every player to a file in exports/ on a background thread.
+     * @param fileName Name of the file, or null for a name with the current time
+     * @param callback Receives progress messages
+     * @return Future completed with the result, or failed if the export could not be written or another transfer is running
+     */
+    public CompletableFuture<PlayerDataTransfer.Result> exportPlayers(String fileName, StorageBackend.MigrationCallback callback) {
+        String name = fileName != null ? fileName : "players-" + LocalDateTime.now().format(EXPORT_NAME_FORMAT);
+        return runTransfer(name, file -> PlayerDataTransfer.export(currentBackend, file, callback));
+    }
+
+    /**
+     * Import every player of a file in exports/ on a background thread. The proxy keeps serving
+     * players meanwhile; imported players overwrite the last server stored for them.
+     * @param fileName Name of a file written by {@link #exportPlayers}
+     * @param callback Receives progress messages
+     * @return Future completed with the result, or failed if the file could not be read or another transfer is running
+     */
+    public CompletableFuture<PlayerDataTransfer.Result> importPlayers(String fileName, StorageBackend.MigrationCallback callback) {
+        return runTransfer(fileName, file -> {
+            if (!file.isFile()) {
+                throw new IOException(EXPORT_DIRECTORY + "/" + file.getName() + " does not exist");
+            }
+            return PlayerDataTransfer.importFrom(file, this::importBatch, IMPORT_BATCH_SIZE, callback);
+        });
+    }
+
+    private interface Transfer {
+        PlayerDataTransfer.Result run(File file) throws Exception;
+    }
+
+    private CompletableFuture<PlayerDataTransfer.Result> runTransfer(String fileName, Transfer transfer) {
+        CompletableFuture<PlayerDataTransfer.Result> result = new CompletableFuture<>();
+        if (currentBackend == null) {
+            result.completeExceptionally(new IllegalStateException("Storage is not initialized"));
+            return result;
+        }
+        if (fileName.isEmpty() || fileName.contains("/") || fileName.contains("\\") || fileName.startsWith(".")) {
+            result.completeExceptionally(new IllegalArgumentException("Invalid file name: " + fileName));
+            return result;
+        }
+        if (!transferRunning.compareAndSet(false, true)) {
+            result.completeExceptionally(new IllegalStateException("An export or import is already running"));
+            return result;
+        }
+
+        String name = fileName.endsWith(PlayerDataTransfer.FILE_EXTENSION) ? fileName : fileName + PlayerDataTransfer.FILE_EXTENSION;
+        plugin.getServer().getScheduler().buildTask(plugin, () -> {
+            try {
+                Path directory = dataDirectory.resolve(EXPORT_DIRECTORY);
+                Files.createDirectories(directory);
+                result.complete(transfer.run(directory.resolve(name).toFile()));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            } finally {
+                transferRunning.set(false);
+            }
+        }).schedule();
+        return result;
+    }
+
+    /**
+     * Drop everything held in memory about a player that retention deleted from storage,
+     * so they are not answered from the cache or have their next write elided.
+     */
+    private void forgetPrunedPlayer(UUID playerUuid) {
+        invalidatePrefetch(playerUuid);
+        storedValues.remove(playerUuid);
+        PlayerDataCache writeCache = cache;
+        if (writeCache != null) {
+            writeCache.invalidate(playerUuid);
+        }
+    }
+
+    /**
+     * Write one batch of imported players. Imported players are mostly offline, so they are kept
+     * out of the cache and the elision map instead of pushing online players out.
+     */
+    private void importBatch(Map<UUID, String> batch) {
+        // Known before the write, so lookups in between are not skipped
+        batch.keySet().forEach(this::addKnownPlayer);
+        currentBackend.setLastServers(batch);
+        PlayerDataCache writeCache = cache;
+        for (UUID playerUuid : batch.keySet()) {
+            invalidatePrefetch(playerUuid);
+            storedValues.remove(playerUuid);
+            if (writeCache != null) {
+                writeCache.invalidate(playerUuid);
+            }
+        }
+    }
+
+    /**
+     * Perform migration from one backend to another.
+     * On success the source files are renamed so the migration only runs once.
+     */
+    private void performMigration(StorageBackend source, List<File> sourceFiles, StorageBackend target) {
+        String sourceName = source.getBackendName();
+        String targetName = target.getBackendName();
+        logger.info("Starting migration from " + sourceName + " to " + targetName + "...");
+
+        boolean sourceReleased = false;
         try {
+            // YAML data is streamed straight from its files instead of being loaded first
+            if (!isStreamedYaml(source)) {
+                source.initialize();
+            }
+
             // Perform the migration
             int migrated = target.migrateFrom(source, (current, total, message) -> {
                 logger.info(message);
             });
 
-            logger.info("Migration completed successfully: " + migrated + " players migrated to SQLite.");
+            logger.info("Migration completed successfully: " + migrated + " players migrated to " + targetName + ".");
 
-            // Rename the old YAML file to indicate it's been migrated
-            File yamlBackup = new File(source.getDataFile().getAbsolutePath() + ".migrated");
-            if (source.getDataFile().renameTo(yamlBackup)) {
-                logger.info("Original YAML file renamed to: " + yamlBackup.getName());
-            } else {
-                logger.warn("Could not rename YAML file after migration. It will be kept as backup.");
-            }
+            // Release the source before renaming its files
+            sourceReleased = true;
+            source.shutdown();
+
+            // Rename the old files to indicate they've been migrated
+            renameMigratedFiles(sourceName, sourceFiles);
 
-            logger.info("You can now delete the old YAML backup file once you verify the SQLite migration is working correctly.");
+            logger.info("You can now delete the old " + sourceName + " backup file once you verify the " + targetName + " migration is working correctly.");
 
         } catch (Exception e) {
             logger.error("Migration failed! Please check the error logs.", e);
-            logger.error("The original YAML file has been preserved at: " + source.getDataFile().getAbsolutePath());
-            logger.error("Please fix the issue and try again, or continue using YAML storage by setting storage.type to 'yaml' in config.yml.");
+            logger.error("The original " + sourceName + " data has been preserved at: " + sourceFiles.get(0).getAbsolutePath());
+            logger.error("Please fix the issue and try again, or continue using " + sourceName + " storage by changing storage.type in config.yml.");
 
-            // Fallback to YAML if migration fails
+            // Fallback to the source backend if migration fails
             try {
+                target.shutdown();
                 source.initialize();
                 this.currentBackend = source;
-                logger.info("Falling back to YAML storage due to migration failure.");
+                sourceReleased = true;
+                logger.info("Falling back to " + sourceName + " storage due to migration failure.");
             } catch (Exception fallbackException) {
-                logger.error("Failed to fallback to YAML storage!", fallbackException);
+                logger.error("Failed to fallback to " + sourceName + " storage!", fallbackException);
+            }
+        } finally {
+            // A source that is neither in use nor shut down yet still holds its files and threads
+            if (!sourceReleased) {
+                source.shutdown();
             }
         }
     }
 
+    private static boolean isStreamedYaml(StorageBackend backend) {
+        return backend instanceof YAMLStorageBackend || backend instanceof ShardedYAMLStorageBackend;
+    }
+
+    private void renameMigratedFiles(String sourceName, List<File> sourceFiles) {
+        for (File sourceFile : sourceFiles) {
+            if (!sourceFile.exists()) {
+                continue;
+            }
+            File backup = new File(sourceFile.getAbsolutePath() + ".migrated");
+            if (sourceFile.renameTo(backup)) {
+                logger.info("Original " + sourceName + " file renamed to: " + backup.getName());
+            } else {
+                logger.warn("Could not rename " + sourceName + " file after migration. It will be kept as backup.");
+            }
+        }
+    }
+
+    /**
+     * Get the local files holding a backend's data, which are renamed once it has been migrated away from.
+     */
+    private static List<File> dataFilesOf(StorageBackend backend) {
+        if (backend instanceof YAMLStorageBackend yamlBackend) {
+            return List.of(yamlBackend.getDataFile());
+        } else if (backend instanceof ShardedYAMLStorageBackend shardedYamlBackend) {
+            return shardedYamlBackend.getDataFiles();
+        } else if (backend instanceof SQLiteStorageBackend sqliteBackend) {
+            return List.of(sqliteBackend.getDatabaseFile());
+        } else if (backend instanceof ShardedSQLiteStorageBackend shardedBackend) {
+            return shardedBackend.getDataFiles();
+        } else if (backend instanceof JournalStorageBackend journalBackend) {
+            return journalBackend.getDataFiles();
+        } else if (backend instanceof MappedStorageBackend mappedBackend) {
+            return mappedBackend.getDataFiles();
+        }
+        return List.of();
+    }
+
+    /**
+     * Switch to another storage backend without a restart.
+     * <p>
+     * The new backend is initialized and receives every write from now on, while the existing
+     * players are copied into it on a background thread. Reads stay on the current backend until
+     * the copy is complete and then move over in one step; the old backend is shut down shortly
+     * after and its files are renamed like after a startup migration. Players never wait on the copy.
+     * @param type The storage type to switch to
+     * @return true if a switch was started
+     */
+    public synchronized boolean switchBackend(String type) {
+        String newType = normalizeType(type);
+        DualWriteStorageBackend running = activeSwitch;
+        if (running != null) {
+            logger.warn("Storage is already switching to " + running.getTarget().getBackendName() + ". Try again once it has finished.");
+            return false;
+        }
+        if (currentBackend == null) {
+            return false;
+        }
+        if (newType.equals(typeOf(currentBackend))) {
+            // Same type in another layout; the startup migrations move the data between layouts
+            String layout = layoutOf(currentBackend);
+            String configuredLayout = configuredLayoutOf(newType);
+            if (layout != null && !layout.equals(configuredLayout)) {
+                logger.warn("Storage layout changed from " + layout + " to " + configuredLayout
+                        + ". Restart the proxy to apply it; storage keeps running with " + layout + " until then.");
+            }
+            return false;
+        }
+
+        StorageBackend oldBackend = currentBackend;
+        StorageBackend newBackend;
+        try {
+            newBackend = createBackend(newType);
+            newBackend.initialize();
+        } catch (Exception e) {
+            logger.error("Could not start the " + newType + " storage backend. Keeping " + oldBackend.getBackendName() + ".", e);
+            return false;
+        }
+
+        // Until the switch completes, the old backend is the one to start from after a restart
+        writeSwitchMarker(typeOf(oldBackend));
+
+        // Lookups are not skipped during the switch; a new filter collects the writes made meanwhile
+        knownPlayersReady = false;
+        knownPlayers = usesKnownPlayers(newBackend)
+                ? new KnownPlayerFilter(config.getStorageKnownPlayersExpected(), config.getStorageKnownPlayersFalsePositiveRate())
+                : null;
+
+        DualWriteStorageBackend dualWrite = new DualWriteStorageBackend(oldBackend, newBackend);
+        activeSwitch = dualWrite;
+        currentBackend = dualWrite;
+        logger.info("Switching storage from " + oldBackend.getBackendName() + " to " + newBackend.getBackendName() + " in the background...");
+
+        Thread thread = new Thread(() -> runSwitch(dualWrite), "SmartRejoin-Storage-Switch");
+        thread.setDaemon(true);
+        switchThread = thread;
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Copy existing players into the new backend, then move reads over and retire the old backend.
+     */
+    private void runSwitch(DualWriteStorageBackend dualWrite) {
+        StorageBackend oldBackend = dualWrite.getCurrent();
+        StorageBackend newBackend = dualWrite.getTarget();
+        long start = System.currentTimeMillis();
+
+        int copied;
+        try {
+            copied = dualWrite.copy((current, total, message) -> logger.info("Storage switch: " + message));
+        } catch (Exception e) {
+            synchronized (this) {
+                if (activeSwitch != dualWrite) {
+                    return;
+                }
+                currentBackend = oldBackend;
+                activeSwitch = null;
+                switchThread = null;
+                knownPlayers = null;
+            }
+            newBackend.shutdown();
+            logger.error("Storage switch to " + newBackend.getBackendName() + " failed. Staying on " + oldBackend.getBackendName()
+                    + "; the switch is retried on the next start.", e);
+            return;
+        }
+
+        synchronized (this) {
+            if (activeSwitch != dualWrite) {
+                // Shut down while copying
+                return;
+            }
+            cache = createCache(newBackend);
+            currentBackend = newBackend;
+            activeSwitch = null;
+            switchThread = null;
+            prefetches.clear();
+        }
+        deleteSwitchMarker();
+        logger.info("Storage switched to " + newBackend.getBackendName() + ": " + copied + " players copied in "
+                + (System.currentTimeMillis() - start) + "ms.");
+
+        startRetention();
+        KnownPlayerFilter filter = knownPlayers;
+        if (filter != null) {
+            buildKnownPlayers(newBackend, filter);
+        }
+        scheduleRetire(oldBackend);
+    }
+
+    /**
+     * Wait for a cancelled switch to stop copying.
+     */
+    private void awaitSwitchThread(Thread thread) {
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn("Storage switch did not stop in time. Shutting down storage while it is still copying.");
+        }
+    }
+
+    /**
+     * Shut down a replaced backend once reads and writes that started before the switch have finished.
+     */
+    private synchronized void scheduleRetire(StorageBackend oldBackend) {
+        retiringBackend = oldBackend;
+        retireTask = plugin.getServer().getScheduler().buildTask(plugin, this::retireOldBackend)
+                .delay(RETIRE_DELAY_SECONDS, TimeUnit.SECONDS)
+                .schedule();
+    }
+
+    private void retireOldBackend() {
+        StorageBackend oldBackend;
+        synchronized (this) {
+            oldBackend = retiringBackend;
+            retiringBackend = null;
+            retireTask = null;
+        }
+        if (oldBackend == null) {
+            return;
+        }
+        oldBackend.shutdown();
+        renameMigratedFiles(oldBackend.getBackendName(), dataFilesOf(oldBackend));
+        logger.info("Retired the " + oldBackend.getBackendName() + " storage backend.");
+    }
+
+    private File switchMarkerFile() {
+        return dataDirectory.resolve(SWITCH_MARKER_FILE).toFile();
+    }
+
+    private String readSwitchMarker() {
+        File marker = switchMarkerFile();
+        if (!marker.exists()) {
+            return null;
+        }
+        try {
+            return normalizeType(Files.readString(marker.toPath()).trim());
+        } catch (IOException e) {
+            logger.warn("Could not read " + SWITCH_MARKER_FILE + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeSwitchMarker(String fromType) {
+        try {
+            Files.createDirectories(dataDirectory);
+            Files.writeString(switchMarkerFile().toPath(), fromType);
+        } catch (IOException e) {
+            logger.warn("Could not write " + SWITCH_MARKER_FILE + ". An interrupted switch will not resume after a restart: " + e.getMessage());
+        }
+    }
+
+    private void deleteSwitchMarker() {
+        try {
+            Files.deleteIfExists(switchMarkerFile().toPath());
+        } catch (IOException e) {
+            logger.warn("Could not delete " + SWITCH_MARKER_FILE + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check if a runtime storage switch is in progress.
+     */
+    public boolean isSwitchingBackend() {
+        return activeSwitch != null;
+    }
+
+    /**
+     * Fill the cache with the most recently active players in the background.
+     */
+    private void warmCache(StorageBackend backend, PlayerDataCache warmTarget, int entries) {
+        if (entries <= 0 || !(backend instanceof SQLiteStorageBackend || backend instanceof ShardedSQLiteStorageBackend)) {
+            return;
+        }
+        readExecutor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                // putIfAbsent so values written while warming are never replaced by older ones
+                if (backend instanceof ShardedSQLiteStorageBackend shardedBackend) {
+                    shardedBackend.forEachRecentEntry(entries, warmTarget::putIfAbsent);
+                } else {
+                    ((SQLiteStorageBackend) backend).forEachRecentEntry(entries, warmTarget::putIfAbsent);
+                }
+                logger.info("Warmed player data cache with " + warmTarget.size() + " entries in " + (System.currentTimeMillis() - start) + "ms.");
+            } catch (Exception e) {
+                logger.warn("Failed to warm player data cache: " + e.getMessage());
+            }
+        });
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     /**
      * Shutdown the storage manager.
      */
     public void shutdown() {
+        if (retentionTask != null) {
+            retentionTask.cancel();
+            retentionTask = null;
+        }
+        if (backupTask != null) {
+            backupTask.cancel();
+            backupTask = null;
+        }
+
+        // A running switch stops here and starts over on the next start
+        DualWriteStorageBackend cancelledSwitch;
+        Thread cancelledThread;
+        synchronized (this) {
+            cancelledSwitch = activeSwitch;
+            cancelledThread = switchThread;
+            activeSwitch = null;
+            switchThread = null;
+            if (retireTask != null) {
+                retireTask.cancel();
+            }
+        }
+        if (cancelledSwitch != null) {
+            // The copy still writes to the new backend, so it has to stop before the backends shut down
+            cancelledSwitch.cancel();
+            awaitSwitchThread(cancelledThread);
+        }
+        retireOldBackend();
+
+        // Let queued async writes reach the backend before it shuts down
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+            try {
+                if (!writeExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    logger.warn("Timed out waiting for " + pendingWrites.size() + " pending storage writes.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (readExecutor != null) {
+            readExecutor.shutdownNow();
+        }
+        prefetches.clear();
+
         if (currentBackend != null) {
             currentBackend.shutdown();
+            saveKnownPlayers();
+        }
+        if (providers != null) {
+            providers.close();
+        }
+    }
+
+    /**
+     * Save a complete known players filter, tagged with the files it describes, so the next start can skip rebuilding it.
+     */
+    private void saveKnownPlayers() {
+        KnownPlayerFilter filter = knownPlayers;
+        if (filter == null || !knownPlayersReady || currentBackend instanceof DualWriteStorageBackend) {
+            return;
+        }
+        try {
+            filter.save(dataDirectory.resolve(KNOWN_PLAYERS_FILE).toFile(), storageSignature(currentBackend));
+        } catch (IOException e) {
+            logger.warn("Could not save " + KNOWN_PLAYERS_FILE + ". It will be rebuilt on the next start: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check whether storage already holds this server for the player. If it does not,
+     * the value is recorded as written, since the caller writes it next.
+     * @return true if the write changes nothing and can be skipped
+     */
+    private boolean isRedundantWrite(UUID playerUuid, String serverName) {
+        if (!config.getStorageWriteElisionEnabled()) {
+            performedWrites.increment();
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean[] redundant = {false};
+        // Checked and recorded in one step, so of two equal writes racing, only one is skipped
+        storedValues.compute(playerUuid, (uuid, stored) -> {
+            if (stored != null && stored.serverName().equals(serverName) && !needsRefresh(stored, now)) {
+                redundant[0] = true;
+                return stored;
+            }
+            return new StoredValue(serverName, now);
+        });
+        if (redundant[0]) {
+            elidedWrites.increment();
+        } else {
+            performedWrites.increment();
+        }
+        return redundant[0];
+    }
+
+    /**
+     * Retention deletes players by update time, so with retention enabled an unchanged value
+     * is still written once per session and once a day, to mark the player as active.
+     */
+    private boolean needsRefresh(StoredValue stored, long now) {
+        return config.getStorageRetentionEnabled()
+                && (stored.writtenAt() == 0 || now - stored.writtenAt() >= ELISION_REFRESH_MILLIS);
+    }
+
+    /**
+     * Record the last server a lookup found in storage, so writing the same server again is skipped.
+     */
+    private CompletableFuture<Optional<String>> rememberStoredValue(UUID playerUuid, CompletableFuture<Optional<String>> lookup) {
+        if (!config.getStorageWriteElisionEnabled()) {
+            return lookup;
         }
+        return lookup.thenApply(result -> {
+            result.ifPresent(serverName -> {
+                // A write made during the lookup is newer, so it is kept
+                StoredValue value = new StoredValue(serverName, 0);
+                if (storedValues.putIfAbsent(playerUuid, value) == null && plugin.getServer().getPlayer(playerUuid).isEmpty()) {
+                    // The player left before the lookup finished, and onPlayerQuit may already have run
+                    storedValues.remove(playerUuid, value);
+                }
+            });
+            return result;
+        });
+    }
+
+    /**
+     * A write that failed did not reach storage, so it must not cause the next equal write to be skipped.
+     */
+    private void forgetStoredValue(UUID playerUuid, String serverName) {
+        storedValues.computeIfPresent(playerUuid, (uuid, stored) -> stored.serverName().equals(serverName) ? null : stored);
+    }
+
+    /**
+     * Forget what is known about a player who left the proxy. Their last write has already been
+     * submitted, and keeping every player ever seen would grow without bound.
+     */
+    public void onPlayerQuit(UUID playerUuid) {
+        storedValues.remove(playerUuid);
     }
 
     /**
      * Set the last server a player was on.
+     * Skipped if storage already holds this server for the player.
      */
     public void setLastServer(UUID playerUuid, String serverName) {
-        currentBackend.setLastServer(playerUuid, serverName);
+        if (isRedundantWrite(playerUuid, serverName)) {
+            return;
+        }
+        invalidatePrefetch(playerUuid);
+        addKnownPlayer(playerUuid);
+        if (cache != null) {
+            cache.put(playerUuid, serverName);
+        }
+        try {
+            currentBackend.setLastServer(playerUuid, serverName);
+        } catch (RuntimeException e) {
+            forgetStoredValue(playerUuid, serverName);
+            throw e;
+        }
     }
 
     /**
      * Get the last server a player was on.
+     * While the backend is still loading at startup, a player not loaded yet waits for the load,
+     * up to storage.yaml.load_wait_timeout, like {@link #getLastServerAsync(UUID)}.
      */
     public Optional<String> getLastServer(UUID playerUuid) {
-        return currentBackend.getLastServer(playerUuid);
+        String pending = pendingWrites.get(playerUuid);
+        if (pending != null) {
+            return Optional.of(pending);
+        }
+        PlayerDataCache readCache = cache;
+        if (readCache != null) {
+            String cached = readCache.get(playerUuid);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+        if (isKnownToBeAbsent(playerUuid)) {
+            return Optional.empty();
+        }
+        StorageBackend backend = currentBackend;
+        CompletableFuture<Void> loaded = backend.whenLoaded();
+        if (!loaded.isDone()) {
+            Optional<String> early = backend.getLastServer(playerUuid);
+            if (early.isPresent()) {
+                loadHits.increment();
+                return early;
+            }
+            awaitLoad(loaded);
+        }
+        Optional<String> result = recordLookup(backend.getLastServer(playerUuid));
+        return readCache != null ? fillCache(readCache, playerUuid, result) : result;
+    }
+
+    /**
+     * Block until the backend has finished loading, up to storage.yaml.load_wait_timeout.
+     */
+    private void awaitLoad(CompletableFuture<Void> loaded) {
+        loadWaits.increment();
+        try {
+            loaded.get(Math.max(0, config.getStorageYamlLoadWaitTimeout()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            loadWaitTimeouts.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // A failed load has logged its error; answer from what was loaded
+        }
+    }
+
+    private static Optional<String> fillCache(PlayerDataCache readCache, UUID playerUuid, Optional<String> result) {
+        result.ifPresent(serverName -> readCache.putIfAbsent(playerUuid, serverName));
+        return result;
+    }
+
+    /**
+     * Look up a player while the backend is still loading its data. A player already loaded is
+     * answered at once. Anyone else waits for the load, up to storage.yaml.load_wait_timeout, and
+     * is then answered from whatever has been loaded, which may fall back to the default routing.
+     */
+    private CompletableFuture<Optional<String>> lookupWhileLoading(StorageBackend backend, UUID playerUuid, CompletableFuture<Void> loaded) {
+        return backend.getLastServerAsync(playerUuid, readExecutor).thenCompose(early -> {
+            if (early.isPresent()) {
+                loadHits.increment();
+                return CompletableFuture.completedFuture(early);
+            }
+            loadWaits.increment();
+            return loaded.copy()
+                    .completeOnTimeout(null, Math.max(0, config.getStorageYamlLoadWaitTimeout()), TimeUnit.MILLISECONDS)
+                    .thenCompose(ignored -> {
+                        if (!loaded.isDone()) {
+                            loadWaitTimeouts.increment();
+                        }
+                        return backend.getLastServerAsync(playerUuid, readExecutor);
+                    });
+        });
+    }
+
+    /**
+     * Asynchronously set the last server a player was on.
+     * Writes are applied in submission order on the storage write thread.
+     * Skipped if storage already holds this server for the player.
+     */
+    public CompletableFuture<Void> setLastServerAsync(UUID playerUuid, String serverName) {
+        if (isRedundantWrite(playerUuid, serverName)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        invalidatePrefetch(playerUuid);
+        addKnownPlayer(playerUuid);
+        if (cache != null) {
+            cache.put(playerUuid, serverName);
+        }
+        pendingWrites.put(playerUuid, serverName);
+        try {
+            return currentBackend.setLastServerAsync(playerUuid, serverName, writeExecutor)
+                    .whenComplete((ignored, throwable) -> {
+                        pendingWrites.remove(playerUuid, serverName);
+                        if (throwable != null) {
+                            forgetStoredValue(playerUuid, serverName);
+                            logger.error("Failed to set last server for player " + playerUuid, throwable);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            // The write thread is gone during shutdown; fall back to a direct write
+            pendingWrites.remove(playerUuid, serverName);
+            try {
+                currentBackend.setLastServer(playerUuid, serverName);
+            } catch (RuntimeException writeError) {
+                forgetStoredValue(playerUuid, serverName);
+                throw writeError;
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Asynchronously get the last server a player was on.
+     */
+    public CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid) {
+        String pending = pendingWrites.get(playerUuid);
+        if (pending != null) {
+            return CompletableFuture.completedFuture(Optional.of(pending));
+        }
+        PlayerDataCache readCache = cache;
+        if (readCache != null) {
+            String cached = readCache.get(playerUuid);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(Optional.of(cached));
+            }
+        }
+        if (isKnownToBeAbsent(playerUuid)) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        StorageBackend backend = currentBackend;
+        CompletableFuture<Void> loaded = backend.whenLoaded();
+        if (!loaded.isDone()) {
+            return lookupWhileLoading(backend, playerUuid, loaded);
+        }
+        CompletableFuture<Optional<String>> lookup = backend.getLastServerAsync(playerUuid, readExecutor)
+                .thenApply(this::recordLookup);
+        return readCache != null ? lookup.thenApply(result -> fillCache(readCache, playerUuid, result)) : lookup;
+    }
+
+    /**
+     * Start looking up a player's last server while they are still logging in.
+     * The result is kept for {@link #getPrefetchedLastServerAsync(UUID)}, or dropped after a short time.
+     * Skipped for backends that answer from memory, where there is no latency to hide.
+     */
+    public void prefetchLastServer(UUID playerUuid) {
+        if (!isPrefetchActive()) {
+            return;
+        }
+        cleanupPrefetches();
+        prefetches.computeIfAbsent(playerUuid, uuid -> new Prefetch(getLastServerAsync(uuid), System.currentTimeMillis()));
+    }
+
+    /**
+     * Get a player's last server, using the lookup started by {@link #prefetchLastServer(UUID)} if there is one.
+     * Called once per login, so the server found is remembered for skipping redundant writes.
+     */
+    public CompletableFuture<Optional<String>> getPrefetchedLastServerAsync(UUID playerUuid) {
+        if (!isPrefetchActive()) {
+            return rememberStoredValue(playerUuid, getLastServerAsync(playerUuid));
+        }
+
+        Prefetch prefetch = prefetches.remove(playerUuid);
+        if (prefetch == null) {
+            prefetchMissed.incrementAndGet();
+            return rememberStoredValue(playerUuid, getLastServerAsync(playerUuid));
+        }
+        if (prefetch.lookup().isDone()) {
+            prefetchReady.incrementAndGet();
+        } else {
+            prefetchWaited.incrementAndGet();
+        }
+        return rememberStoredValue(playerUuid, prefetch.lookup());
+    }
+
+    private boolean isPrefetchActive() {
+        return config.getStoragePrefetchEnabled() && currentBackend != null && !currentBackend.isMemoryResident();
+    }
+
+    /**
+     * A write makes any prefetched value for the player stale.
+     */
+    private void invalidatePrefetch(UUID playerUuid) {
+        if (prefetches.remove(playerUuid) != null) {
+            prefetchInvalidated.incrementAndGet();
+        }
+    }
+
+    /**
+     * Drop prefetches of logins that never reached server selection, at most once a second.
+     */
+    private void cleanupPrefetches() {
+        long now = System.currentTimeMillis();
+        if (now - lastPrefetchCleanup < 1000) {
+            return;
+        }
+        lastPrefetchCleanup = now;
+        prefetches.values().removeIf(prefetch -> {
+            if (now - prefetch.startedAt() > PREFETCH_TTL_MILLIS) {
+                prefetchExpired.incrementAndGet();
+                return true;
+            }
+            return false;
+        });
     }
 
     /**
@@ -166,6 +1534,66 @@ public class StorageManager {
         return currentBackend != null ? currentBackend.getBackendName() : "Unknown";
     }
 
+    /**
+     * Get runtime statistics of the storage layer, prefixed by component.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backend", getBackendName());
+        stats.put("pending_async_writes", pendingWrites.size());
+        if (cache != null) {
+            cache.getStatistics().forEach((key, value) -> stats.put("cache." + key, value));
+        }
+        if (currentBackend != null) {
+            currentBackend.getStatistics().forEach((key, value) -> stats.put("backend." + key, value));
+        }
+        if (currentBackend != null && (!currentBackend.whenLoaded().isDone() || loadWaits.sum() > 0 || loadHits.sum() > 0)) {
+            stats.put("startup_load.loading", !currentBackend.whenLoaded().isDone());
+            stats.put("startup_load.answered_early", loadHits.sum());
+            stats.put("startup_load.waited", loadWaits.sum());
+            stats.put("startup_load.timed_out", loadWaitTimeouts.sum());
+        }
+        if (isPrefetchActive()) {
+            stats.put("prefetch.pending", prefetches.size());
+            stats.put("prefetch.ready", prefetchReady.get());
+            stats.put("prefetch.waited", prefetchWaited.get());
+            stats.put("prefetch.missed", prefetchMissed.get());
+            stats.put("prefetch.expired", prefetchExpired.get());
+            stats.put("prefetch.invalidated", prefetchInvalidated.get());
+        }
+        KnownPlayerFilter filter = knownPlayers;
+        if (filter != null) {
+            stats.put("known_players.ready", knownPlayersReady);
+            filter.getStatistics().forEach((key, value) -> stats.put("known_players." + key, value));
+            long skipped = knownPlayersSkipped.get();
+            long falsePositives = knownPlayersFalsePositives.get();
+            stats.put("known_players.skipped_lookups", skipped);
+            stats.put("known_players.false_positives", falsePositives);
+            if (skipped + falsePositives > 0) {
+                stats.put("known_players.observed_fpp", String.format("%.6f", (double) falsePositives / (skipped + falsePositives)));
+            }
+        }
+        DualWriteStorageBackend runningSwitch = activeSwitch;
+        if (runningSwitch != null) {
+            runningSwitch.getSwitchStatistics().forEach((key, value) -> stats.put("switch." + key, value));
+        }
+        long performed = performedWrites.sum();
+        long elided = elidedWrites.sum();
+        stats.put("writes.performed", performed);
+        stats.put("writes.elided", elided);
+        if (performed + elided > 0) {
+            stats.put("writes.elided_share", String.format("%.3f", (double) elided / (performed + elided)));
+        }
+        stats.put("writes.tracked_players", storedValues.size());
+        if (retentionSweeper != null) {
+            retentionSweeper.getStatistics().forEach((key, value) -> stats.put("retention." + key, value));
+        }
+        if (backupManager != null) {
+            backupManager.getStatistics().forEach((key, value) -> stats.put("backup." + key, value));
+        }
+        return stats;
+    }
+
     /**
      * Check if a migration was performed during initialization.
      */
@@ -0,0 +1,232 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Writes backups of the player data into backups/, one directory per backup, while the proxy keeps running.
+ * <p>
+ * Each backend copies itself with {@link StorageBackend#backupTo(File)}. The copy is written into a
+ * .partial directory that is renamed once it is complete, so every directory without that suffix
+ * holds a whole backup. Only the newest backups are kept.
+ * <p>
+ * To restore a backup, stop the proxy, move the current data files away and copy the backup's
+ * files into the plugin folder.
+ */
+public class BackupManager {
+
+    public static final String BACKUP_DIRECTORY = "backups";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final Pattern BACKUP_NAME = Pattern.compile("\\d{8}-\\d{6}(-\\d+)?");
+
+    /**
+     * @param directory Directory holding the backup
+     * @param durationMillis Time taken to write it
+     * @param sizeBytes Total size of its files
+     */
+    public record Backup(File directory, String backendName, long durationMillis, long sizeBytes) {
+    }
+
+    private final Logger logger;
+    private final Supplier<StorageBackend> backendSupplier;
+    private final File directory;
+    private final int keep;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    // Counters
+    private final AtomicLong backups = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile Backup lastBackup = null;
+
+    /**
+     * @param backendSupplier Supplies the backend to back up, so a swapped backend is picked up
+     * @param keep Number of backups to keep; older ones are deleted after each backup
+     */
+    public BackupManager(Logger logger, Supplier<StorageBackend> backendSupplier, Path dataDirectory, int keep) {
+        this.logger = logger;
+        this.backendSupplier = backendSupplier;
+        this.directory = dataDirectory.resolve(BACKUP_DIRECTORY).toFile();
+        this.keep = Math.max(1, keep);
+    }
+
+    /**
+     * Write a backup on the calling thread, which should not be a Velocity event thread.
+     * @return The backup written
+     * @throws IllegalStateException if another backup is still running
+     * @throws Exception if the backup could not be written; no partial backup is left behind
+     */
+    public Backup backup() throws Exception {
+        StorageBackend backend = backendSupplier.get();
+        if (backend == null) {
+            throw new IllegalStateException("Storage is not initialized");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A backup is already running");
+        }
+
+        long start = System.currentTimeMillis();
+        File partial = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            deletePartialBackups();
+
+            File target = newBackupDirectory();
+            partial = new File(directory, target.getName() + PARTIAL_SUFFIX);
+            Files.createDirectories(partial.toPath());
+
+            backend.backupTo(partial);
+            long size = sizeOf(partial.toPath());
+            Files.move(partial.toPath(), target.toPath());
+            partial = null;
+
+            Backup backup = new Backup(target, backend.getBackendName(), System.currentTimeMillis() - start, size);
+            lastBackup = backup;
+            backups.incrementAndGet();
+            logger.info("Backed up " + backup.backendName() + " storage to " + BACKUP_DIRECTORY + "/" + target.getName()
+                    + " in " + backup.durationMillis() + "ms (" + size / 1024 + " KB).");
+
+            rotate();
+            return backup;
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            if (partial != null && partial.exists()) {
+                try {
+                    deleteRecursively(partial.toPath());
+                } catch (IOException cleanup) {
+                    logger.warn("Could not delete unfinished backup " + partial.getName() + ": " + cleanup.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Run a backup and log instead of throwing, for scheduled backups.
+     */
+    public void backupQuietly() {
+        try {
+            backup();
+        } catch (IllegalStateException e) {
+            logger.info("Skipping scheduled backup: " + e.getMessage() + ".");
+        } catch (Exception e) {
+            logger.error("Scheduled backup failed.", e);
+        }
+    }
+
+    private File newBackupDirectory() {
+        String name = LocalDateTime.now().format(NAME_FORMAT);
+        // Backups within the same second are numbered after the newest, so names keep sorting by time
+        int counter = 0;
+        for (File existing : listBackups()) {
+            String existingName = existing.getName();
+            if (existingName.startsWith(name)) {
+                counter = Math.max(counter, existingName.length() == name.length() ? 1 : Integer.parseInt(existingName.substring(name.length() + 1)));
+            }
+        }
+        return new File(directory, counter == 0 ? name : name + "-" + (counter + 1));
+    }
+
+    /**
+     * Delete the oldest backups beyond the number to keep. Names sort by time, so the oldest come first.
+     */
+    private void rotate() {
+        List<File> existing = listBackups();
+        for (int i = 0; i < existing.size() - keep; i++) {
+            try {
+                deleteRecursively(existing.get(i).toPath());
+                logger.info("Deleted old backup " + existing.get(i).getName() + ".");
+            } catch (IOException e) {
+                logger.warn("Could not delete old backup " + existing.get(i).getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the complete backups, oldest first.
+     */
+    public List<File> listBackups() {
+        File[] files = directory.listFiles(file -> file.isDirectory() && BACKUP_NAME.matcher(file.getName()).matches());
+        if (files == null) {
+            return List.of();
+        }
+        // Compare by time, then by the counter of backups within the same second
+        return Arrays.stream(files)
+                .sorted(Comparator.comparing((File file) -> file.getName().substring(0, 15))
+                        .thenComparingInt(file -> file.getName().length())
+                        .thenComparing(File::getName))
+                .toList();
+    }
+
+    private void deletePartialBackups() throws IOException {
+        File[] partials = directory.listFiles(file -> file.isDirectory() && file.getName().endsWith(PARTIAL_SUFFIX));
+        if (partials == null) {
+            return;
+        }
+        for (File partial : partials) {
+            logger.warn("Deleting unfinished backup " + partial.getName() + ".");
+            deleteRecursively(partial.toPath());
+        }
+    }
+
+    private static long sizeOf(Path path) throws IOException {
+        try (Stream<Path> files = Files.walk(path)) {
+            long size = 0;
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                size += Files.size(file);
+            }
+            return size;
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Check whether a backup is being written.
+     */
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    /**
+     * Get backup statistics for reporting.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backups", backups.get());
+        stats.put("failed", failures.get());
+        stats.put("kept", listBackups().size());
+        Backup last = lastBackup;
+        if (last != null) {
+            stats.put("last_backup", last.directory().getName());
+            stats.put("last_backup_ms", last.durationMillis());
+            stats.put("last_backup_kb", last.sizeBytes() / 1024);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,324 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single background writer fed by a bounded queue.
+ * <p>
+ * Writes are grouped into batches that are handed to a {@link BatchSink}, typically one database
+ * transaction per batch. A batch is flushed once it reaches the configured size or once the oldest
+ * write in it has waited for the configured latency. Repeated writes for the same player within a
+ * batch are collapsed into the most recent one. Writes queued together with {@link #submitAll} always
+ * land in the same batch.
+ * <p>
+ * A batch that fails twice is kept and retried with the next batch, and at the latest when the
+ * writer is shut down. Writes submitted after shutdown are written directly on the calling thread.
+ */
+public class BatchWriter {
+
+    /**
+     * Receives collapsed batches of player writes on the writer thread.
+     */
+    @FunctionalInterface
+    public interface BatchSink {
+        void write(Map<UUID, String> batch) throws Exception;
+    }
+
+    private static final class PendingWrite {
+        final UUID playerUuid;
+        final String serverName;
+        // Writes of submitAll, committed with the batch this entry lands in; null for a single write
+        final Map<UUID, String> bulk;
+
+        PendingWrite(UUID playerUuid, String serverName) {
+            this.playerUuid = playerUuid;
+            this.serverName = serverName;
+            this.bulk = null;
+        }
+
+        PendingWrite(Map<UUID, String> bulk) {
+            this.playerUuid = null;
+            this.serverName = null;
+            this.bulk = bulk;
+        }
+
+        int size() {
+            return bulk != null ? bulk.size() : 1;
+        }
+    }
+
+    private final Logger logger;
+    private final String name;
+    private final BatchSink sink;
+    private final int batchSize;
+    private final long maxLatencyMillis;
+    private final BlockingQueue<PendingWrite> queue;
+
+    // Writes that are queued or in flight, so readers always see their own writes
+    private final Map<UUID, String> pending = new ConcurrentHashMap<>();
+    // Writes of failed batches, retried with the next batch; changed only under sinkLock
+    private final Map<UUID, String> retryWrites = new ConcurrentHashMap<>();
+    // Direct writes after shutdown may overlap with the writer thread still draining
+    private final Object sinkLock = new Object();
+
+    private Thread thread = null;
+    private volatile boolean running = false;
+
+    // Counters
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong receivedWrites = new AtomicLong();
+    private final AtomicLong collapsedWrites = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private volatile int largestBatch = 0;
+
+    /**
+     * @param name Used for the thread name and log messages
+     * @param batchSize Maximum number of writes per batch
+     * @param maxLatencyMillis Maximum time a write waits for its batch to fill up
+     * @param queueCapacity Maximum number of queued writes before callers block
+     */
+    public BatchWriter(Logger logger, String name, BatchSink sink, int batchSize, long maxLatencyMillis, int queueCapacity) {
+        this.logger = logger;
+        this.name = name;
+        this.sink = sink;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxLatencyMillis = Math.max(0, maxLatencyMillis);
+        this.queue = new ArrayBlockingQueue<>(Math.max(this.batchSize, queueCapacity));
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    public void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "SmartRejoin-" + name + "-Writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a write. Blocks if the queue is full, which applies back-pressure instead of dropping data.
+     * Once the writer is shut down, for example for a player disconnecting late, the write is made directly.
+     */
+    public void submit(UUID playerUuid, String serverName) {
+        if (!running) {
+            writeDirectly(playerUuid, serverName);
+            return;
+        }
+        pending.put(playerUuid, serverName);
+        try {
+            queue.put(new PendingWrite(playerUuid, serverName));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.remove(playerUuid, serverName);
+            logger.warn("Interrupted while queueing write for player " + playerUuid);
+        }
+    }
+
+    private void writeDirectly(UUID playerUuid, String serverName) {
+        synchronized (sinkLock) {
+            try {
+                sink.write(Map.of(playerUuid, serverName));
+                batches.incrementAndGet();
+            } catch (Exception e) {
+                failedBatches.incrementAndGet();
+                logger.error(name + " writer is shut down and could not save the last server of player " + playerUuid, e);
+            }
+        }
+    }
+
+    /**
+     * Queue writes for several players as one queue entry, so they are committed in a single
+     * transaction, however many there are. The batch size does not split them.
+     * Once the writer is shut down, they are written directly.
+     */
+    public void submitAll(Map<UUID, String> writes) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        Map<UUID, String> bulk = new LinkedHashMap<>(writes);
+        if (!running) {
+            synchronized (sinkLock) {
+                try {
+                    sink.write(bulk);
+                    batches.incrementAndGet();
+                } catch (Exception e) {
+                    failedBatches.incrementAndGet();
+                    logger.error(name + " writer is shut down and could not save the last servers of " + bulk.size() + " players", e);
+                }
+            }
+            return;
+        }
+        pending.putAll(bulk);
+        try {
+            queue.put(new PendingWrite(bulk));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            bulk.forEach(pending::remove);
+            logger.warn("Interrupted while queueing writes for " + bulk.size() + " players");
+        }
+    }
+
+    /**
+     * Get a write that has been submitted but not yet committed.
+     * @return The pending server name, or null if nothing is pending for this player
+     */
+    public String getPending(UUID playerUuid) {
+        return pending.get(playerUuid);
+    }
+
+    /**
+     * Stop accepting writes, drain everything that is still queued and wait for the thread to exit.
+     */
+    public void shutdown() {
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            logger.warn(name + " writer did not finish draining in time. " + queue.size() + " writes were not saved.");
+        } else if (!queue.isEmpty()) {
+            // Submitted just as the writer stopped
+            List<PendingWrite> late = new ArrayList<>();
+            queue.drainTo(late);
+            writeBatch(late, true);
+        }
+        thread = null;
+    }
+
+    private void run() {
+        List<PendingWrite> drained = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                drained.clear();
+                drained.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+                while (drained.size() < batchSize) {
+                    if (queue.drainTo(drained, batchSize - drained.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    drained.add(next);
+                }
+
+                writeBatch(drained, false);
+            } catch (InterruptedException e) {
+                // Keep draining; shutdown is signalled through the running flag
+            }
+        }
+
+        // Last chance for writes of failed batches
+        writeBatch(List.of(), true);
+    }
+
+    /**
+     * Write a batch together with the writes of earlier failed batches.
+     * @param last Whether no later batch follows, so writes that fail now are dropped
+     */
+    private void writeBatch(List<PendingWrite> writes, boolean last) {
+        synchronized (sinkLock) {
+            // Earlier failed writes go first, so queued writes for the same players replace them
+            Map<UUID, String> batch = new LinkedHashMap<>(retryWrites);
+            retryWrites.clear();
+            int received = 0;
+            for (PendingWrite write : writes) {
+                if (write.bulk != null) {
+                    batch.putAll(write.bulk);
+                } else {
+                    batch.put(write.playerUuid, write.serverName);
+                }
+                received += write.size();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            receivedWrites.addAndGet(received);
+            collapsedWrites.addAndGet(Math.max(0, received - batch.size()));
+            largestBatch = Math.max(largestBatch, batch.size());
+
+            try {
+                sink.write(batch);
+                batches.incrementAndGet();
+            } catch (Exception e) {
+                // One retry covers transient lock contention; after that the writes wait for the next batch
+                try {
+                    sink.write(batch);
+                    batches.incrementAndGet();
+                } catch (Exception retryException) {
+                    failedBatches.incrementAndGet();
+                    logger.error(name + " writer failed to save a batch of " + batch.size() + " players"
+                            + (last ? ". Their last servers are lost." : ". Retrying with the next batch."), retryException);
+                    batch.forEach((playerUuid, serverName) -> {
+                        logger.error(name + " writer " + (last ? "dropped" : "kept for retry") + " the write of player " + playerUuid + " (" + serverName + ")");
+                        if (!last) {
+                            retryWrites.put(playerUuid, serverName);
+                        }
+                    });
+                    if (!last) {
+                        // Still pending, so reads keep seeing the writes
+                        return;
+                    }
+                }
+            }
+
+            batch.forEach(pending::remove);
+        }
+    }
+
+    /**
+     * Get writer statistics for reporting.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.get();
+        long written = receivedWrites.get() - collapsedWrites.get();
+        stats.put("queue_depth", queue.size());
+        stats.put("batches", batchCount);
+        stats.put("batched_writes", receivedWrites.get());
+        stats.put("collapsed_writes", collapsedWrites.get());
+        stats.put("average_batch_size", batchCount == 0 ? 0 : String.format("%.1f", (double) written / batchCount));
+        stats.put("largest_batch", largestBatch);
+        stats.put("failed_batches", failedBatches.get());
+        stats.put("retry_writes", retryWrites.size());
+        return stats;
+    }
+
+    /**
+     * Get the number of writes waiting in the queue.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+}
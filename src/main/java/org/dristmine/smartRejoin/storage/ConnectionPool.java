@@ -0,0 +1,192 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small bounded pool of JDBC connections.
+ * <p>
+ * At most {@code maxSize} connections are open at once; callers wait up to the configured timeout
+ * for one to become free. Connections are opened lazily, reused most-recently-used first so idle
+ * ones can be validated and dropped, and closed if work on them fails and they no longer respond.
+ */
+final class ConnectionPool {
+
+    /**
+     * Work run with a borrowed connection.
+     */
+    @FunctionalInterface
+    interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    // Connections idle for longer than this are validated before they are handed out again
+    private static final long VALIDATE_AFTER_MILLIS = 30_000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    private record IdleConnection(Connection connection, long idleSince) {
+    }
+
+    private final String driverClass;
+    private final String url;
+    private final Properties properties;
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private final ConcurrentLinkedDeque<IdleConnection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed = false;
+
+    // Counters
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    /**
+     * @param driverClass JDBC driver that opens the connections
+     * @param maxSize Maximum number of open connections
+     * @param timeoutMillis Maximum time to wait for a free connection
+     */
+    ConnectionPool(String driverClass, String url, String username, String password, int maxSize, long timeoutMillis) {
+        this.driverClass = driverClass;
+        this.url = url;
+        this.properties = new Properties();
+        if (username != null && !username.isEmpty()) {
+            properties.setProperty("user", username);
+        }
+        if (password != null && !password.isEmpty()) {
+            properties.setProperty("password", password);
+        }
+        this.maxSize = Math.max(1, maxSize);
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * Run work with a pooled connection and return the connection afterwards.
+     * The connection is handed out in auto-commit mode and put back in it.
+     */
+    <T> T execute(SqlWork<T> work) throws SQLException {
+        Connection connection = borrow();
+        boolean broken = false;
+        try {
+            return work.apply(connection);
+        } catch (SQLException e) {
+            broken = !isUsable(connection);
+            throw e;
+        } finally {
+            release(connection, broken);
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLTimeoutException("Timed out after " + timeoutMillis + "ms waiting for a free database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            IdleConnection candidate;
+            while ((candidate = idle.pollFirst()) != null) {
+                boolean stale = System.currentTimeMillis() - candidate.idleSince() > VALIDATE_AFTER_MILLIS;
+                if (!stale || isUsable(candidate.connection())) {
+                    borrowed.incrementAndGet();
+                    return candidate.connection();
+                }
+                closeQuietly(candidate.connection());
+            }
+
+            Connection connection = JdbcDrivers.connect(driverClass, url, properties);
+            opened.incrementAndGet();
+            borrowed.incrementAndGet();
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(Connection connection, boolean broken) {
+        try {
+            if (!broken && !closed) {
+                try {
+                    if (!connection.getAutoCommit()) {
+                        connection.rollback();
+                        connection.setAutoCommit(true);
+                    }
+                    idle.offerFirst(new IdleConnection(connection, System.currentTimeMillis()));
+                    return;
+                } catch (SQLException e) {
+                    // Fall through and drop the connection
+                }
+            }
+            closeQuietly(connection);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static boolean isUsable(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        discarded.incrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Nothing left to do with a broken connection
+        }
+    }
+
+    /**
+     * Close all idle connections. Connections still in use are closed when they are returned.
+     */
+    void close() {
+        closed = true;
+        IdleConnection candidate;
+        while ((candidate = idle.pollFirst()) != null) {
+            try {
+                candidate.connection().close();
+            } catch (SQLException ignored) {
+                // Closing anyway
+            }
+        }
+    }
+
+    /**
+     * Get pool statistics for reporting.
+     */
+    Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("max_size", maxSize);
+        stats.put("in_use", maxSize - permits.availablePermits());
+        stats.put("idle", idle.size());
+        stats.put("waiting", permits.getQueueLength());
+        stats.put("opened", opened.get());
+        stats.put("discarded", discarded.get());
+        stats.put("borrowed", borrowed.get());
+        stats.put("timeouts", timeouts.get());
+        return stats;
+    }
+}
@@ -0,0 +1,315 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Used while switching storage backends at runtime.
+ * <p>
+ * Reads are answered by the current backend, and every write goes to both the current and the
+ * new backend. {@link #copy(MigrationCallback)} bulk-copies the existing players into the new
+ * backend in the background, skipping players that were written during the switch, since the new
+ * backend already has their latest value. Once the copy returns the new backend holds everything
+ * and can take over reads.
+ */
+public class DualWriteStorageBackend implements StorageBackend {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final StorageBackend current;
+    private final StorageBackend target;
+
+    // Latest value of every player written during the switch
+    private final Map<UUID, String> touched = new ConcurrentHashMap<>();
+    // Orders a live write against the replay of the same player after the bulk copy
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    // Counters
+    private final AtomicLong copied = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final long startedAt = System.currentTimeMillis();
+
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param current Backend that keeps answering reads until the copy is complete
+     * @param target Initialized backend that is being switched to
+     */
+    public DualWriteStorageBackend(StorageBackend current, StorageBackend target) {
+        this.current = current;
+        this.target = target;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private static int stripeOf(UUID playerUuid) {
+        return (playerUuid.hashCode() & 0x7fffffff) % LOCK_STRIPES;
+    }
+
+    private Object lockFor(UUID playerUuid) {
+        return locks[stripeOf(playerUuid)];
+    }
+
+    /**
+     * Split players by lock stripe, so each group can be written under a single lock.
+     */
+    private static List<Map<UUID, String>> groupByStripe(Map<UUID, String> lastServers) {
+        List<Map<UUID, String>> groups = new ArrayList<>(LOCK_STRIPES);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            groups.add(new HashMap<>());
+        }
+        lastServers.forEach((playerUuid, serverName) -> groups.get(stripeOf(playerUuid)).put(playerUuid, serverName));
+        return groups;
+    }
+
+    @Override
+    public void setLastServer(UUID playerUuid, String serverName) {
+        synchronized (lockFor(playerUuid)) {
+            current.setLastServer(playerUuid, serverName);
+            touched.put(playerUuid, serverName);
+            target.setLastServer(playerUuid, serverName);
+        }
+    }
+
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        List<Map<UUID, String>> groups = groupByStripe(lastServers);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            Map<UUID, String> group = groups.get(i);
+            if (group.isEmpty()) {
+                continue;
+            }
+            synchronized (locks[i]) {
+                current.setLastServers(group);
+                touched.putAll(group);
+                target.setLastServers(group);
+            }
+        }
+    }
+
+    @Override
+    public Optional<String> getLastServer(UUID playerUuid) {
+        return current.getLastServer(playerUuid);
+    }
+
+    @Override
+    public Map<UUID, String> getLastServers(Collection<UUID> playerUuids) {
+        return current.getLastServers(playerUuids);
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid, Executor executor) {
+        return current.getLastServerAsync(playerUuid, executor);
+    }
+
+    /**
+     * Copy every player of the current backend into the new one.
+     * <p>
+     * The new backend imports through its own bulk migration path. Bulk imports may overwrite a
+     * player that was written while the copy was running, so those players are written again
+     * afterwards with their latest value.
+     * @return The number of players copied
+     */
+    public int copy(MigrationCallback callback) throws Exception {
+        target.migrateFrom(new CopySource(), callback);
+        if (cancelled) {
+            throw new CancellationException("Storage switch was cancelled");
+        }
+
+        List<Map<UUID, String>> groups = groupByStripe(touched);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            if (groups.get(i).isEmpty()) {
+                continue;
+            }
+            synchronized (locks[i]) {
+                // Re-read under the lock, a live write may have replaced the value since grouping
+                Map<UUID, String> latest = new HashMap<>();
+                groups.get(i).keySet().forEach(playerUuid -> latest.put(playerUuid, touched.get(playerUuid)));
+                target.setLastServers(latest);
+            }
+        }
+        return (int) copied.get();
+    }
+
+    /**
+     * Stop a running {@link #copy(MigrationCallback)}, which then fails with a {@link CancellationException}.
+     * The caller still has to wait for the copying thread before shutting the backends down.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Presents the current backend's players, minus those written during the switch.
+     */
+    private final class CopySource implements StorageBackend {
+
+        @Override
+        public void forEachEntry(BiConsumer<UUID, String> consumer) throws Exception {
+            current.forEachEntry((uuid, server) -> {
+                if (cancelled) {
+                    throw new CancellationException("Storage switch was cancelled");
+                }
+                if (touched.containsKey(uuid)) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                copied.incrementAndGet();
+                consumer.accept(uuid, server);
+            });
+        }
+
+        /**
+         * Forwards the update times of the current backend, so the copy keeps them.
+         */
+        @Override
+        public void forEachTimedEntry(TimedEntryConsumer consumer) throws Exception {
+            current.forEachTimedEntry((uuid, server, updatedAt) -> {
+                if (cancelled) {
+                    throw new CancellationException("Storage switch was cancelled");
+                }
+                if (touched.containsKey(uuid)) {
+                    skipped.incrementAndGet();
+                    return;
+                }
+                copied.incrementAndGet();
+                consumer.accept(uuid, server, updatedAt);
+            });
+        }
+
+        @Override
+        public String getBackendName() {
+            return current.getBackendName();
+        }
+
+        @Override
+        public void setLastServer(UUID playerUuid, String serverName) {
+            throw new UnsupportedOperationException("Copy source is read-only");
+        }
+
+        @Override
+        public Optional<String> getLastServer(UUID playerUuid) {
+            return current.getLastServer(playerUuid);
+        }
+
+        @Override
+        public void initialize() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean supportsMigration() {
+            return false;
+        }
+
+        @Override
+        public int migrateFrom(StorageBackend source, MigrationCallback callback) {
+            throw new UnsupportedOperationException("Copy source is read-only");
+        }
+    }
+
+    /**
+     * Both backends are initialized before the switch starts.
+     */
+    @Override
+    public void initialize() {
+    }
+
+    @Override
+    public void shutdown() {
+        current.shutdown();
+        target.shutdown();
+    }
+
+    @Override
+    public String getBackendName() {
+        return current.getBackendName();
+    }
+
+    @Override
+    public boolean isMemoryResident() {
+        return current.isMemoryResident();
+    }
+
+    @Override
+    public CompletableFuture<Void> whenLoaded() {
+        return current.whenLoaded();
+    }
+
+    @Override
+    public boolean isSharedAcrossProxies() {
+        return current.isSharedAcrossProxies();
+    }
+
+    @Override
+    public boolean supportsMigration() {
+        return false;
+    }
+
+    @Override
+    public int migrateFrom(StorageBackend source, MigrationCallback callback) {
+        throw new UnsupportedOperationException("Cannot migrate into a backend that is being switched");
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws Exception {
+        current.forEachEntry(consumer);
+    }
+
+    /**
+     * The current backend holds every player until the switch completes.
+     */
+    @Override
+    public List<File> backupTo(File directory) throws Exception {
+        return current.backupTo(directory);
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        return current.getStatistics();
+    }
+
+    /**
+     * Get the backend that is being switched to.
+     */
+    public StorageBackend getTarget() {
+        return target;
+    }
+
+    /**
+     * Get the backend that answers reads during the switch.
+     */
+    public StorageBackend getCurrent() {
+        return current;
+    }
+
+    /**
+     * Get switch progress for reporting.
+     */
+    public Map<String, Object> getSwitchStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("target", target.getBackendName());
+        stats.put("copied", copied.get());
+        stats.put("skipped", skipped.get());
+        stats.put("written_during_switch", touched.size());
+        stats.put("elapsed_ms", System.currentTimeMillis() - startedAt);
+        return stats;
+    }
+}
@@ -0,0 +1,142 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns {@link StorageBackend#forEachEntry} into a cursor for backends without one of their own.
+ * <p>
+ * The backend is walked on a background thread that hands players over in chunks through a
+ * small bounded queue, so it runs at most a few chunks ahead of the reader.
+ */
+final class ForEachCursor implements StorageCursor {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int QUEUED_CHUNKS = 4;
+
+    private static final class Chunk {
+        final UUID[] players;
+        final String[] servers;
+        int size;
+        final Throwable error;
+
+        Chunk(int capacity) {
+            this.players = new UUID[capacity];
+            this.servers = new String[capacity];
+            this.error = null;
+        }
+
+        Chunk(Throwable error) {
+            this.players = new UUID[0];
+            this.servers = new String[0];
+            this.error = error;
+        }
+    }
+
+    // Marks the end of the entries
+    private static final Chunk END = new Chunk(0);
+
+    private final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+    private final Thread producer;
+    private volatile boolean closed = false;
+
+    private Chunk current = null;
+    private int position = -1;
+
+    ForEachCursor(StorageBackend backend) {
+        this.producer = new Thread(() -> produce(backend), "SmartRejoin-Cursor");
+        this.producer.setDaemon(true);
+        this.producer.start();
+    }
+
+    private void produce(StorageBackend backend) {
+        Chunk[] filling = {new Chunk(CHUNK_SIZE)};
+        try {
+            backend.forEachEntry((playerUuid, serverName) -> {
+                Chunk chunk = filling[0];
+                chunk.players[chunk.size] = playerUuid;
+                chunk.servers[chunk.size] = serverName;
+                if (++chunk.size == CHUNK_SIZE) {
+                    hand(chunk);
+                    filling[0] = new Chunk(CHUNK_SIZE);
+                }
+            });
+            if (filling[0].size > 0) {
+                hand(filling[0]);
+            }
+            hand(END);
+        } catch (CancellationException e) {
+            // Closed by the reader
+        } catch (Throwable e) {
+            try {
+                hand(new Chunk(e));
+            } catch (CancellationException ignored) {
+                // Closed by the reader
+            }
+        }
+    }
+
+    /**
+     * Queue a chunk, giving up once the cursor is closed. Thrown out of forEachEntry to stop the walk.
+     */
+    private void hand(Chunk chunk) {
+        try {
+            while (!closed) {
+                if (queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        throw new CancellationException();
+    }
+
+    @Override
+    public boolean next() throws Exception {
+        if (closed) {
+            return false;
+        }
+        if (current != null && ++position < current.size) {
+            return true;
+        }
+        if (current == END) {
+            return false;
+        }
+
+        Chunk chunk = queue.take();
+        if (chunk.error != null) {
+            current = END;
+            if (chunk.error instanceof Exception exception) {
+                throw exception;
+            }
+            throw new IllegalStateException("Reading entries failed", chunk.error);
+        }
+        current = chunk;
+        position = 0;
+        return chunk != END && chunk.size > 0;
+    }
+
+    @Override
+    public UUID playerUuid() {
+        return current.players[position];
+    }
+
+    @Override
+    public String serverName() {
+        return current.servers[position];
+    }
+
+    /**
+     * The producer notices within a moment and stops the walk. It is not interrupted, since an
+     * interrupt would close file channels the backend shares with live reads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+    }
+}
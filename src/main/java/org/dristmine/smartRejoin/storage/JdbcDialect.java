@@ -0,0 +1,118 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.util.Locale;
+
+/**
+ * SQL that differs between the databases supported by {@link JdbcStorageBackend}.
+ * <p>
+ * Upserts only replace a row when the incoming update is at least as new as the stored one,
+ * so a delayed batch from one proxy never overwrites a newer update from another.
+ */
+enum JdbcDialect {
+
+    // Served by the bundled MariaDB driver, see connectionUrl
+    MYSQL("org.mariadb.jdbc.Driver", "BINARY(16)",
+            "INSERT INTO %1$s (player_uuid, server_name, last_updated) VALUES (?, ?, ?) "
+                    + "ON DUPLICATE KEY UPDATE "
+                    + "server_name = IF(VALUES(last_updated) >= last_updated, VALUES(server_name), server_name), "
+                    + "last_updated = GREATEST(last_updated, VALUES(last_updated))",
+            "INSERT IGNORE INTO %1$s (player_uuid, server_name, last_updated) VALUES (?, ?, ?)",
+            false),
+
+    MARIADB("org.mariadb.jdbc.Driver", MYSQL),
+
+    POSTGRESQL("org.postgresql.Driver", "BYTEA",
+            "INSERT INTO %1$s (player_uuid, server_name, last_updated) VALUES (?, ?, ?) "
+                    + "ON CONFLICT (player_uuid) DO UPDATE SET "
+                    + "server_name = EXCLUDED.server_name, last_updated = EXCLUDED.last_updated "
+                    + "WHERE %1$s.last_updated <= EXCLUDED.last_updated",
+            "INSERT INTO %1$s (player_uuid, server_name, last_updated) VALUES (?, ?, ?) "
+                    + "ON CONFLICT (player_uuid) DO NOTHING",
+            true),
+
+    SQLITE("org.sqlite.JDBC", "BLOB",
+            "INSERT INTO %1$s (player_uuid, server_name, last_updated) VALUES (?, ?, ?) "
+                    + "ON CONFLICT (player_uuid) DO UPDATE SET "
+                    + "server_name = excluded.server_name, last_updated = excluded.last_updated "
+                    + "WHERE %1$s.last_updated <= excluded.last_updated",
+            "INSERT OR IGNORE INTO %1$s (player_uuid, server_name, last_updated) VALUES (?, ?, ?)",
+            true);
+
+    private final String driverClass;
+    private final String uuidType;
+    private final String upsertSql;
+    private final String insertIfAbsentSql;
+    private final boolean createIndexIfNotExists;
+
+    JdbcDialect(String driverClass, String uuidType, String upsertSql, String insertIfAbsentSql,
+                boolean createIndexIfNotExists) {
+        this.driverClass = driverClass;
+        this.uuidType = uuidType;
+        this.upsertSql = upsertSql;
+        this.insertIfAbsentSql = insertIfAbsentSql;
+        this.createIndexIfNotExists = createIndexIfNotExists;
+    }
+
+    JdbcDialect(String driverClass, JdbcDialect sameSqlAs) {
+        this(driverClass, sameSqlAs.uuidType, sameSqlAs.upsertSql, sameSqlAs.insertIfAbsentSql,
+                sameSqlAs.createIndexIfNotExists);
+    }
+
+    /**
+     * Pick the dialect from a JDBC URL such as {@code jdbc:postgresql://host/db}.
+     * @throws IllegalArgumentException if the database is not supported
+     */
+    static JdbcDialect fromUrl(String url) {
+        String lower = url.toLowerCase(Locale.ROOT);
+        if (lower.startsWith("jdbc:mysql:")) {
+            return MYSQL;
+        } else if (lower.startsWith("jdbc:mariadb:")) {
+            return MARIADB;
+        } else if (lower.startsWith("jdbc:postgresql:")) {
+            return POSTGRESQL;
+        } else if (lower.startsWith("jdbc:sqlite:")) {
+            return SQLITE;
+        }
+        throw new IllegalArgumentException("Unsupported JDBC URL '" + url + "'. Supported databases are MySQL, MariaDB, PostgreSQL and SQLite.");
+    }
+
+    String driverClass() {
+        return driverClass;
+    }
+
+    /**
+     * Get the URL to connect with. MySQL servers are reached through the bundled MariaDB driver,
+     * which only accepts jdbc:mysql: URLs that carry permitMysqlScheme.
+     */
+    String connectionUrl(String url) {
+        if (this != MYSQL || url.contains("permitMysqlScheme")) {
+            return url;
+        }
+        return url + (url.indexOf('?') < 0 ? "?" : "&") + "permitMysqlScheme";
+    }
+
+    String createTableSql(String table) {
+        return "CREATE TABLE IF NOT EXISTS " + table + " (player_uuid " + uuidType + " NOT NULL PRIMARY KEY, "
+                + "server_name VARCHAR(255) NOT NULL, last_updated BIGINT NOT NULL)";
+    }
+
+    /**
+     * MySQL has no IF NOT EXISTS for indexes, so there the "already exists" error is ignored instead.
+     */
+    String createIndexSql(String table) {
+        return "CREATE INDEX " + (createIndexIfNotExists ? "IF NOT EXISTS " : "")
+                + "idx_" + table + "_last_updated ON " + table + " (last_updated)";
+    }
+
+    boolean supportsCreateIndexIfNotExists() {
+        return createIndexIfNotExists;
+    }
+
+    String upsertSql(String table) {
+        return String.format(upsertSql, table);
+    }
+
+    String insertIfAbsentSql(String table) {
+        return String.format(insertIfAbsentSql, table);
+    }
+}
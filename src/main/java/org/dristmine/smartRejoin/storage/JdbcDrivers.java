@@ -0,0 +1,88 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds JDBC drivers in the plugin jar or in the jars of the backends/ folder.
+ * <p>
+ * The SQLite driver is not part of the plugin jar, so it is normally loaded from backends/, and
+ * only once a SQLite database is opened. {@link java.sql.DriverManager} only hands out drivers the
+ * calling class loader can see, so connections are opened through the driver itself instead.
+ */
+final class JdbcDrivers {
+
+    private static final Map<String, Driver> drivers = new ConcurrentHashMap<>();
+    private static volatile ClassLoader backendsLoader = null;
+
+    private JdbcDrivers() {
+    }
+
+    /**
+     * Also look for drivers in the jars of the backends/ folder, or stop doing so with null.
+     */
+    static void setBackendsLoader(ClassLoader loader) {
+        backendsLoader = loader;
+        drivers.clear();
+    }
+
+    /**
+     * Check whether a driver can be loaded, without opening a connection.
+     */
+    static boolean isAvailable(String driverClass) {
+        try {
+            get(driverClass);
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Open a connection with a driver, loading the driver on first use.
+     * @throws SQLException if the driver is not found, does not accept the URL, or cannot connect
+     */
+    static Connection connect(String driverClass, String url, Properties properties) throws SQLException {
+        Connection connection = get(driverClass).connect(url, properties);
+        if (connection == null) {
+            throw new SQLException("JDBC driver " + driverClass + " does not accept the URL " + url);
+        }
+        return connection;
+    }
+
+    private static Driver get(String driverClass) throws SQLException {
+        Driver driver = drivers.get(driverClass);
+        if (driver != null) {
+            return driver;
+        }
+
+        Class<?> type = find(driverClass, JdbcDrivers.class.getClassLoader());
+        ClassLoader loader = backendsLoader;
+        if (type == null && loader != null) {
+            type = find(driverClass, loader);
+        }
+        if (type == null) {
+            throw new SQLException("JDBC driver " + driverClass + " not found. Place its jar in the plugin's "
+                    + StorageBackendProviders.BACKENDS_DIRECTORY + "/ folder and restart the proxy.");
+        }
+        try {
+            driver = (Driver) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new SQLException("Could not load JDBC driver " + driverClass, e);
+        }
+        Driver existing = drivers.putIfAbsent(driverClass, driver);
+        return existing != null ? existing : driver;
+    }
+
+    private static Class<?> find(String driverClass, ClassLoader loader) {
+        try {
+            return Class.forName(driverClass, true, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+    }
+}
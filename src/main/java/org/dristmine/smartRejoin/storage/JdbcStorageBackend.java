@@ -0,0 +1,456 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Storage backend for a database shared by several proxies, reached through JDBC.
+ * Supports MySQL, MariaDB, PostgreSQL and SQLite. MySQL servers are reached through the MariaDB driver.
+ * <p>
+ * Every proxy writes to the same table, so a player who reconnects through another proxy is
+ * routed from the same data. Writes are queued to a {@link BatchWriter} and committed as one
+ * batched upsert per transaction. Reads borrow a connection from a small bounded pool.
+ * <p>
+ * An optional near-cache answers repeated lookups locally. Its entries expire after a short time,
+ * because another proxy may update the player in the meantime.
+ */
+public class JdbcStorageBackend implements StorageBackend {
+
+    private static final Pattern TABLE_NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_]{0,47}");
+    private static final int MIGRATION_CHUNK = 1000;
+    private static final int STREAM_FETCH_SIZE = 1000;
+    // Players per bulk lookup, well below the bound parameter limit of every supported database
+    private static final int LOOKUP_CHUNK = 500;
+
+    private final Logger logger;
+    private final String url;
+    private final String table;
+    private final JdbcDialect dialect;
+    private final ConnectionPool pool;
+    private final BatchWriter writer;
+    private final PlayerDataCache nearCache;
+    private final String upsertSql;
+    private final String selectSql;
+    private volatile boolean initialized = false;
+
+    /**
+     * @param url JDBC URL of the shared database
+     * @param table Name of the table holding the last servers
+     * @param poolSize Maximum number of open connections
+     * @param connectionTimeoutMillis Maximum time to wait for a free connection
+     * @param batchSize Maximum number of writes committed in one transaction
+     * @param maxBatchDelayMillis Maximum time a write waits before its batch is committed
+     * @param queueCapacity Maximum number of queued writes before callers block
+     * @param nearCacheTtlMillis Time a looked up player is answered locally, or 0 to disable the near-cache
+     * @param nearCacheMaxEntries Maximum number of players in the near-cache
+     */
+    public JdbcStorageBackend(Logger logger, String url, String username, String password, String table,
+                              int poolSize, long connectionTimeoutMillis,
+                              int batchSize, long maxBatchDelayMillis, int queueCapacity,
+                              long nearCacheTtlMillis, int nearCacheMaxEntries) {
+        if (url == null || url.isBlank()) {
+            throw new IllegalArgumentException("storage.jdbc.url must be set to use the 'jdbc' storage backend");
+        }
+        if (!TABLE_NAME.matcher(table).matches()) {
+            throw new IllegalArgumentException("Invalid table name '" + table + "': use up to 48 letters, digits and underscores");
+        }
+        this.logger = logger;
+        this.url = url;
+        this.table = table;
+        this.dialect = JdbcDialect.fromUrl(url);
+        this.pool = new ConnectionPool(dialect.driverClass(), dialect.connectionUrl(url), username, password, poolSize, connectionTimeoutMillis);
+        this.writer = new BatchWriter(logger, "JDBC", this::writeBatch, batchSize, maxBatchDelayMillis, queueCapacity);
+        this.nearCache = nearCacheTtlMillis > 0 && nearCacheMaxEntries > 0
+                ? new PlayerDataCache(nearCacheMaxEntries, nearCacheTtlMillis)
+                : null;
+        this.upsertSql = dialect.upsertSql(table);
+        this.selectSql = "SELECT server_name FROM " + table + " WHERE player_uuid = ?";
+    }
+
+    @Override
+    public void setLastServer(UUID playerUuid, String serverName) {
+        ensureInitialized();
+        if (nearCache != null) {
+            nearCache.put(playerUuid, serverName);
+        }
+        writer.submit(playerUuid, serverName);
+    }
+
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        ensureInitialized();
+        if (nearCache != null) {
+            lastServers.forEach(nearCache::put);
+        }
+        writer.submitAll(lastServers);
+    }
+
+    /**
+     * Upsert one batch of writes in a single transaction. Runs on the writer thread.
+     */
+    private void writeBatch(Map<UUID, String> batch) throws SQLException {
+        long now = System.currentTimeMillis();
+        pool.execute(connection -> {
+            connection.setAutoCommit(false);
+            try (PreparedStatement stmt = connection.prepareStatement(upsertSql)) {
+                for (Map.Entry<UUID, String> entry : batch.entrySet()) {
+                    stmt.setBytes(1, UuidCodec.toBytes(entry.getKey()));
+                    stmt.setString(2, entry.getValue());
+                    stmt.setLong(3, now);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                connection.commit();
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Optional<String> getLastServer(UUID playerUuid) {
+        ensureInitialized();
+
+        String local = getLocal(playerUuid);
+        if (local != null) {
+            return Optional.of(local);
+        }
+
+        try {
+            String serverName = pool.execute(connection -> {
+                try (PreparedStatement stmt = connection.prepareStatement(selectSql)) {
+                    stmt.setBytes(1, UuidCodec.toBytes(playerUuid));
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        return rs.next() ? rs.getString(1) : null;
+                    }
+                }
+            });
+            if (serverName != null && nearCache != null) {
+                // putIfAbsent so a write made during the query is not replaced by the older row
+                nearCache.putIfAbsent(playerUuid, serverName);
+            }
+            return Optional.ofNullable(serverName);
+        } catch (SQLException e) {
+            logger.error("Failed to get last server for player " + playerUuid, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Answer what is known locally, then look the rest up with one {@code IN} query per chunk.
+     */
+    @Override
+    public Map<UUID, String> getLastServers(Collection<UUID> playerUuids) {
+        ensureInitialized();
+
+        Map<UUID, String> lastServers = new HashMap<>();
+        List<UUID> remaining = new ArrayList<>();
+        for (UUID playerUuid : playerUuids) {
+            String local = getLocal(playerUuid);
+            if (local != null) {
+                lastServers.put(playerUuid, local);
+            } else {
+                remaining.add(playerUuid);
+            }
+        }
+
+        for (int from = 0; from < remaining.size(); from += LOOKUP_CHUNK) {
+            List<UUID> chunk = remaining.subList(from, Math.min(remaining.size(), from + LOOKUP_CHUNK));
+            String sql = "SELECT player_uuid, server_name FROM " + table + " WHERE player_uuid IN ("
+                    + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            try {
+                Map<UUID, String> found = pool.execute(connection -> {
+                    Map<UUID, String> rows = new HashMap<>();
+                    try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stmt.setBytes(i + 1, UuidCodec.toBytes(chunk.get(i)));
+                        }
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                rows.put(UuidCodec.fromBytes(rs.getBytes(1)), rs.getString(2));
+                            }
+                        }
+                    }
+                    return rows;
+                });
+                if (nearCache != null) {
+                    found.forEach(nearCache::putIfAbsent);
+                }
+                lastServers.putAll(found);
+            } catch (SQLException e) {
+                logger.error("Failed to get last servers for " + chunk.size() + " players", e);
+            }
+        }
+
+        return lastServers;
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid, Executor executor) {
+        ensureInitialized();
+        String local = getLocal(playerUuid);
+        if (local != null) {
+            return CompletableFuture.completedFuture(Optional.of(local));
+        }
+        return CompletableFuture.supplyAsync(() -> getLastServer(playerUuid), executor);
+    }
+
+    /**
+     * Get a queued write or near-cached value, both of which are answered without the database.
+     */
+    private String getLocal(UUID playerUuid) {
+        String pending = writer.getPending(playerUuid);
+        if (pending != null) {
+            return pending;
+        }
+        return nearCache != null ? nearCache.get(playerUuid) : null;
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        if (initialized) {
+            return;
+        }
+
+        // The driver is loaded with the first connection, from the plugin jar or backends/
+        try {
+            pool.execute(connection -> {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(dialect.createTableSql(table));
+                }
+                createIndex(connection);
+                return null;
+            });
+        } catch (SQLException e) {
+            pool.close();
+            logger.error("Failed to initialize JDBC storage backend", e);
+            throw e;
+        }
+
+        writer.start();
+        initialized = true;
+        logger.info("JDBC storage backend initialized with " + dialect.name().toLowerCase() + " table '" + table + "'"
+                + (nearCache != null ? " and a near-cache." : "."));
+    }
+
+    private void createIndex(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(dialect.createIndexSql(table));
+        } catch (SQLException e) {
+            if (dialect.supportsCreateIndexIfNotExists()) {
+                throw e;
+            }
+            // No IF NOT EXISTS for indexes on this database; the index is already there
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        // Drain queued writes before the pool goes away
+        writer.shutdown();
+        pool.close();
+        if (initialized) {
+            logger.info("JDBC storage backend shut down successfully.");
+        }
+        initialized = false;
+    }
+
+    @Override
+    public String getBackendName() {
+        return "JDBC";
+    }
+
+    @Override
+    public boolean isSharedAcrossProxies() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMigration() {
+        return true;
+    }
+
+    /**
+     * Copy the local data of this proxy into the shared table.
+     * Players that already exist in the table are left alone, so every proxy can migrate
+     * its own data and whichever proxy saw a player first keeps its value.
+     */
+    @Override
+    public int migrateFrom(StorageBackend source, MigrationCallback callback) throws Exception {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot migrate from the same backend");
+        }
+        ensureInitialized();
+
+        logger.info("Starting migration from " + source.getBackendName() + " to JDBC...");
+        callback.onProgress(0, 0, "Starting migration...");
+
+        String insertSql = dialect.insertIfAbsentSql(table);
+        long start = System.currentTimeMillis();
+        List<UUID> players = new ArrayList<>(MIGRATION_CHUNK);
+        List<String> servers = new ArrayList<>(MIGRATION_CHUNK);
+        // Update times from the source, 0 where it records none
+        List<Long> times = new ArrayList<>(MIGRATION_CHUNK);
+        int[] migrated = {0};
+
+        TimedEntryConsumer collector = (uuid, server, updatedAt) -> {
+            players.add(uuid);
+            servers.add(server);
+            times.add(updatedAt);
+            if (players.size() >= MIGRATION_CHUNK) {
+                migrated[0] += flushMigrationChunk(insertSql, players, servers, times);
+                callback.onProgress(migrated[0], 0, "Migrated " + migrated[0] + " players...");
+            }
+        };
+        if (source instanceof YAMLStorageBackend yamlBackend && !yamlBackend.isLoaded()) {
+            yamlBackend.streamDataFile((uuid, server) -> collector.accept(uuid, server, 0));
+        } else {
+            source.forEachTimedEntry(collector);
+        }
+        migrated[0] += flushMigrationChunk(insertSql, players, servers, times);
+
+        logger.info("Migration completed successfully: " + migrated[0] + " players migrated in "
+                + (System.currentTimeMillis() - start) + "ms.");
+        callback.onProgress(migrated[0], migrated[0], "Migration completed: " + migrated[0] + " players.");
+        return migrated[0];
+    }
+
+    private int flushMigrationChunk(String insertSql, List<UUID> players, List<String> servers, List<Long> times) {
+        if (players.isEmpty()) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            pool.execute(connection -> {
+                connection.setAutoCommit(false);
+                try (PreparedStatement stmt = connection.prepareStatement(insertSql)) {
+                    for (int i = 0; i < players.size(); i++) {
+                        stmt.setBytes(1, UuidCodec.toBytes(players.get(i)));
+                        stmt.setString(2, servers.get(i));
+                        stmt.setLong(3, times.get(i) > 0 ? times.get(i) : now);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                    connection.commit();
+                }
+                return null;
+            });
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to migrate a chunk of " + players.size() + " players", e);
+        }
+        int count = players.size();
+        players.clear();
+        servers.clear();
+        times.clear();
+        return count;
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws SQLException {
+        ensureInitialized();
+        String sql = "SELECT player_uuid, server_name FROM " + table;
+
+        pool.execute(connection -> {
+            // PostgreSQL only streams inside a transaction; the MariaDB driver streams with any positive fetch size
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery(sql)) {
+                    while (rs.next()) {
+                        consumer.accept(UuidCodec.fromBytes(rs.getBytes(1)), rs.getString(2));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public boolean supportsRetention() {
+        return true;
+    }
+
+    /**
+     * Delete stale players from the shared table. Every proxy may sweep; the
+     * deletes are idempotent, so overlapping sweeps only find less to do.
+     * A player updated by another proxy between the select and the delete is kept.
+     */
+    @Override
+    public int pruneOlderThan(long cutoffMillis, int limit, Consumer<UUID> pruned) throws SQLException {
+        ensureInitialized();
+        String selectStaleSql = "SELECT player_uuid FROM " + table + " WHERE last_updated < ? ORDER BY last_updated LIMIT ?";
+        String deleteSql = "DELETE FROM " + table + " WHERE player_uuid = ? AND last_updated < ?";
+        List<UUID> deleted = pool.execute(connection -> {
+            List<UUID> stale = new ArrayList<>();
+            try (PreparedStatement stmt = connection.prepareStatement(selectStaleSql)) {
+                stmt.setLong(1, cutoffMillis);
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        stale.add(UuidCodec.fromBytes(rs.getBytes(1)));
+                    }
+                }
+            }
+            if (stale.isEmpty()) {
+                return stale;
+            }
+
+            List<UUID> removed = new ArrayList<>(stale.size());
+            try (PreparedStatement stmt = connection.prepareStatement(deleteSql)) {
+                for (UUID playerUuid : stale) {
+                    stmt.setBytes(1, UuidCodec.toBytes(playerUuid));
+                    stmt.setLong(2, cutoffMillis);
+                    stmt.addBatch();
+                }
+                int[] counts = stmt.executeBatch();
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                        removed.add(stale.get(i));
+                    }
+                }
+            }
+            return removed;
+        });
+        for (UUID playerUuid : deleted) {
+            if (nearCache != null) {
+                nearCache.invalidate(playerUuid);
+            }
+            pruned.accept(playerUuid);
+        }
+        return deleted.size();
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>(writer.getStatistics());
+        pool.getStatistics().forEach((key, value) -> stats.put("pool." + key, value));
+        if (nearCache != null) {
+            nearCache.getStatistics().forEach((key, value) -> stats.put("near_cache." + key, value));
+        }
+        return stats;
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            throw new IllegalStateException("Storage backend has not been initialized");
+        }
+    }
+}
@@ -0,0 +1,699 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal storage backend for player data.
+ * <p>
+ * Every write appends a small binary record to player_data.journal and updates an in-memory index,
+ * so a write costs the same no matter how many players are stored. Once the journal grows past
+ * a configurable multiple of the last snapshot, it is compacted in the background into
+ * player_data.snapshot. Startup loads the snapshot and replays the journal on top of it.
+ * <p>
+ * Each record keeps the time the player was last updated. Compaction copies it into the snapshot
+ * unchanged, and migrations take it from the source where the source records one. Retention
+ * deletes players by appending delete records, which compaction then leaves out of the snapshot.
+ */
+public class JournalStorageBackend implements StorageBackend {
+
+    private static final String SNAPSHOT_FILE = "player_data.snapshot";
+    private static final String JOURNAL_FILE = "player_data.journal";
+    private static final String COMPACTING_FILE = "player_data.journal.compacting";
+
+    private static final int SNAPSHOT_MAGIC = 0x534A5253; // "SRJS"
+    private static final int JOURNAL_MAGIC = 0x534A524C; // "SRJL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int JOURNAL_HEADER_SIZE = 8;
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+
+    private final Logger logger;
+    private final Path dataDirectory;
+    private final File snapshotFile;
+    private final File journalFile;
+    private final File compactingFile;
+
+    // Settings
+    private final boolean fsync;
+    private final double compactionRatio;
+    private final long minCompactionBytes;
+
+    private final PlayerServerMap index = new PlayerServerMap(true);
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Held from rotating the journal until the snapshot replacing it is written, by compaction and migration alike
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    private FileChannel journal;
+    private volatile long journalBytes = 0;
+    private volatile long snapshotBytes = 0;
+    private ExecutorService compactionExecutor;
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+    private volatile boolean initialized = false;
+    // Migrated players are only in the index until the migration writes its snapshot
+    private volatile boolean migrating = false;
+
+    // Stale players found by the last index scan of a retention sweep, and its cutoff; guarded by this
+    private final Deque<UUID> pruneCandidates = new ArrayDeque<>();
+    private long pruneCutoff = 0;
+
+    // Counters
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+    private final AtomicLong deletedRecords = new AtomicLong();
+    private volatile long replayedRecords = 0;
+
+    public JournalStorageBackend(Logger logger, Path dataDirectory) {
+        this(logger, dataDirectory, false, 2.0, 1024 * 1024);
+    }
+
+    /**
+     * @param fsync Whether to force every record to disk before returning
+     * @param compactionRatio Journal size, relative to the snapshot size, that triggers compaction
+     * @param minCompactionBytes Journal size below which compaction never runs
+     */
+    public JournalStorageBackend(Logger logger, Path dataDirectory, boolean fsync, double compactionRatio, long minCompactionBytes) {
+        this.logger = logger;
+        this.dataDirectory = dataDirectory;
+        this.snapshotFile = new File(dataDirectory.toFile(), SNAPSHOT_FILE);
+        this.journalFile = new File(dataDirectory.toFile(), JOURNAL_FILE);
+        this.compactingFile = new File(dataDirectory.toFile(), COMPACTING_FILE);
+        this.fsync = fsync;
+        this.compactionRatio = Math.max(0.5, compactionRatio);
+        this.minCompactionBytes = Math.max(0, minCompactionBytes);
+    }
+
+    @Override
+    public void setLastServer(UUID playerUuid, String serverName) {
+        ensureInitialized();
+        long now = System.currentTimeMillis();
+        ByteBuffer record = encode(RECORD_PUT, playerUuid, now, serverName);
+
+        writeLock.lock();
+        try {
+            append(record);
+            index.put(playerUuid, serverName, now);
+        } catch (IOException e) {
+            logger.error("Failed to append journal record for player " + playerUuid, e);
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+
+        maybeCompact();
+    }
+
+    /**
+     * Append all records with a single write, and a single fsync if enabled.
+     */
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        if (lastServers.isEmpty()) {
+            return;
+        }
+        ensureInitialized();
+        long now = System.currentTimeMillis();
+        List<ByteBuffer> records = new ArrayList<>(lastServers.size());
+        int length = 0;
+        for (Map.Entry<UUID, String> entry : lastServers.entrySet()) {
+            ByteBuffer record = encode(RECORD_PUT, entry.getKey(), now, entry.getValue());
+            records.add(record);
+            length += record.remaining();
+        }
+        ByteBuffer combined = ByteBuffer.allocate(length);
+        records.forEach(combined::put);
+        combined.flip();
+
+        writeLock.lock();
+        try {
+            append(combined, records.size());
+            lastServers.forEach((playerUuid, serverName) -> index.put(playerUuid, serverName, now));
+        } catch (IOException e) {
+            logger.error("Failed to append journal records for " + lastServers.size() + " players", e);
+            return;
+        } finally {
+            writeLock.unlock();
+        }
+
+        maybeCompact();
+    }
+
+    @Override
+    public Optional<String> getLastServer(UUID playerUuid) {
+        return Optional.ofNullable(index.get(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid, Executor executor) {
+        // Served from memory, no need to hop threads
+        return CompletableFuture.completedFuture(getLastServer(playerUuid));
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        if (initialized) {
+            return;
+        }
+
+        Files.createDirectories(dataDirectory);
+        long start = System.currentTimeMillis();
+
+        if (snapshotFile.exists()) {
+            loadSnapshot();
+        }
+
+        // A leftover compacting journal means we crashed mid-compaction; its records are still needed
+        boolean interruptedCompaction = compactingFile.exists();
+        if (interruptedCompaction) {
+            replay(compactingFile, false);
+        }
+
+        long validBytes = journalFile.exists() ? replay(journalFile, true) : 0;
+        openJournal(validBytes);
+
+        compactionExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "SmartRejoin-Journal-Compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        initialized = true;
+
+        if (interruptedCompaction) {
+            logger.warn("Found an interrupted journal compaction. Rewriting the snapshot...");
+            snapshotLock.lock();
+            try {
+                writeSnapshot();
+                Files.deleteIfExists(compactingFile.toPath());
+            } finally {
+                snapshotLock.unlock();
+            }
+        }
+
+        logger.info("Journal storage backend loaded " + index.size() + " players (" + replayedRecords
+                + " journal records replayed) in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    @Override
+    public void shutdown() {
+        if (!initialized) {
+            return;
+        }
+
+        compactionExecutor.shutdown();
+        try {
+            if (!compactionExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                logger.warn("Journal compaction did not finish in time. The journal will be replayed on next start.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        writeLock.lock();
+        try {
+            journal.force(true);
+            journal.close();
+            logger.info("Journal storage backend shut down successfully.");
+        } catch (IOException e) {
+            logger.error("Failed to close journal file", e);
+        } finally {
+            initialized = false;
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public String getBackendName() {
+        return "Journal";
+    }
+
+    @Override
+    public boolean isMemoryResident() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMigration() {
+        return true;
+    }
+
+    @Override
+    public int migrateFrom(StorageBackend source, MigrationCallback callback) throws Exception {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot migrate from the same backend");
+        }
+        ensureInitialized();
+
+        logger.info("Starting migration from " + source.getBackendName() + " to Journal...");
+        callback.onProgress(0, 0, "Starting migration...");
+
+        // Players whose source records no update time count as updated by the migration
+        long migratedAt = System.currentTimeMillis();
+        int[] count = {0};
+        migrating = true;
+        try {
+            source.forEachTimedEntry((uuid, server, updatedAt) -> {
+                index.put(uuid, server, updatedAt > 0 ? updatedAt : migratedAt);
+                count[0]++;
+                if (count[0] % 10000 == 0) {
+                    callback.onProgress(count[0], 0, "Migrated " + count[0] + " players...");
+                }
+            });
+
+            // Persist everything at once as a snapshot instead of appending one record per player.
+            // A compaction that is already running finishes first, so its older snapshot cannot replace this one.
+            snapshotLock.lock();
+            try {
+                writeLock.lock();
+                try {
+                    rotateJournal();
+                } finally {
+                    writeLock.unlock();
+                }
+                writeSnapshot();
+                Files.deleteIfExists(compactingFile.toPath());
+            } finally {
+                snapshotLock.unlock();
+            }
+        } finally {
+            migrating = false;
+        }
+
+        logger.info("Migration completed successfully: " + count[0] + " players migrated.");
+        callback.onProgress(count[0], count[0], "Migration completed: " + count[0] + " players.");
+        return count[0];
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) {
+        index.forEach(consumer);
+    }
+
+    @Override
+    public void forEachTimedEntry(TimedEntryConsumer consumer) {
+        index.forEach(consumer);
+    }
+
+    @Override
+    public boolean supportsRetention() {
+        return true;
+    }
+
+    /**
+     * Delete stale players by appending one delete record each, in a single write.
+     * The index is scanned once per sweep; the calls that follow work through the players it found,
+     * checking each again under the write lock, so a player written since is kept.
+     */
+    @Override
+    public synchronized int pruneOlderThan(long cutoffMillis, int limit, Consumer<UUID> pruned) throws IOException {
+        ensureInitialized();
+        if (migrating) {
+            return 0;
+        }
+        if (pruneCandidates.isEmpty() || pruneCutoff != cutoffMillis) {
+            pruneCandidates.clear();
+            pruneCutoff = cutoffMillis;
+            index.forEach((UUID uuid, String serverName, long updatedAt) -> {
+                if (updatedAt < cutoffMillis) {
+                    pruneCandidates.add(uuid);
+                }
+            });
+        }
+
+        long now = System.currentTimeMillis();
+        List<UUID> deleted = new ArrayList<>();
+        writeLock.lock();
+        try {
+            List<ByteBuffer> records = new ArrayList<>();
+            int length = 0;
+            while (deleted.size() < limit && !pruneCandidates.isEmpty()) {
+                UUID playerUuid = pruneCandidates.poll();
+                long updatedAt = index.getUpdatedAt(playerUuid);
+                if (updatedAt >= 0 && updatedAt < cutoffMillis) {
+                    ByteBuffer record = encode(RECORD_DELETE, playerUuid, now, null);
+                    records.add(record);
+                    length += record.remaining();
+                    deleted.add(playerUuid);
+                }
+            }
+            if (deleted.isEmpty()) {
+                return 0;
+            }
+            ByteBuffer combined = ByteBuffer.allocate(length);
+            records.forEach(combined::put);
+            combined.flip();
+            // Written before the index changes, so a failed write deletes nothing
+            append(combined, records.size());
+            deleted.forEach(index::remove);
+            deletedRecords.addAndGet(deleted.size());
+        } finally {
+            writeLock.unlock();
+        }
+
+        deleted.forEach(pruned);
+        maybeCompact();
+        return deleted.size();
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", index.size());
+        stats.put("journal_bytes", journalBytes);
+        stats.put("snapshot_bytes", snapshotBytes);
+        stats.put("appended_records", appendedRecords.get());
+        stats.put("replayed_records", replayedRecords);
+        stats.put("compactions", compactions.get());
+        stats.put("deleted_records", deletedRecords.get());
+        return stats;
+    }
+
+    /**
+     * Check whether a snapshot or journal exists on disk.
+     * Used to decide whether a migration into this backend is needed.
+     */
+    public boolean hasData() {
+        return snapshotFile.exists() || journalFile.exists() || compactingFile.exists();
+    }
+
+    /**
+     * Check whether a snapshot or journal exists in a plugin data directory, without creating the backend.
+     */
+    public static boolean hasData(Path dataDirectory) {
+        File directory = dataDirectory.toFile();
+        return new File(directory, SNAPSHOT_FILE).exists() || new File(directory, JOURNAL_FILE).exists()
+                || new File(directory, COMPACTING_FILE).exists();
+    }
+
+    /**
+     * Get the snapshot and journal files holding this backend's data.
+     */
+    public List<File> getDataFiles() {
+        return List.of(snapshotFile, journalFile);
+    }
+
+    /**
+     * Get the journal file.
+     * Useful for migration purposes.
+     * @return The journal file
+     */
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    // --- Writing ---
+
+    private void append(ByteBuffer record) throws IOException {
+        append(record, 1);
+    }
+
+    /**
+     * Write one or more encoded records back to back.
+     * @param recordCount Number of records in the buffer
+     */
+    private void append(ByteBuffer records, int recordCount) throws IOException {
+        int length = records.remaining();
+        while (records.hasRemaining()) {
+            journal.write(records);
+        }
+        if (fsync) {
+            journal.force(false);
+        }
+        journalBytes += length;
+        appendedRecords.addAndGet(recordCount);
+    }
+
+    private void maybeCompact() {
+        long threshold = Math.max(minCompactionBytes, (long) (snapshotBytes * compactionRatio));
+        // During a migration, writes keep landing in the journal and the migration's snapshot covers them
+        if (initialized && !migrating && journalBytes > threshold && compactionQueued.compareAndSet(false, true)) {
+            try {
+                compactionExecutor.execute(this::compact);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; the journal is replayed on the next start
+                compactionQueued.set(false);
+            }
+        }
+    }
+
+    /**
+     * Fold the journal into a new snapshot. Writes keep going to a fresh journal in the meantime.
+     */
+    private void compact() {
+        compactionQueued.set(false);
+        long start = System.currentTimeMillis();
+        snapshotLock.lock();
+        try {
+            if (migrating) {
+                return;
+            }
+            writeLock.lock();
+            try {
+                rotateJournal();
+            } finally {
+                writeLock.unlock();
+            }
+
+            // Writes that race with this iteration also land in the new journal, which is replayed after the snapshot
+            writeSnapshot();
+            Files.deleteIfExists(compactingFile.toPath());
+            compactions.incrementAndGet();
+            logger.info("Journal compacted into a " + snapshotBytes + " byte snapshot in " + (System.currentTimeMillis() - start) + "ms.");
+        } catch (IOException e) {
+            logger.error("Failed to compact player data journal", e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    /**
+     * Move the current journal aside and start a new one. Must hold the write lock.
+     * If an earlier compaction failed before its snapshot was written, its journal is still needed,
+     * so the current records are appended to it instead of replacing it.
+     */
+    private void rotateJournal() throws IOException {
+        journal.force(true);
+        journal.close();
+        if (compactingFile.exists()) {
+            try (FileChannel source = FileChannel.open(journalFile.toPath(), StandardOpenOption.READ);
+                 FileChannel target = FileChannel.open(compactingFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long position = JOURNAL_HEADER_SIZE;
+                long size = source.size();
+                while (position < size) {
+                    position += source.transferTo(position, size - position, target);
+                }
+                target.force(true);
+            }
+            Files.delete(journalFile.toPath());
+        } else {
+            Files.move(journalFile.toPath(), compactingFile.toPath());
+        }
+        openJournal(0);
+    }
+
+    private void openJournal(long validBytes) throws IOException {
+        journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validBytes < JOURNAL_HEADER_SIZE) {
+            journal.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+            header.putInt(JOURNAL_MAGIC).putInt(FORMAT_VERSION).flip();
+            journal.write(header, 0);
+            validBytes = JOURNAL_HEADER_SIZE;
+        } else if (journal.size() > validBytes) {
+            // Drop a torn record left behind by a crash
+            logger.warn("Discarding " + (journal.size() - validBytes) + " bytes of incomplete journal data.");
+            journal.truncate(validBytes);
+        }
+        journal.position(validBytes);
+        journalBytes = validBytes;
+    }
+
+    /**
+     * Write the index to the snapshot file. Must hold the snapshot lock.
+     */
+    private void writeSnapshot() throws IOException {
+        File tempFile = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 1 << 16))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            try {
+                index.forEach((UUID uuid, String serverName, long updatedAt) -> {
+                    try {
+                        out.writeByte(RECORD_PUT);
+                        out.writeLong(uuid.getMostSignificantBits());
+                        out.writeLong(uuid.getLeastSignificantBits());
+                        out.writeLong(updatedAt);
+                        writeName(out, serverName);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeByte(0); // End marker
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotBytes = snapshotFile.length();
+    }
+
+    private static ByteBuffer encode(byte type, UUID uuid, long timestamp, String serverName) {
+        byte[] name = type == RECORD_PUT ? serverName.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int size = 1 + 8 + 8 + 8 + (type == RECORD_PUT ? 2 + name.length : 0) + 4;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(type)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .putLong(timestamp);
+        if (type == RECORD_PUT) {
+            buffer.putShort((short) name.length).put(name);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, size - 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeName(DataOutputStream out, String serverName) throws IOException {
+        byte[] name = serverName.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(name.length);
+        out.write(name);
+    }
+
+    // --- Loading ---
+
+    private void loadSnapshot() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(snapshotFile), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unrecognized snapshot format: " + snapshotFile.getAbsolutePath());
+            }
+            while (in.readByte() == RECORD_PUT) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                long updatedAt = in.readLong();
+                byte[] name = new byte[in.readUnsignedShort()];
+                in.readFully(name);
+                index.put(uuid, new String(name, StandardCharsets.UTF_8), updatedAt);
+            }
+        }
+        snapshotBytes = snapshotFile.length();
+    }
+
+    /**
+     * Apply all intact records of a journal file to the index.
+     * @param file The journal to replay
+     * @param tolerateTornTail Whether a damaged tail is expected (the live journal after a crash)
+     * @return The number of bytes that hold valid data
+     */
+    private long replay(File file, boolean tolerateTornTail) throws IOException {
+        long validBytes = 0;
+        long records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (file.length() < JOURNAL_HEADER_SIZE) {
+                return 0;
+            }
+            if (in.readInt() != JOURNAL_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Unrecognized journal format: " + file.getAbsolutePath());
+            }
+            validBytes = JOURNAL_HEADER_SIZE;
+
+            byte[] buffer = new byte[1 + 8 + 8 + 8 + 2 + 0xFFFF + 4];
+            while (true) {
+                int size;
+                try {
+                    size = readRecord(in, buffer);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (size < 0) {
+                    break;
+                }
+
+                ByteBuffer record = ByteBuffer.wrap(buffer, 0, size);
+                byte type = record.get();
+                UUID uuid = new UUID(record.getLong(), record.getLong());
+                long updatedAt = record.getLong();
+                if (type == RECORD_PUT) {
+                    byte[] name = new byte[record.getShort() & 0xFFFF];
+                    record.get(name);
+                    index.put(uuid, new String(name, StandardCharsets.UTF_8), updatedAt);
+                } else {
+                    index.remove(uuid);
+                }
+                validBytes += size;
+                records++;
+            }
+        }
+
+        if (validBytes < file.length() && !tolerateTornTail) {
+            logger.warn("Journal " + file.getName() + " has " + (file.length() - validBytes) + " unreadable trailing bytes.");
+        }
+        replayedRecords += records;
+        return validBytes;
+    }
+
+    /**
+     * Read one record into the buffer and verify its checksum.
+     * @return The record size, or -1 if the record is damaged
+     */
+    private static int readRecord(DataInputStream in, byte[] buffer) throws IOException {
+        byte type = in.readByte();
+        if (type != RECORD_PUT && type != RECORD_DELETE) {
+            return -1;
+        }
+        buffer[0] = type;
+        in.readFully(buffer, 1, 24);
+        int size = 25;
+        if (type == RECORD_PUT) {
+            in.readFully(buffer, size, 2);
+            int length = ((buffer[size] & 0xFF) << 8) | (buffer[size + 1] & 0xFF);
+            size += 2;
+            in.readFully(buffer, size, length);
+            size += length;
+        }
+        int storedCrc = in.readInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer, 0, size);
+        if ((int) crc.getValue() != storedCrc) {
+            return -1;
+        }
+        return size + 4;
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            throw new IllegalStateException("Storage backend has not been initialized");
+        }
+    }
+}
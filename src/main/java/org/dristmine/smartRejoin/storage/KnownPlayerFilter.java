@@ -0,0 +1,292 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Scalable Bloom filter of every player UUID that has a stored last server.
+ * <p>
+ * A negative answer is definite: the player was never stored, so the storage lookup can be
+ * skipped. A positive answer may be wrong with roughly the configured probability.
+ * <p>
+ * The filter starts with one stage sized for the expected number of players. Whenever the
+ * newest stage is full, a stage twice as large with half the false-positive rate is added,
+ * so the combined rate stays below the configured one however many players are added.
+ * Bits are set atomically, so a player added on one thread is seen by lookups on any other.
+ */
+public class KnownPlayerFilter {
+
+    private static final int FILE_MAGIC = 0x534A5242; // "SRJB"
+    private static final int FILE_VERSION = 1;
+    private static final double LN2 = Math.log(2);
+    // Capacity, hashes, count and word count of a saved stage
+    private static final int STAGE_HEADER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private static final class Stage {
+        final long capacity;
+        final int hashes;
+        final long bits;
+        final AtomicLongArray words;
+        volatile long count;
+
+        Stage(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (LN2 * LN2));
+            int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (optimalBits + 63) / 64));
+            this.bits = wordCount * 64L;
+            this.hashes = (int) Math.max(1, Math.min(30, Math.round((double) bits / capacity * LN2)));
+            this.words = new AtomicLongArray(wordCount);
+        }
+
+        Stage(long capacity, int hashes, long count, long[] data) {
+            this.capacity = capacity;
+            this.hashes = hashes;
+            this.bits = data.length * 64L;
+            this.words = new AtomicLongArray(data);
+            this.count = count;
+        }
+
+        boolean contains(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void add(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word;
+                while (((word = words.get(index)) & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                    // Another bit in the word changed; retry
+                }
+            }
+        }
+
+        /**
+         * False-positive probability from the fraction of bits actually set.
+         */
+        double estimatedFalsePositiveRate() {
+            long set = 0;
+            for (int i = 0; i < words.length(); i++) {
+                set += Long.bitCount(words.get(i));
+            }
+            return Math.pow((double) set / bits, hashes);
+        }
+    }
+
+    private final long expectedPlayers;
+    private final double falsePositiveRate;
+    private volatile Stage[] stages;
+
+    /**
+     * @param expectedPlayers Number of players the first stage is sized for
+     * @param falsePositiveRate Target probability that an unknown player is reported as known
+     */
+    public KnownPlayerFilter(long expectedPlayers, double falsePositiveRate) {
+        this.expectedPlayers = Math.max(1024, expectedPlayers);
+        this.falsePositiveRate = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        this.stages = new Stage[]{new Stage(this.expectedPlayers, stageRate(0))};
+    }
+
+    private KnownPlayerFilter(long expectedPlayers, double falsePositiveRate, Stage[] stages) {
+        this.expectedPlayers = expectedPlayers;
+        this.falsePositiveRate = falsePositiveRate;
+        this.stages = stages;
+    }
+
+    private double stageRate(int stage) {
+        return falsePositiveRate * Math.pow(0.5, stage + 1);
+    }
+
+    /**
+     * Check if a player may have been added. False means the player was definitely never added.
+     */
+    public boolean mightContain(UUID playerUuid) {
+        long h1 = hash1(playerUuid);
+        long h2 = hash2(playerUuid);
+        for (Stage stage : stages) {
+            if (stage.contains(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add a player. Players that may already be present are not added again, so they do not use up capacity.
+     */
+    public void add(UUID playerUuid) {
+        long h1 = hash1(playerUuid);
+        long h2 = hash2(playerUuid);
+        for (Stage stage : stages) {
+            if (stage.contains(h1, h2)) {
+                return;
+            }
+        }
+
+        synchronized (this) {
+            Stage[] current = stages;
+            Stage last = current[current.length - 1];
+            if (last.count >= last.capacity) {
+                Stage[] grown = new Stage[current.length + 1];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                last = new Stage(last.capacity * 2, stageRate(current.length));
+                grown[current.length] = last;
+                stages = grown;
+            }
+            last.add(h1, h2);
+            last.count++;
+        }
+    }
+
+    private static long hash1(UUID uuid) {
+        return mix(uuid.getMostSignificantBits() ^ Long.rotateLeft(uuid.getLeastSignificantBits(), 32));
+    }
+
+    private static long hash2(UUID uuid) {
+        // Odd, so successive probes never repeat within a stage
+        return mix(uuid.getLeastSignificantBits() + 0x9E3779B97F4A7C15L * uuid.getMostSignificantBits()) | 1;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Get the number of players added.
+     */
+    public long size() {
+        long size = 0;
+        for (Stage stage : stages) {
+            size += stage.count;
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the current false-positive rate from the bits actually set in each stage.
+     * Scans the whole filter, so only meant for reporting.
+     */
+    public double estimatedFalsePositiveRate() {
+        double allMiss = 1.0;
+        for (Stage stage : stages) {
+            allMiss *= 1.0 - stage.estimatedFalsePositiveRate();
+        }
+        return 1.0 - allMiss;
+    }
+
+    /**
+     * Get filter statistics for reporting.
+     */
+    public Map<String, Object> getStatistics() {
+        Stage[] current = stages;
+        long bytes = 0;
+        for (Stage stage : current) {
+            bytes += stage.bits / 8;
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("players", size());
+        stats.put("stages", current.length);
+        stats.put("size_kb", bytes / 1024);
+        stats.put("target_fpp", falsePositiveRate);
+        stats.put("estimated_fpp", String.format("%.6f", estimatedFalsePositiveRate()));
+        return stats;
+    }
+
+    /**
+     * Write the filter to a file, tagged with the storage it describes.
+     * @param source Identifies the storage the filter was built from, checked again by {@link #load}
+     */
+    public synchronized void save(File file, String source) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(source);
+            out.writeLong(expectedPlayers);
+            out.writeDouble(falsePositiveRate);
+            Stage[] current = stages;
+            out.writeInt(current.length);
+            for (Stage stage : current) {
+                out.writeLong(stage.capacity);
+                out.writeInt(stage.hashes);
+                out.writeLong(stage.count);
+                out.writeInt(stage.words.length());
+                for (int i = 0; i < stage.words.length(); i++) {
+                    out.writeLong(stage.words.get(i));
+                }
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not replace " + file.getName());
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not rename " + tempFile.getName() + " to " + file.getName());
+        }
+    }
+
+    /**
+     * Read a filter written by {@link #save}.
+     * @return The filter, or null if the file was written for other storage or settings
+     */
+    public static KnownPlayerFilter load(File file, String source, long expectedPlayers, double falsePositiveRate) throws IOException {
+        // Sizes read from the file are checked against its length, so a damaged file cannot claim huge arrays
+        long remaining = file.length();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException(file.getName() + " is not a known players filter");
+            }
+            if (!in.readUTF().equals(source)) {
+                return null;
+            }
+            long savedExpected = in.readLong();
+            double savedRate = in.readDouble();
+            if (savedExpected != Math.max(1024, expectedPlayers) || savedRate != Math.min(0.5, Math.max(1e-9, falsePositiveRate))) {
+                return null;
+            }
+            int stageCount = in.readInt();
+            if (stageCount <= 0 || stageCount > remaining / STAGE_HEADER_BYTES) {
+                throw new IOException(file.getName() + " is damaged: " + stageCount + " stages");
+            }
+            Stage[] stages = new Stage[stageCount];
+            for (int s = 0; s < stages.length; s++) {
+                long capacity = in.readLong();
+                int hashes = in.readInt();
+                long count = in.readLong();
+                int wordCount = in.readInt();
+                remaining -= STAGE_HEADER_BYTES;
+                if (capacity <= 0 || hashes <= 0 || hashes > 30 || count < 0 || wordCount <= 0 || wordCount > remaining / Long.BYTES) {
+                    throw new IOException(file.getName() + " is damaged: stage " + s + " does not fit the file");
+                }
+                remaining -= (long) wordCount * Long.BYTES;
+                long[] data = new long[wordCount];
+                for (int i = 0; i < data.length; i++) {
+                    data[i] = in.readLong();
+                }
+                stages[s] = new Stage(capacity, hashes, count, data);
+            }
+            return new KnownPlayerFilter(savedExpected, savedRate, stages);
+        }
+    }
+}
@@ -0,0 +1,811 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Memory-mapped storage backend for player data.
+ * <p>
+ * Players are stored in player_data.&lt;capacity&gt;.idx, an open-addressing hash table laid out
+ * directly in a mapped file. Each 32-byte slot holds the UUID, a server id and the time of the last
+ * update, so a lookup or update reads and writes a slot in place without any parsing. Server names
+ * are kept once in player_data.servers. Startup maps the file instead of loading every player.
+ * <p>
+ * When the table gets too full, it is rehashed into a new file of twice the capacity. The new file
+ * only gets its header once it is complete, so an interrupted resize is simply discarded on the next start.
+ * Updates survive a proxy crash through the OS page cache. They are forced to disk on shutdown.
+ */
+public class MappedStorageBackend implements StorageBackend {
+
+    private static final int INDEX_MAGIC = 0x534A524D; // "SRJM"
+    private static final int DICTIONARY_MAGIC = 0x534A5244; // "SRJD"
+    private static final int FORMAT_VERSION = 1;
+
+    // Header layout
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_CAPACITY = 8;
+    private static final int HEADER_ENTRIES = 12;
+    private static final int HEADER_CLEAN = 16;
+
+    // Slot layout
+    private static final int SLOT_SIZE = 32;
+    private static final int SLOT_MSB = 0;
+    private static final int SLOT_LSB = 8;
+    private static final int SLOT_SERVER = 16; // Server id + 1; 0 marks an empty slot
+    private static final int SLOT_TIMESTAMP = 24;
+
+    private static final int INITIAL_CAPACITY = 1 << 14;
+    private static final int MAX_CAPACITY = 1 << 25; // 1 GB file, the most a single mapping can address
+    private static final float MAX_LOAD = 0.7f;
+    private static final int PRUNE_SCAN_SLOTS = 16384;
+    private static final int CURSOR_SCAN_SLOTS = 16384;
+
+    private static final String DICTIONARY_FILE = "player_data.servers";
+    private static final Pattern INDEX_FILE_PATTERN = Pattern.compile("player_data\\.(\\d+)\\.idx");
+
+    /**
+     * An open, mapped index file. Replaced as a whole when the table grows.
+     */
+    private static final class Mapping {
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int capacity;
+
+        Mapping(File file, FileChannel channel, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+
+    private final Logger logger;
+    private final Path dataDirectory;
+    private final File dictionaryFile;
+
+    private final StampedLock lock = new StampedLock();
+    private volatile Mapping mapping;
+    private int entries = 0;
+
+    private final ServerNameTable serverNames = new ServerNameTable();
+    private FileChannel dictionary;
+    private int persistedServers = 0;
+    private boolean initialized = false;
+    private int pruneCursor = 0;
+
+    // Counters
+    private final AtomicLong resizes = new AtomicLong();
+
+    public MappedStorageBackend(Logger logger, Path dataDirectory) {
+        this.logger = logger;
+        this.dataDirectory = dataDirectory;
+        this.dictionaryFile = new File(dataDirectory.toFile(), DICTIONARY_FILE);
+    }
+
+    @Override
+    public void setLastServer(UUID playerUuid, String serverName) {
+        long stamp = lock.writeLock();
+        try {
+            ensureInitialized();
+            put(playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits(), serverIdFor(serverName) + 1, System.currentTimeMillis());
+        } catch (IOException e) {
+            logger.error("Failed to store last server for player " + playerUuid, e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Store every player under a single acquisition of the write lock.
+     */
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        long now = System.currentTimeMillis();
+        long stamp = lock.writeLock();
+        try {
+            ensureInitialized();
+            for (Map.Entry<UUID, String> entry : lastServers.entrySet()) {
+                UUID playerUuid = entry.getKey();
+                put(playerUuid.getMostSignificantBits(), playerUuid.getLeastSignificantBits(), serverIdFor(entry.getValue()) + 1, now);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to store last servers for " + lastServers.size() + " players", e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Optional<String> getLastServer(UUID playerUuid) {
+        long msb = playerUuid.getMostSignificantBits();
+        long lsb = playerUuid.getLeastSignificantBits();
+
+        long stamp = lock.tryOptimisticRead();
+        int value = find(mapping, msb, lsb);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                value = find(mapping, msb, lsb);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return value == 0 ? Optional.empty() : Optional.ofNullable(serverNames.nameOf(value - 1));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid, Executor executor) {
+        // A lookup is a read from the mapped file, no need to hop threads
+        return CompletableFuture.completedFuture(getLastServer(playerUuid));
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        if (initialized) {
+            return;
+        }
+
+        Files.createDirectories(dataDirectory);
+        long start = System.currentTimeMillis();
+
+        loadDictionary();
+
+        File indexFile = findIndexFile(true);
+        if (indexFile == null) {
+            mapping = createIndex(INITIAL_CAPACITY);
+            writeHeader(mapping, 0);
+            entries = 0;
+        } else {
+            mapping = openIndex(indexFile);
+            entries = mapping.buffer.getInt(HEADER_ENTRIES);
+            if (mapping.buffer.getInt(HEADER_CLEAN) == 0) {
+                // The entry count in the header may be stale after a crash
+                entries = countEntries(mapping);
+                logger.warn("Mapped player data was not shut down cleanly. Recounted " + entries + " players.");
+            }
+            mapping.buffer.putInt(HEADER_CLEAN, 0);
+        }
+        initialized = true;
+
+        logger.info("Mapped storage backend opened " + mapping.file.getName() + " with " + entries + " players in "
+                + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    @Override
+    public void shutdown() {
+        long stamp = lock.writeLock();
+        try {
+            if (!initialized) {
+                return;
+            }
+            MappedByteBuffer buffer = mapping.buffer;
+            buffer.putInt(HEADER_ENTRIES, entries);
+            buffer.putInt(HEADER_CLEAN, 1);
+            buffer.force();
+            mapping.channel.close();
+            dictionary.force(true);
+            dictionary.close();
+            logger.info("Mapped storage backend shut down successfully.");
+        } catch (IOException e) {
+            logger.error("Failed to close mapped player data", e);
+        } finally {
+            initialized = false;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public String getBackendName() {
+        return "Mapped";
+    }
+
+    @Override
+    public boolean isMemoryResident() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMigration() {
+        return true;
+    }
+
+    @Override
+    public int migrateFrom(StorageBackend source, MigrationCallback callback) throws Exception {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot migrate from the same backend");
+        }
+
+        logger.info("Starting migration from " + source.getBackendName() + " to Mapped...");
+        callback.onProgress(0, 0, "Starting migration...");
+
+        // Players whose source records no update time count as updated by the migration
+        long now = System.currentTimeMillis();
+        int[] count = {0};
+        long stamp = lock.writeLock();
+        try {
+            ensureInitialized();
+            source.forEachTimedEntry((uuid, server, updatedAt) -> {
+                try {
+                    put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), serverIdFor(server) + 1, updatedAt > 0 ? updatedAt : now);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Failed to migrate player " + uuid, e);
+                }
+                count[0]++;
+                if (count[0] % 10000 == 0) {
+                    callback.onProgress(count[0], 0, "Migrated " + count[0] + " players...");
+                }
+            });
+            mapping.buffer.putInt(HEADER_ENTRIES, entries);
+            mapping.buffer.force();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        logger.info("Migration completed successfully: " + count[0] + " players migrated.");
+        callback.onProgress(count[0], count[0], "Migration completed: " + count[0] + " players.");
+        return count[0];
+    }
+
+    /**
+     * Visit every player. Writers wait until the iteration is done.
+     */
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) {
+        long stamp = lock.readLock();
+        try {
+            ensureInitialized();
+            MappedByteBuffer buffer = mapping.buffer;
+            for (int slot = 0; slot < mapping.capacity; slot++) {
+                int offset = slotOffset(slot);
+                int value = buffer.getInt(offset + SLOT_SERVER);
+                if (value != 0) {
+                    String serverName = serverNames.nameOf(value - 1);
+                    if (serverName != null) {
+                        consumer.accept(new UUID(buffer.getLong(offset + SLOT_MSB), buffer.getLong(offset + SLOT_LSB)), serverName);
+                    }
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void forEachTimedEntry(TimedEntryConsumer consumer) {
+        long stamp = lock.readLock();
+        try {
+            ensureInitialized();
+            MappedByteBuffer buffer = mapping.buffer;
+            for (int slot = 0; slot < mapping.capacity; slot++) {
+                int offset = slotOffset(slot);
+                int value = buffer.getInt(offset + SLOT_SERVER);
+                if (value != 0) {
+                    String serverName = serverNames.nameOf(value - 1);
+                    if (serverName != null) {
+                        consumer.accept(new UUID(buffer.getLong(offset + SLOT_MSB), buffer.getLong(offset + SLOT_LSB)), serverName,
+                                buffer.getLong(offset + SLOT_TIMESTAMP));
+                    }
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Scan the table {@value #CURSOR_SCAN_SLOTS} slots at a time, holding the read lock only while
+     * a chunk is copied, so writers are never held up by a slow reader. If the table grows while the
+     * cursor is open the scan starts over in the new table, and players already read may be seen twice.
+     */
+    @Override
+    public StorageCursor openCursor() {
+        return new StorageCursor() {
+            private final List<UUID> players = new ArrayList<>();
+            private final List<String> servers = new ArrayList<>();
+            private Mapping scanned = null;
+            private int nextSlot = 0;
+            private int position = 0;
+
+            @Override
+            public boolean next() {
+                if (++position < players.size()) {
+                    return true;
+                }
+                players.clear();
+                servers.clear();
+                position = 0;
+                while (players.isEmpty() && scanChunk()) {
+                    // Skip chunks of empty slots
+                }
+                return !players.isEmpty();
+            }
+
+            /**
+             * @return false once every slot has been scanned
+             */
+            private boolean scanChunk() {
+                long stamp = lock.readLock();
+                try {
+                    ensureInitialized();
+                    Mapping current = mapping;
+                    if (current != scanned) {
+                        scanned = current;
+                        nextSlot = 0;
+                    }
+                    if (nextSlot >= current.capacity) {
+                        return false;
+                    }
+                    int end = Math.min(current.capacity, nextSlot + CURSOR_SCAN_SLOTS);
+                    for (int slot = nextSlot; slot < end; slot++) {
+                        int offset = slotOffset(slot);
+                        int value = current.buffer.getInt(offset + SLOT_SERVER);
+                        if (value != 0) {
+                            String serverName = serverNames.nameOf(value - 1);
+                            if (serverName != null) {
+                                players.add(new UUID(current.buffer.getLong(offset + SLOT_MSB), current.buffer.getLong(offset + SLOT_LSB)));
+                                servers.add(serverName);
+                            }
+                        }
+                    }
+                    nextSlot = end;
+                    return true;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            @Override
+            public UUID playerUuid() {
+                return players.get(position);
+            }
+
+            @Override
+            public String serverName() {
+                return servers.get(position);
+            }
+
+            @Override
+            public void close() {
+                players.clear();
+                servers.clear();
+            }
+        };
+    }
+
+    @Override
+    public boolean supportsRetention() {
+        return true;
+    }
+
+    /**
+     * Delete stale players while walking the table from where the previous call stopped.
+     * The write lock is released every {@value #PRUNE_SCAN_SLOTS} slots, so lookups and updates
+     * are never held up by a long scan. Freed slots are reused, so the file does not shrink.
+     */
+    @Override
+    public int pruneOlderThan(long cutoffMillis, int limit, Consumer<UUID> pruned) {
+        int deleted = 0;
+        List<UUID> deletedPlayers = new ArrayList<>();
+        while (deleted < limit) {
+            long stamp = lock.writeLock();
+            try {
+                ensureInitialized();
+                Mapping current = mapping;
+                if (pruneCursor >= current.capacity) {
+                    pruneCursor = 0;
+                    break;
+                }
+
+                MappedByteBuffer buffer = current.buffer;
+                int end = Math.min(current.capacity, pruneCursor + PRUNE_SCAN_SLOTS);
+                while (pruneCursor < end && deleted < limit) {
+                    int offset = slotOffset(pruneCursor);
+                    if (buffer.getInt(offset + SLOT_SERVER) != 0 && buffer.getLong(offset + SLOT_TIMESTAMP) < cutoffMillis) {
+                        deletedPlayers.add(new UUID(buffer.getLong(offset + SLOT_MSB), buffer.getLong(offset + SLOT_LSB)));
+                        // Stay on this slot, deletion may have shifted another entry into it
+                        deleteSlot(current, pruneCursor);
+                        entries--;
+                        deleted++;
+                    } else {
+                        pruneCursor++;
+                    }
+                }
+                buffer.putInt(HEADER_ENTRIES, entries);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+        deletedPlayers.forEach(pruned);
+        return deleted;
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long stamp = lock.readLock();
+        try {
+            Mapping current = mapping;
+            stats.put("entries", entries);
+            stats.put("capacity", current != null ? current.capacity : 0);
+            stats.put("load_factor", current != null ? String.format("%.2f", entries / (double) current.capacity) : "n/a");
+            stats.put("file_size_kb", current != null ? current.file.length() / 1024 : 0);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        stats.put("servers", serverNames.size());
+        stats.put("resizes", resizes.get());
+        return stats;
+    }
+
+    /**
+     * Check whether mapped player data exists on disk.
+     */
+    public boolean hasData() {
+        return dictionaryFile.exists() || findIndexFile(false) != null;
+    }
+
+    /**
+     * Check whether a plugin data directory holds mapped data, without creating the backend.
+     */
+    public static boolean hasData(Path dataDirectory) {
+        if (new File(dataDirectory.toFile(), DICTIONARY_FILE).exists()) {
+            return true;
+        }
+        File[] indexFiles = dataDirectory.toFile().listFiles((dir, name) -> INDEX_FILE_PATTERN.matcher(name).matches());
+        return indexFiles != null && Arrays.stream(indexFiles).anyMatch(MappedStorageBackend::isCompleteIndex);
+    }
+
+    /**
+     * Get the index and dictionary files holding this backend's data.
+     */
+    public List<File> getDataFiles() {
+        List<File> files = new ArrayList<>();
+        File indexFile = findIndexFile(false);
+        if (indexFile != null) {
+            files.add(indexFile);
+        }
+        files.add(dictionaryFile);
+        return files;
+    }
+
+    // --- Hash table ---
+
+    /**
+     * Insert or update a slot. Must hold the write lock.
+     */
+    private void put(long msb, long lsb, int value, long timestamp) throws IOException {
+        if (entries + 1 > mapping.capacity * MAX_LOAD) {
+            grow();
+        }
+
+        Mapping current = mapping;
+        MappedByteBuffer buffer = current.buffer;
+        int mask = current.capacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        while (true) {
+            int offset = slotOffset(slot);
+            if (buffer.getInt(offset + SLOT_SERVER) == 0) {
+                buffer.putLong(offset + SLOT_MSB, msb);
+                buffer.putLong(offset + SLOT_LSB, lsb);
+                buffer.putLong(offset + SLOT_TIMESTAMP, timestamp);
+                // Written last, so a slot never looks occupied with a half-written key
+                buffer.putInt(offset + SLOT_SERVER, value);
+                entries++;
+                return;
+            }
+            if (buffer.getLong(offset + SLOT_MSB) == msb && buffer.getLong(offset + SLOT_LSB) == lsb) {
+                buffer.putLong(offset + SLOT_TIMESTAMP, timestamp);
+                buffer.putInt(offset + SLOT_SERVER, value);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int find(Mapping current, long msb, long lsb) {
+        if (current == null) {
+            return 0;
+        }
+        MappedByteBuffer buffer = current.buffer;
+        int mask = current.capacity - 1;
+        int slot = hash(msb, lsb) & mask;
+        for (int probes = 0; probes <= mask; probes++) {
+            int offset = slotOffset(slot);
+            int value = buffer.getInt(offset + SLOT_SERVER);
+            if (value == 0) {
+                return 0;
+            }
+            if (buffer.getLong(offset + SLOT_MSB) == msb && buffer.getLong(offset + SLOT_LSB) == lsb) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * Rehash into a new file of twice the capacity. Must hold the write lock.
+     */
+    private void grow() throws IOException {
+        Mapping old = mapping;
+        if (old.capacity >= MAX_CAPACITY) {
+            throw new IOException("Mapped player data is full (" + entries + " players)");
+        }
+
+        long start = System.currentTimeMillis();
+        Mapping grown = createIndex(old.capacity * 2);
+        MappedByteBuffer source = old.buffer;
+        MappedByteBuffer target = grown.buffer;
+        int mask = grown.capacity - 1;
+        for (int slot = 0; slot < old.capacity; slot++) {
+            int offset = slotOffset(slot);
+            int value = source.getInt(offset + SLOT_SERVER);
+            if (value == 0) {
+                continue;
+            }
+            long msb = source.getLong(offset + SLOT_MSB);
+            long lsb = source.getLong(offset + SLOT_LSB);
+            int targetSlot = hash(msb, lsb) & mask;
+            while (target.getInt(slotOffset(targetSlot) + SLOT_SERVER) != 0) {
+                targetSlot = (targetSlot + 1) & mask;
+            }
+            int targetOffset = slotOffset(targetSlot);
+            target.putLong(targetOffset + SLOT_MSB, msb);
+            target.putLong(targetOffset + SLOT_LSB, lsb);
+            target.putLong(targetOffset + SLOT_TIMESTAMP, source.getLong(offset + SLOT_TIMESTAMP));
+            target.putInt(targetOffset + SLOT_SERVER, value);
+        }
+
+        // The header marks the new file as complete, so it must reach the disk after the slots
+        target.force();
+        writeHeader(grown, entries);
+        target.force();
+
+        mapping = grown;
+        old.channel.close();
+        if (!old.file.delete()) {
+            logger.debug("Could not delete old index file " + old.file.getName() + " yet. It will be removed on next start.");
+        }
+        resizes.incrementAndGet();
+        logger.info("Grew mapped player data to " + grown.capacity + " slots in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    /**
+     * Empty a slot with backward-shift deletion, so probe chains stay intact without tombstones.
+     * Must hold the write lock.
+     */
+    private static void deleteSlot(Mapping current, int slot) {
+        MappedByteBuffer buffer = current.buffer;
+        int mask = current.capacity - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (buffer.getInt(slotOffset(next) + SLOT_SERVER) != 0) {
+            int nextOffset = slotOffset(next);
+            int home = hash(buffer.getLong(nextOffset + SLOT_MSB), buffer.getLong(nextOffset + SLOT_LSB)) & mask;
+            // Move the entry back if the hole lies between its home slot and its current slot
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                int holeOffset = slotOffset(hole);
+                buffer.putLong(holeOffset + SLOT_MSB, buffer.getLong(nextOffset + SLOT_MSB));
+                buffer.putLong(holeOffset + SLOT_LSB, buffer.getLong(nextOffset + SLOT_LSB));
+                buffer.putLong(holeOffset + SLOT_TIMESTAMP, buffer.getLong(nextOffset + SLOT_TIMESTAMP));
+                buffer.putInt(holeOffset + SLOT_SERVER, buffer.getInt(nextOffset + SLOT_SERVER));
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        buffer.putInt(slotOffset(hole) + SLOT_SERVER, 0);
+    }
+
+    private static int countEntries(Mapping current) {
+        int count = 0;
+        for (int slot = 0; slot < current.capacity; slot++) {
+            if (current.buffer.getInt(slotOffset(slot) + SLOT_SERVER) != 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * Mix both halves of the UUID. Part of the file format, so it must never change.
+     */
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h;
+    }
+
+    // --- Files ---
+
+    /**
+     * Find the largest complete index file.
+     * @param deleteOthers Whether to delete leftovers of interrupted or finished resizes
+     */
+    private File findIndexFile(boolean deleteOthers) {
+        File[] files = dataDirectory.toFile().listFiles();
+        if (files == null) {
+            return null;
+        }
+
+        TreeMap<Integer, File> candidates = new TreeMap<>();
+        for (File file : files) {
+            Matcher matcher = INDEX_FILE_PATTERN.matcher(file.getName());
+            if (matcher.matches()) {
+                try {
+                    candidates.put(Integer.parseInt(matcher.group(1)), file);
+                } catch (NumberFormatException ignored) {
+                    // Not one of ours
+                }
+            }
+        }
+
+        File chosen = null;
+        for (File file : candidates.descendingMap().values()) {
+            if (chosen == null && isCompleteIndex(file)) {
+                chosen = file;
+            } else if (deleteOthers && !file.delete()) {
+                logger.warn("Could not delete stale index file " + file.getName());
+            }
+        }
+        return chosen;
+    }
+
+    private static boolean isCompleteIndex(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt(HEADER_MAGIC) != INDEX_MAGIC || header.getInt(HEADER_VERSION) != FORMAT_VERSION) {
+                return false;
+            }
+            int capacity = header.getInt(HEADER_CAPACITY);
+            return Integer.bitCount(capacity) == 1 && channel.size() == HEADER_SIZE + (long) capacity * SLOT_SIZE;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private Mapping createIndex(int capacity) throws IOException {
+        File file = new File(dataDirectory.toFile(), "player_data." + capacity + ".idx");
+        Files.deleteIfExists(file.toPath());
+        return map(file, capacity);
+    }
+
+    private Mapping openIndex(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            return map(file, header.getInt(HEADER_CAPACITY));
+        }
+    }
+
+    private static Mapping map(File file, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+            return new Mapping(file, channel, buffer, capacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void writeHeader(Mapping target, int entryCount) {
+        MappedByteBuffer buffer = target.buffer;
+        buffer.putInt(HEADER_VERSION, FORMAT_VERSION);
+        buffer.putInt(HEADER_CAPACITY, target.capacity);
+        buffer.putInt(HEADER_ENTRIES, entryCount);
+        buffer.putInt(HEADER_CLEAN, 0);
+        buffer.putInt(HEADER_MAGIC, INDEX_MAGIC);
+    }
+
+    /**
+     * Load the server dictionary, assigning ids in file order, and drop a torn trailing record.
+     */
+    private void loadDictionary() throws IOException {
+        persistedServers = 0;
+        dictionary = FileChannel.open(dictionaryFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (dictionary.size() < 8) {
+            ByteBuffer header = ByteBuffer.allocate(8);
+            header.putInt(DICTIONARY_MAGIC).putInt(FORMAT_VERSION).flip();
+            dictionary.truncate(0);
+            dictionary.write(header, 0);
+            dictionary.force(true);
+            dictionary.position(8);
+            return;
+        }
+
+        ByteBuffer contents = ByteBuffer.allocate((int) dictionary.size());
+        while (contents.hasRemaining() && dictionary.read(contents, contents.position()) >= 0) {
+            // Keep reading until the whole dictionary is in memory
+        }
+        contents.flip();
+        if (contents.getInt() != DICTIONARY_MAGIC || contents.getInt() != FORMAT_VERSION) {
+            throw new IOException(dictionaryFile.getName() + " is not a SmartRejoin server dictionary");
+        }
+
+        while (contents.remaining() >= 2) {
+            int length = contents.getShort() & 0xFFFF;
+            if (contents.remaining() < length) {
+                contents.position(contents.position() - 2);
+                break;
+            }
+            byte[] name = new byte[length];
+            contents.get(name);
+            serverNames.idOf(new String(name, StandardCharsets.UTF_8));
+            persistedServers++;
+        }
+
+        if (contents.position() < dictionary.size()) {
+            logger.warn("Discarding " + (dictionary.size() - contents.position()) + " bytes of incomplete server dictionary data.");
+            dictionary.truncate(contents.position());
+        }
+        dictionary.position(contents.position());
+    }
+
+    /**
+     * Get the id of a server, persisting it first if it is new. Must hold the write lock.
+     */
+    private int serverIdFor(String serverName) throws IOException {
+        int id = serverNames.idOf(serverName);
+        if (id < persistedServers) {
+            return id;
+        }
+
+        // Also catch up on names whose earlier write failed, so file order always matches the ids
+        while (persistedServers <= id) {
+            byte[] name = serverNames.nameOf(persistedServers).getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(2 + name.length);
+            record.putShort((short) name.length).put(name).flip();
+            while (record.hasRemaining()) {
+                dictionary.write(record);
+            }
+            persistedServers++;
+        }
+        // New servers are rare; make sure no slot can reference an id that is not on disk
+        dictionary.force(false);
+        return id;
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            throw new IllegalStateException("Storage backend has not been initialized");
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of player last-server entries.
+ * <p>
+ * The cache is split into independently locked segments so concurrent logins rarely contend.
+ * Each segment evicts its own least recently used entry, which keeps the overall
+ * behaviour close to a global LRU without a single lock.
+ * <p>
+ * Entries can optionally expire after a fixed time, for use in front of storage that
+ * other proxies write to as well.
+ */
+public class PlayerDataCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    // Counters
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+
+    private record CachedEntry(String serverName, long expiresAt) {
+    }
+
+    /**
+     * A single access-ordered segment of the cache.
+     */
+    private final class Segment extends LinkedHashMap<UUID, CachedEntry> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, CachedEntry> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param maxEntries Maximum number of entries kept across all segments
+     */
+    public PlayerDataCache(int maxEntries) {
+        this(maxEntries, 0);
+    }
+
+    /**
+     * @param maxEntries Maximum number of entries kept across all segments
+     * @param ttlMillis Time after which an entry expires, or 0 to keep entries until evicted
+     */
+    public PlayerDataCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(SEGMENT_COUNT, maxEntries);
+        this.ttlMillis = Math.max(0, ttlMillis);
+        int perSegment = (this.maxEntries + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    /**
+     * Look up a cached entry, counting the hit or miss.
+     * @return The cached server name, or null if not cached
+     */
+    public String get(UUID playerUuid) {
+        Segment segment = segmentFor(playerUuid);
+        String value = null;
+        synchronized (segment) {
+            CachedEntry entry = segment.get(playerUuid);
+            if (entry != null) {
+                if (ttlMillis > 0 && System.currentTimeMillis() >= entry.expiresAt()) {
+                    segment.remove(playerUuid);
+                    expirations.increment();
+                } else {
+                    value = entry.serverName();
+                }
+            }
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Store an entry, replacing any cached value. Used for write-through.
+     */
+    public void put(UUID playerUuid, String serverName) {
+        Segment segment = segmentFor(playerUuid);
+        synchronized (segment) {
+            segment.put(playerUuid, newEntry(serverName));
+        }
+    }
+
+    /**
+     * Store an entry only if none is cached. Used when filling from storage, so a value
+     * read before a concurrent write can never overwrite the newer written value.
+     */
+    public void putIfAbsent(UUID playerUuid, String serverName) {
+        Segment segment = segmentFor(playerUuid);
+        synchronized (segment) {
+            segment.putIfAbsent(playerUuid, newEntry(serverName));
+        }
+    }
+
+    /**
+     * Drop a cached entry.
+     */
+    public void invalidate(UUID playerUuid) {
+        Segment segment = segmentFor(playerUuid);
+        synchronized (segment) {
+            segment.remove(playerUuid);
+        }
+    }
+
+    /**
+     * Get the number of cached entries.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Get cache statistics for reporting.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long total = hitCount + missCount;
+        stats.put("size", size());
+        stats.put("max_entries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hit_rate", total == 0 ? "n/a" : String.format("%.1f%%", hitCount * 100.0 / total));
+        stats.put("evictions", evictions.sum());
+        if (ttlMillis > 0) {
+            stats.put("ttl_ms", ttlMillis);
+            stats.put("expirations", expirations.sum());
+        }
+        return stats;
+    }
+
+    private CachedEntry newEntry(String serverName) {
+        return new CachedEntry(serverName, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE);
+    }
+
+    private Segment segmentFor(UUID playerUuid) {
+        int hash = playerUuid.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENT_COUNT - 1)];
+    }
+}
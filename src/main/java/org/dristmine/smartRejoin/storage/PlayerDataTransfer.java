@@ -0,0 +1,223 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Streams every player of a backend into a compact binary file and back, to move player data
+ * between proxies or environments whatever backend each side uses.
+ * <p>
+ * Neither direction holds more than one batch of players: exports read through a
+ * {@link StorageCursor}, and imports hand the players over in batches as they are read.
+ * <p>
+ * File layout, big-endian:
+ * <pre>
+ * header:  int magic "SRJX", int version, long export time (epoch ms), UTF source backend name
+ * entry:   varint server id, then the UUID as two longs. Server ids count up from 1 in order of
+ *          first use; the entry that uses an id for the first time has the server name as UTF
+ *          right after the id
+ * end:     varint 0, long number of players, long CRC32 of every byte before the count
+ * </pre>
+ * A player takes 17 bytes with up to 127 servers.
+ */
+public final class PlayerDataTransfer {
+
+    public static final String FILE_EXTENSION = ".srx";
+    private static final int FILE_MAGIC = 0x534A5258; // "SRJX"
+    private static final int FILE_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int PROGRESS_INTERVAL = 250_000;
+
+    /**
+     * @param players Number of players exported or imported
+     * @param durationMillis Time taken
+     * @param bytes Size of the file
+     */
+    public record Result(long players, long durationMillis, long bytes) {
+
+        /**
+         * Get the average number of players per second.
+         */
+        public long playersPerSecond() {
+            return durationMillis > 0 ? players * 1000 / durationMillis : players;
+        }
+    }
+
+    private PlayerDataTransfer() {
+    }
+
+    /**
+     * Write every player of a backend to a file. The file only appears once it is complete.
+     * @param callback Receives progress every {@value #PROGRESS_INTERVAL} players
+     */
+    public static Result export(StorageBackend backend, File file, StorageBackend.MigrationCallback callback) throws Exception {
+        long start = System.currentTimeMillis();
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        long players = 0;
+
+        try (StorageCursor cursor = backend.openCursor()) {
+            CRC32 crc = new CRC32();
+            try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE))) {
+                DataOutputStream checked = new DataOutputStream(new CheckedOutputStream(out, crc));
+                checked.writeInt(FILE_MAGIC);
+                checked.writeInt(FILE_VERSION);
+                checked.writeLong(System.currentTimeMillis());
+                checked.writeUTF(backend.getBackendName());
+
+                Map<String, Integer> serverIds = new HashMap<>();
+                while (cursor.next()) {
+                    String serverName = cursor.serverName();
+                    Integer id = serverIds.get(serverName);
+                    if (id == null) {
+                        id = serverIds.size() + 1;
+                        serverIds.put(serverName, id);
+                        writeVarInt(checked, id);
+                        checked.writeUTF(serverName);
+                    } else {
+                        writeVarInt(checked, id);
+                    }
+                    UUID playerUuid = cursor.playerUuid();
+                    checked.writeLong(playerUuid.getMostSignificantBits());
+                    checked.writeLong(playerUuid.getLeastSignificantBits());
+
+                    if (++players % PROGRESS_INTERVAL == 0) {
+                        callback.onProgress((int) players, 0, "Exported " + players + " players (" + rate(players, start) + " players/s)...");
+                    }
+                }
+                writeVarInt(checked, 0);
+                checked.flush();
+                out.writeLong(players);
+                out.writeLong(crc.getValue());
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+
+        Result result = new Result(players, System.currentTimeMillis() - start, file.length());
+        callback.onProgress((int) players, (int) players, "Exported " + players + " players in " + result.durationMillis()
+                + "ms (" + result.playersPerSecond() + " players/s, " + result.bytes() / 1024 + " KB).");
+        return result;
+    }
+
+    /**
+     * Read a file written by {@link #export} and hand its players to a writer in batches.
+     * The checksum is only known at the end, so a damaged file is reported after most of its
+     * players have already been written.
+     * @param batchWriter Receives each batch; returns once the batch has been handed to storage
+     * @param batchSize Maximum number of players per batch
+     * @param callback Receives progress every {@value #PROGRESS_INTERVAL} players
+     * @throws IOException if the file is not an export or is damaged
+     */
+    public static Result importFrom(File file, Consumer<Map<UUID, String>> batchWriter, int batchSize,
+                                    StorageBackend.MigrationCallback callback) throws IOException {
+        long start = System.currentTimeMillis();
+        long players = 0;
+        CRC32 crc = new CRC32();
+
+        try (InputStream fileIn = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            DataInputStream in = new DataInputStream(fileIn);
+            DataInputStream checked = new DataInputStream(new CheckedInputStream(fileIn, crc));
+            if (checked.readInt() != FILE_MAGIC) {
+                throw new IOException(file.getName() + " is not a SmartRejoin player export");
+            }
+            int version = checked.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException(file.getName() + " has unsupported export version " + version);
+            }
+            checked.readLong();
+            String source = checked.readUTF();
+            callback.onProgress(0, 0, "Importing players exported from " + source + "...");
+
+            List<String> servers = new ArrayList<>();
+            Map<UUID, String> batch = new HashMap<>(Math.max(16, batchSize * 2));
+            while (true) {
+                int id = readVarInt(checked);
+                if (id == 0) {
+                    break;
+                }
+                if (id == servers.size() + 1) {
+                    servers.add(checked.readUTF());
+                } else if (id > servers.size()) {
+                    throw new IOException(file.getName() + " is damaged: unknown server id " + id + " after " + players + " players");
+                }
+                batch.put(new UUID(checked.readLong(), checked.readLong()), servers.get(id - 1));
+
+                if (batch.size() >= batchSize) {
+                    batchWriter.accept(batch);
+                    batch = new HashMap<>(Math.max(16, batchSize * 2));
+                }
+                if (++players % PROGRESS_INTERVAL == 0) {
+                    callback.onProgress((int) players, 0, "Imported " + players + " players (" + rate(players, start) + " players/s)...");
+                }
+            }
+            if (!batch.isEmpty()) {
+                batchWriter.accept(batch);
+            }
+
+            long expectedCrc = crc.getValue();
+            long count = in.readLong();
+            if (count != players || in.readLong() != expectedCrc) {
+                throw new IOException(file.getName() + " is damaged: its checksum does not match after " + players + " players.");
+            }
+        } catch (EOFException e) {
+            throw new IOException(file.getName() + " is incomplete after " + players + " players.", e);
+        }
+
+        Result result = new Result(players, System.currentTimeMillis() - start, file.length());
+        callback.onProgress((int) players, (int) players, "Imported " + players + " players in " + result.durationMillis()
+                + "ms (" + result.playersPerSecond() + " players/s).");
+        return result;
+    }
+
+    private static long rate(long players, long start) {
+        long elapsed = System.currentTimeMillis() - start;
+        return elapsed > 0 ? players * 1000 / elapsed : players;
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed server id");
+    }
+}
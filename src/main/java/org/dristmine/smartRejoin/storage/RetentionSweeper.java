@@ -0,0 +1,116 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Deletes players that have not been seen for longer than the retention period.
+ * <p>
+ * Each sweep deletes in small batches with a pause in between, so live writes are never
+ * blocked for long, and stops once its time budget is used up; the next sweep continues.
+ * Afterwards the backend is asked to give the freed space back to the file system.
+ */
+public class RetentionSweeper {
+
+    private final Logger logger;
+    private final Supplier<StorageBackend> backendSupplier;
+    private final Consumer<UUID> onPruned;
+    private final long retentionMillis;
+    private final int batchSize;
+    private final long batchDelayMillis;
+    private final long maxSweepMillis;
+
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    // Counters
+    private final AtomicLong sweeps = new AtomicLong();
+    private final AtomicLong prunedTotal = new AtomicLong();
+    private final AtomicLong reclaimedBytesTotal = new AtomicLong();
+    private volatile int lastSweepPruned = 0;
+    private volatile long lastSweepMillis = 0;
+
+    /**
+     * @param backendSupplier Supplies the backend to sweep, so a swapped backend is picked up
+     * @param onPruned Receives each deleted player, to drop it from caches
+     * @param retentionDays Players not updated for this many days are deleted
+     * @param batchSize Maximum number of players deleted per batch
+     * @param batchDelayMillis Pause between batches
+     * @param maxSweepMillis Time budget of a single sweep
+     */
+    public RetentionSweeper(Logger logger, Supplier<StorageBackend> backendSupplier, Consumer<UUID> onPruned,
+                            int retentionDays, int batchSize, long batchDelayMillis, long maxSweepMillis) {
+        this.logger = logger;
+        this.backendSupplier = backendSupplier;
+        this.onPruned = onPruned;
+        this.retentionMillis = TimeUnit.DAYS.toMillis(Math.max(1, retentionDays));
+        this.batchSize = Math.max(1, batchSize);
+        this.batchDelayMillis = Math.max(0, batchDelayMillis);
+        this.maxSweepMillis = Math.max(100, maxSweepMillis);
+    }
+
+    /**
+     * Run one sweep. Does nothing if a sweep is already running or the backend has no update times.
+     */
+    public void sweep() {
+        StorageBackend backend = backendSupplier.get();
+        if (backend == null || !backend.supportsRetention() || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long cutoff = start - retentionMillis;
+        int pruned = 0;
+        try {
+            while (System.currentTimeMillis() - start < maxSweepMillis) {
+                int deleted = backend.pruneOlderThan(cutoff, batchSize, onPruned);
+                pruned += deleted;
+                if (deleted < batchSize) {
+                    break;
+                }
+                Thread.sleep(batchDelayMillis);
+            }
+
+            long remaining = maxSweepMillis - (System.currentTimeMillis() - start);
+            long reclaimed = backend.reclaimSpace(Math.max(100, remaining));
+
+            long elapsed = System.currentTimeMillis() - start;
+            sweeps.incrementAndGet();
+            prunedTotal.addAndGet(pruned);
+            reclaimedBytesTotal.addAndGet(reclaimed);
+            lastSweepPruned = pruned;
+            lastSweepMillis = elapsed;
+
+            if (pruned > 0 || reclaimed > 0) {
+                logger.info("Retention pruned " + pruned + " stale players and reclaimed " + reclaimed / 1024 + " KB in " + elapsed + "ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.warn("Retention sweep failed after pruning " + pruned + " players: " + e.getMessage());
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * Get retention statistics for reporting.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("retention_days", TimeUnit.MILLISECONDS.toDays(retentionMillis));
+        stats.put("sweeps", sweeps.get());
+        stats.put("pruned_total", prunedTotal.get());
+        stats.put("reclaimed_kb_total", reclaimedBytesTotal.get() / 1024);
+        stats.put("last_sweep_pruned", lastSweepPruned);
+        stats.put("last_sweep_ms", lastSweepMillis);
+        return stats;
+    }
+}
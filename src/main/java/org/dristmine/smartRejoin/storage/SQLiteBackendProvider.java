@@ -0,0 +1,59 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.util.Map;
+
+/**
+ * Provides the built-in 'sqlite' storage type: one database file, or several with storage.sqlite.shards.
+ * <p>
+ * The SQLite driver is not part of the plugin jar. It is loaded from the backends/ folder when a
+ * database is first opened, so setups with other storage never load it.
+ * <p>
+ * Reads the storage.sqlite options, plus {@value #OPTION_CONVERT_TO_INCREMENTAL_VACUUM}, which the
+ * storage manager sets when retention is enabled.
+ */
+public final class SQLiteBackendProvider implements StorageBackendProvider {
+
+    public static final String TYPE = "sqlite";
+    public static final String DRIVER_CLASS = "org.sqlite.JDBC";
+    public static final String OPTION_CONVERT_TO_INCREMENTAL_VACUUM = "convert_to_incremental_vacuum";
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    /**
+     * @return A {@link ShardedSQLiteStorageBackend} with more than one shard, otherwise a {@link SQLiteStorageBackend}
+     */
+    @Override
+    public StorageBackend create(Context context) {
+        Map<String, Object> options = context.options();
+        int shards = intOption(options, "shards", 1);
+        int batchSize = intOption(options, "batch_size", 500);
+        int maxBatchDelay = intOption(options, "max_batch_delay", 50);
+        int queueCapacity = intOption(options, "queue_capacity", 10000);
+        SQLiteProfile profile = SQLiteProfile.fromName(String.valueOf(options.getOrDefault("profile", "balanced")));
+        if (profile == null) {
+            profile = SQLiteProfile.BALANCED;
+        }
+        boolean convertToIncrementalVacuum = Boolean.TRUE.equals(options.get(OPTION_CONVERT_TO_INCREMENTAL_VACUUM));
+
+        if (shards > 1) {
+            return new ShardedSQLiteStorageBackend(context.logger(), context.dataDirectory(), shards,
+                    batchSize, maxBatchDelay, queueCapacity, profile, convertToIncrementalVacuum);
+        }
+        return new SQLiteStorageBackend(context.logger(), context.dataDirectory(),
+                batchSize, maxBatchDelay, queueCapacity, profile, convertToIncrementalVacuum);
+    }
+
+    /**
+     * Check whether the SQLite driver is installed, in the plugin jar or in backends/.
+     */
+    public static boolean isDriverAvailable() {
+        return JdbcDrivers.isAvailable(DRIVER_CLASS);
+    }
+
+    private static int intOption(Map<String, Object> options, String key, int def) {
+        return options.get(key) instanceof Number number ? number.intValue() : def;
+    }
+}
@@ -0,0 +1,77 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * Connection settings for {@link SQLiteStorageBackend}, trading durability and memory for speed.
+ * <p>
+ * The database always runs in WAL mode, where a commit appends to the -wal file and the file is
+ * copied into the database at each checkpoint. The profiles differ in when that is synced to disk:
+ * <ul>
+ *     <li>{@link #DURABLE}: SQLite's defaults. Every commit is synced, so a batch survives a power
+ *     loss the moment it is committed, at the cost of one fsync per batch.</li>
+ *     <li>{@link #BALANCED}: commits are only synced at checkpoints. A proxy crash loses nothing;
+ *     a power loss or OS crash can lose the last commits, but never corrupts the database.</li>
+ *     <li>{@link #THROUGHPUT}: nothing is synced and checkpoints are rare. Same crash behaviour as
+ *     {@link #BALANCED} for the proxy, but a power loss can lose more and may damage the database.
+ *     Meant for imports and machines with a battery-backed disk cache.</li>
+ * </ul>
+ * All settings apply per connection and are not stored in the database, so the profile can be
+ * changed at any time.
+ */
+public enum SQLiteProfile {
+
+    DURABLE("FULL", 2 * 1024, 0, "DEFAULT", 1000),
+    BALANCED("NORMAL", 16 * 1024, 64L * 1024 * 1024, "MEMORY", 1000),
+    THROUGHPUT("OFF", 64 * 1024, 256L * 1024 * 1024, "MEMORY", 10000);
+
+    private final String synchronous;
+    private final int cacheSizeKib;
+    private final long mmapSizeBytes;
+    private final String tempStore;
+    private final int walAutocheckpointPages;
+
+    SQLiteProfile(String synchronous, int cacheSizeKib, long mmapSizeBytes, String tempStore, int walAutocheckpointPages) {
+        this.synchronous = synchronous;
+        this.cacheSizeKib = cacheSizeKib;
+        this.mmapSizeBytes = mmapSizeBytes;
+        this.tempStore = tempStore;
+        this.walAutocheckpointPages = walAutocheckpointPages;
+    }
+
+    /**
+     * Pick a profile by its name in config.yml, ignoring case.
+     * @return The profile, or null if there is none with that name
+     */
+    public static SQLiteProfile fromName(String name) {
+        if (name == null) {
+            return null;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Apply the settings to a freshly opened connection.
+     */
+    void apply(Statement stmt) throws SQLException {
+        stmt.execute("PRAGMA synchronous = " + synchronous);
+        // A negative cache size is in KiB instead of pages
+        stmt.execute("PRAGMA cache_size = -" + cacheSizeKib);
+        stmt.execute("PRAGMA mmap_size = " + mmapSizeBytes);
+        stmt.execute("PRAGMA temp_store = " + tempStore);
+        stmt.execute("PRAGMA wal_autocheckpoint = " + walAutocheckpointPages);
+    }
+
+    /**
+     * Get the name used in config.yml.
+     */
+    public String configName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
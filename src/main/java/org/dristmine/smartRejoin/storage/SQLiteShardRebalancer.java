@@ -0,0 +1,204 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Changes the number of shards of {@link ShardedSQLiteStorageBackend} while the proxy is offline.
+ * <p>
+ * Every player is copied into a complete new set of shards next to the old ones, and the shard
+ * directory is only replaced once the copy has finished. A rebalance that is interrupted leaves the
+ * old shards untouched and is discarded by {@link #recover()}.
+ * <p>
+ * SmartRejoin rebalances on startup when storage.sqlite.shards has changed. To rebalance by hand,
+ * stop the proxy and run, with the Velocity jar on the class path for logging:
+ * <pre>
+ * java -cp SmartRejoin.jar:velocity.jar org.dristmine.smartRejoin.storage.SQLiteShardRebalancer plugins/smartrejoin 16
+ * </pre>
+ * The SQLite driver is loaded from the backends/ folder of the data directory, as it is by the plugin.
+ */
+public final class SQLiteShardRebalancer {
+
+    private static final String BUILD_SUFFIX = ".rebalancing";
+    private static final String OLD_SUFFIX = ".old";
+
+    private final Logger logger;
+    private final File shardDirectory;
+    private final File buildDirectory;
+    private final File oldDirectory;
+    private final int batchSize;
+    private final long maxBatchDelayMillis;
+    private final int queueCapacity;
+    private final SQLiteProfile profile;
+
+    /**
+     * @param dataDirectory Plugin data directory holding the shard directory
+     * @param profile Pragmas for the connections to the old and new shards
+     */
+    public SQLiteShardRebalancer(Logger logger, Path dataDirectory, int batchSize, long maxBatchDelayMillis, int queueCapacity,
+                                 SQLiteProfile profile) {
+        this.logger = logger;
+        this.shardDirectory = dataDirectory.resolve(ShardedSQLiteStorageBackend.SHARD_DIRECTORY).toFile();
+        this.buildDirectory = new File(shardDirectory.getPath() + BUILD_SUFFIX);
+        this.oldDirectory = new File(shardDirectory.getPath() + OLD_SUFFIX);
+        this.batchSize = batchSize;
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+        this.queueCapacity = queueCapacity;
+        this.profile = profile;
+    }
+
+    /**
+     * Check whether a plugin data directory holds shards, or the leftovers of an interrupted rebalance.
+     * Works without creating any SQLite backend.
+     */
+    public static boolean hasShards(Path dataDirectory) {
+        File shardDirectory = dataDirectory.resolve(ShardedSQLiteStorageBackend.SHARD_DIRECTORY).toFile();
+        return shardDirectory.exists()
+                || new File(shardDirectory.getPath() + BUILD_SUFFIX).exists()
+                || new File(shardDirectory.getPath() + OLD_SUFFIX).exists();
+    }
+
+    /**
+     * Finish or discard a rebalance that was interrupted, so exactly one complete shard directory is left.
+     */
+    public void recover() throws IOException {
+        if (!shardDirectory.exists() && oldDirectory.exists()) {
+            if (buildDirectory.exists()) {
+                // Stopped between the two renames; the new shards are complete
+                move(buildDirectory, shardDirectory);
+                logger.info("Finished an interrupted SQLite shard rebalance.");
+            } else {
+                move(oldDirectory, shardDirectory);
+            }
+        }
+        if (oldDirectory.exists()) {
+            deleteRecursively(oldDirectory.toPath());
+        }
+        if (buildDirectory.exists()) {
+            logger.warn("Discarding an unfinished SQLite shard rebalance. The existing shards are unchanged.");
+            deleteRecursively(buildDirectory.toPath());
+        }
+    }
+
+    /**
+     * Delete the shard directory, for shards left incomplete by an interrupted migration.
+     */
+    public void discard() throws IOException {
+        if (shardDirectory.exists()) {
+            logger.warn("Discarding SQLite shards left by an interrupted migration. The migration starts over.");
+            deleteRecursively(shardDirectory.toPath());
+        }
+    }
+
+    /**
+     * Get the shard count of the existing shards.
+     * @return The shard count, or 0 if there are no shards
+     */
+    public int getCurrentShardCount() throws IOException {
+        return ShardedSQLiteStorageBackend.findShardCount(shardDirectory);
+    }
+
+    /**
+     * Move every player into a new set of shards.
+     * @param newShardCount Number of shards to end up with, at least 2
+     * @return The number of players moved
+     */
+    public int rebalance(int newShardCount, StorageBackend.MigrationCallback callback) throws Exception {
+        if (newShardCount < 2) {
+            throw new IllegalArgumentException("Rebalance to at least 2 shards. To go back to a single database file, "
+                    + "set storage.sqlite.shards to 1 and restart the proxy.");
+        }
+        recover();
+
+        int currentShardCount = getCurrentShardCount();
+        if (currentShardCount == 0) {
+            throw new IOException("No SQLite shards found in " + shardDirectory.getAbsolutePath());
+        }
+        if (currentShardCount == newShardCount) {
+            return 0;
+        }
+
+        ShardedSQLiteStorageBackend source = new ShardedSQLiteStorageBackend(logger, shardDirectory, currentShardCount,
+                batchSize, maxBatchDelayMillis, queueCapacity, profile, false);
+        if (source.hasIncompleteMigration()) {
+            throw new IllegalStateException("A migration into the SQLite shards did not finish. Start the proxy once to complete it before rebalancing.");
+        }
+        ShardedSQLiteStorageBackend target = new ShardedSQLiteStorageBackend(logger, buildDirectory, newShardCount,
+                batchSize, maxBatchDelayMillis, queueCapacity, profile, false);
+
+        logger.info("Rebalancing SQLite storage from " + currentShardCount + " to " + newShardCount + " shards...");
+        int moved;
+        source.initialize();
+        try {
+            target.initialize();
+            try {
+                moved = target.migrateFrom(source, callback);
+            } finally {
+                target.shutdown();
+            }
+        } finally {
+            source.shutdown();
+        }
+
+        move(shardDirectory, oldDirectory);
+        move(buildDirectory, shardDirectory);
+        deleteRecursively(oldDirectory.toPath());
+        logger.info("Rebalanced " + moved + " players from " + currentShardCount + " to " + newShardCount + " shards.");
+        return moved;
+    }
+
+    private static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath());
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Rebalance from the command line: {@code <data directory> <shard count>}.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: SQLiteShardRebalancer <plugin data directory> <shard count>");
+            System.err.println("The sqlite-jdbc jar must be in the " + StorageBackendProviders.BACKENDS_DIRECTORY + "/ folder of the data directory.");
+            System.exit(2);
+        }
+        Logger logger = LoggerFactory.getLogger(SQLiteShardRebalancer.class);
+        Path dataDirectory = Paths.get(args[0]);
+        // Makes the driver jars of backends/ available, like on plugin startup
+        StorageBackendProviders providers = new StorageBackendProviders(logger, dataDirectory,
+                SQLiteShardRebalancer.class.getClassLoader(), Set.of(SQLiteBackendProvider.TYPE));
+        try {
+            if (!SQLiteBackendProvider.isDriverAvailable()) {
+                System.err.println("SQLite driver not found. Place the sqlite-jdbc jar in "
+                        + dataDirectory.resolve(StorageBackendProviders.BACKENDS_DIRECTORY) + " and try again.");
+                System.exit(1);
+            }
+            SQLiteShardRebalancer rebalancer = new SQLiteShardRebalancer(logger, dataDirectory, 500, 50, 10000, SQLiteProfile.BALANCED);
+            int moved = rebalancer.rebalance(Integer.parseInt(args[1]), (current, total, message) -> System.out.println(message));
+            System.out.println("Done: " + moved + " players now in " + args[1] + " shards. Set storage.sqlite.shards to " + args[1] + " before starting the proxy.");
+        } finally {
+            providers.close();
+        }
+    }
+}
@@ -7,55 +7,292 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * SQLite-based storage backend for player data.
  * Provides better performance for large player counts compared to YAML.
+ * <p>
+ * Writes never touch the database on the calling thread. They are queued to a single
+ * {@link BatchWriter} that owns a separate connection and commits them in batched transactions,
+ * so a burst of connects and disconnects costs one fsync per batch instead of one per player.
+ * <p>
+ * Schema version 2 stores each player as a 16-byte UUID key in a WITHOUT ROWID table,
+ * with the server as an integer id into a small servers dictionary that is cached in memory,
+ * and the update time as epoch milliseconds. Databases created with the original text schema
+ * are migrated in place, in chunks, and the migration resumes where it stopped after a crash.
+ * Migrating from data.yml works the same way: the file is streamed in chunked, batched transactions.
+ * <p>
+ * New databases use incremental auto-vacuum, so space freed by pruning stale players is
+ * returned to the file system in small steps instead of by a full, blocking VACUUM. Older
+ * databases are only converted, by one full VACUUM at startup, when retention is enabled.
+ * <p>
+ * Both connections keep their prepared statements open for reuse, and are tuned with the
+ * pragmas of a {@link SQLiteProfile}.
  */
 public class SQLiteStorageBackend implements StorageBackend {
 
+    /** Schema stored with text UUIDs, repeated server names and TIMESTAMP values. */
+    private static final int SCHEMA_LEGACY = 0;
+    /** Legacy rows are being copied from player_data_v1 into the compact schema. */
+    private static final int SCHEMA_MIGRATING = 1;
+    /** Compact schema with binary UUIDs and a server dictionary. */
+    private static final int SCHEMA_COMPACT = 2;
+
+    private static final int SCHEMA_MIGRATION_CHUNK = 10000;
+    private static final int MIGRATION_CHUNK = 10000;
+    // Players per bulk lookup, below SQLite's default limit of 999 bound parameters
+    private static final int LOOKUP_CHUNK = 500;
+    private static final DateTimeFormatter LEGACY_TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public static final String DATABASE_FILE = "player_data.db";
+
+    private static final String SELECT_SQL = "SELECT server_id FROM player_data WHERE player_uuid = ?";
+    private static final String SERVER_NAME_SQL = "SELECT name FROM servers WHERE id = ?";
+    private static final String INSERT_SERVER_SQL = "INSERT OR IGNORE INTO servers (name) VALUES (?)";
+    private static final String SERVER_ID_SQL = "SELECT id FROM servers WHERE name = ?";
+    private static final String CURSOR_SQL = "SELECT player_uuid, server_id FROM player_data WHERE player_uuid > ? ORDER BY player_uuid LIMIT ?";
+    private static final int CURSOR_PAGE = 10000;
+    private static final String UPSERT_SQL = "INSERT OR REPLACE INTO player_data (player_uuid, server_id, last_updated) VALUES (?, ?, ?)";
+    private static final String PRUNE_SELECT_SQL = "SELECT player_uuid FROM player_data WHERE last_updated < ? ORDER BY last_updated LIMIT ?";
+    private static final String PRUNE_DELETE_SQL = "DELETE FROM player_data WHERE player_uuid = ?";
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+    private static final int VACUUM_STEP_PAGES = 256;
+
     private final Logger logger;
     private final Path dataDirectory;
     private final File databaseFile;
     private Connection connection;
+    private Connection writeConnection;
+    private StatementCache readStatements;
+    private StatementCache writeStatements;
+    private final SQLiteProfile profile;
+    private final BatchWriter writer;
+    private final boolean convertToIncrementalVacuum;
+    private final Object writeLock = new Object();
     private boolean initialized = false;
 
+    // In-memory copy of the servers dictionary
+    private final Map<String, Integer> serverIds = new ConcurrentHashMap<>();
+    private final Map<Integer, String> serverNames = new ConcurrentHashMap<>();
+    // Servers inserted by the current, not yet committed write transaction
+    private final List<String> uncommittedServers = new ArrayList<>();
+
     public SQLiteStorageBackend(Logger logger, Path dataDirectory) {
+        this(logger, dataDirectory, 500, 50, 10000);
+    }
+
+    /**
+     * @param batchSize Maximum number of writes committed in one transaction
+     * @param maxBatchDelayMillis Maximum time a write waits before its batch is committed
+     * @param queueCapacity Maximum number of queued writes before callers block
+     */
+    public SQLiteStorageBackend(Logger logger, Path dataDirectory, int batchSize, long maxBatchDelayMillis, int queueCapacity) {
+        this(logger, dataDirectory, batchSize, maxBatchDelayMillis, queueCapacity, SQLiteProfile.BALANCED);
+    }
+
+    /**
+     * @param profile Pragmas applied to every connection
+     */
+    public SQLiteStorageBackend(Logger logger, Path dataDirectory, int batchSize, long maxBatchDelayMillis, int queueCapacity, SQLiteProfile profile) {
+        this(logger, dataDirectory, batchSize, maxBatchDelayMillis, queueCapacity, profile, false);
+    }
+
+    /**
+     * @param convertToIncrementalVacuum Whether a database without incremental vacuum is converted at
+     *                                   startup. Takes one full VACUUM, so only worth it when pruning.
+     */
+    public SQLiteStorageBackend(Logger logger, Path dataDirectory, int batchSize, long maxBatchDelayMillis, int queueCapacity, SQLiteProfile profile,
+                                boolean convertToIncrementalVacuum) {
+        this(logger, new File(dataDirectory.toFile(), DATABASE_FILE), "SQLite", batchSize, maxBatchDelayMillis, queueCapacity, profile,
+                convertToIncrementalVacuum);
+    }
+
+    /**
+     * Backend for one database file of a {@link ShardedSQLiteStorageBackend}.
+     * @param writerName Name of the writer thread, so the writers of different shards can be told apart
+     */
+    SQLiteStorageBackend(Logger logger, File databaseFile, String writerName, int batchSize, long maxBatchDelayMillis, int queueCapacity,
+                         SQLiteProfile profile, boolean convertToIncrementalVacuum) {
         this.logger = logger;
-        this.dataDirectory = dataDirectory;
-        this.databaseFile = new File(dataDirectory.toFile(), "player_data.db");
+        this.dataDirectory = databaseFile.getParentFile().toPath();
+        this.databaseFile = databaseFile;
+        this.profile = profile;
+        this.convertToIncrementalVacuum = convertToIncrementalVacuum;
+        this.writer = new BatchWriter(logger, writerName, this::writeBatch, batchSize, maxBatchDelayMillis, queueCapacity);
     }
 
     @Override
     public void setLastServer(UUID playerUuid, String serverName) {
         ensureInitialized();
-        String sql = "INSERT OR REPLACE INTO player_data (player_uuid, last_server, last_updated) VALUES (?, ?, ?)";
+        writer.submit(playerUuid, serverName);
+    }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerUuid.toString());
-            stmt.setString(2, serverName);
-            stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
-            stmt.executeUpdate();
-        } catch (SQLException e) {
-            logger.error("Failed to set last server for player " + playerUuid, e);
+    /**
+     * Queue every player as one entry, so the writer commits them in a single transaction.
+     * Used by {@code /srr import} and the dual-write replay; {@link #migrateFrom} writes its own chunks.
+     */
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        ensureInitialized();
+        writer.submitAll(lastServers);
+    }
+
+    /**
+     * Commit one batch of writes in a single transaction. Runs on the writer thread.
+     */
+    private void writeBatch(Map<UUID, String> batch) throws SQLException {
+        writeBatch(batch, null);
+    }
+
+    /**
+     * Commit one batch of writes in a single transaction.
+     * @param updatedAt Update time by player; players without one, or with 0, are stamped with now
+     */
+    private void writeBatch(Map<UUID, String> batch, Map<UUID, Long> updatedAt) throws SQLException {
+        synchronized (writeLock) {
+            long now = System.currentTimeMillis();
+            PreparedStatement stmt = writeStatements.get(UPSERT_SQL);
+            try {
+                for (Map.Entry<UUID, String> entry : batch.entrySet()) {
+                    Long time = updatedAt != null ? updatedAt.get(entry.getKey()) : null;
+                    stmt.setBytes(1, UuidCodec.toBytes(entry.getKey()));
+                    stmt.setInt(2, resolveServerId(entry.getValue()));
+                    stmt.setLong(3, time != null && time > 0 ? time : now);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                commitWrites();
+            } catch (SQLException e) {
+                stmt.clearBatch();
+                rollbackWrites();
+                throw e;
+            }
         }
     }
 
+    /**
+     * Commit a batch straight away on the calling thread, bypassing the writer queue.
+     * Used to import data in bulk, where there is no caller to keep responsive.
+     * @param updatedAt Update time by player as recorded by the source, missing for now,
+     *                  so moving players between databases does not restart their retention clock
+     */
+    void importBatch(Map<UUID, String> batch, Map<UUID, Long> updatedAt) throws SQLException {
+        ensureInitialized();
+        writeBatch(batch, updatedAt);
+    }
+
+    /**
+     * Get the dictionary id of a server, inserting it on the writer connection if it is new.
+     * Must hold the write lock; the insert becomes visible with the next commit.
+     */
+    private int resolveServerId(String serverName) throws SQLException {
+        Integer id = serverIds.get(serverName);
+        if (id != null) {
+            return id;
+        }
+
+        PreparedStatement insert = writeStatements.get(INSERT_SERVER_SQL);
+        insert.setString(1, serverName);
+        insert.executeUpdate();
+        PreparedStatement select = writeStatements.get(SERVER_ID_SQL);
+        select.setString(1, serverName);
+        try (ResultSet rs = select.executeQuery()) {
+            if (!rs.next()) {
+                throw new SQLException("Failed to register server '" + serverName + "'");
+            }
+            id = rs.getInt(1);
+        }
+
+        serverIds.put(serverName, id);
+        serverNames.put(id, serverName);
+        uncommittedServers.add(serverName);
+        return id;
+    }
+
+    private void commitWrites() throws SQLException {
+        writeConnection.commit();
+        uncommittedServers.clear();
+    }
+
+    private void rollbackWrites() throws SQLException {
+        try {
+            writeConnection.rollback();
+        } finally {
+            // Forget dictionary entries that were rolled back with the transaction
+            for (String serverName : uncommittedServers) {
+                Integer id = serverIds.remove(serverName);
+                if (id != null) {
+                    serverNames.remove(id);
+                }
+            }
+            uncommittedServers.clear();
+        }
+    }
+
+    /**
+     * Look up a server name by dictionary id, falling back to the database on a cache miss.
+     */
+    private String serverName(int serverId) throws SQLException {
+        String name = serverNames.get(serverId);
+        if (name != null) {
+            return name;
+        }
+        PreparedStatement stmt = readStatements.get(SERVER_NAME_SQL);
+        synchronized (stmt) {
+            stmt.setInt(1, serverId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                name = rs.getString(1);
+            }
+        }
+        serverNames.put(serverId, name);
+        serverIds.putIfAbsent(name, serverId);
+        return name;
+    }
+
     @Override
     public Optional<String> getLastServer(UUID playerUuid) {
         ensureInitialized();
-        String sql = "SELECT last_server FROM player_data WHERE player_uuid = ?";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, playerUuid.toString());
-            ResultSet rs = stmt.executeQuery();
+        // A queued write is newer than anything in the database
+        String pending = writer.getPending(playerUuid);
+        if (pending != null) {
+            return Optional.of(pending);
+        }
 
-            if (rs.next()) {
-                return Optional.of(rs.getString("last_server"));
+        try {
+            PreparedStatement stmt = readStatements.get(SELECT_SQL);
+            int serverId;
+            synchronized (stmt) {
+                stmt.setBytes(1, UuidCodec.toBytes(playerUuid));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return Optional.empty();
+                    }
+                    serverId = rs.getInt(1);
+                }
             }
+            return Optional.ofNullable(serverName(serverId));
         } catch (SQLException e) {
             logger.error("Failed to get last server for player " + playerUuid, e);
         }
@@ -63,6 +300,69 @@ public class SQLiteStorageBackend implements StorageBackend {
         return Optional.empty();
     }
 
+    /**
+     * Look players up with one {@code IN} query per chunk instead of one query per player.
+     */
+    @Override
+    public Map<UUID, String> getLastServers(Collection<UUID> playerUuids) {
+        ensureInitialized();
+
+        Map<UUID, String> lastServers = new HashMap<>();
+        List<UUID> remaining = new ArrayList<>();
+        for (UUID playerUuid : playerUuids) {
+            String pending = writer.getPending(playerUuid);
+            if (pending != null) {
+                lastServers.put(playerUuid, pending);
+            } else {
+                remaining.add(playerUuid);
+            }
+        }
+
+        for (int from = 0; from < remaining.size(); from += LOOKUP_CHUNK) {
+            List<UUID> chunk = remaining.subList(from, Math.min(remaining.size(), from + LOOKUP_CHUNK));
+            int parameters = lookupParameters(chunk.size());
+
+            try {
+                Map<UUID, Integer> serverIdsFound = new HashMap<>();
+                PreparedStatement stmt = readStatements.get(lookupSql(parameters));
+                synchronized (stmt) {
+                    // Spare parameters repeat the last player, which matches the same row again
+                    for (int i = 0; i < parameters; i++) {
+                        stmt.setBytes(i + 1, UuidCodec.toBytes(chunk.get(Math.min(i, chunk.size() - 1))));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            serverIdsFound.put(UuidCodec.fromBytes(rs.getBytes(1)), rs.getInt(2));
+                        }
+                    }
+                }
+                for (Map.Entry<UUID, Integer> found : serverIdsFound.entrySet()) {
+                    String serverName = serverName(found.getValue());
+                    if (serverName != null) {
+                        lastServers.put(found.getKey(), serverName);
+                    }
+                }
+            } catch (SQLException e) {
+                logger.error("Failed to get last servers for " + chunk.size() + " players", e);
+            }
+        }
+
+        return lastServers;
+    }
+
+    /**
+     * Round a lookup up to the next power of two parameters, so a handful of cached
+     * statements serve every chunk size.
+     */
+    private static int lookupParameters(int players) {
+        return Math.min(LOOKUP_CHUNK, Integer.highestOneBit(Math.max(1, players - 1)) << (players > 1 ? 1 : 0));
+    }
+
+    private static String lookupSql(int parameters) {
+        return "SELECT player_uuid, server_id FROM player_data WHERE player_uuid IN ("
+                + String.join(", ", Collections.nCopies(parameters, "?")) + ")";
+    }
+
     @Override
     public void initialize() throws Exception {
         if (initialized) {
@@ -73,44 +373,39 @@ public class SQLiteStorageBackend implements StorageBackend {
             // Create the data directory if it doesn't exist
             Files.createDirectories(dataDirectory);
 
-            // Create database connection
-            String url = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
-
-            // Explicitly load the SQLite driver (required when using shadow plugin)
-            try {
-                Class.forName("org.sqlite.JDBC");
-            } catch (ClassNotFoundException e) {
-                throw new SQLException("SQLite JDBC driver not found. Please ensure the plugin is properly built with the shadow plugin.", e);
-            }
-
-            connection = DriverManager.getConnection(url);
-
-            // Create table if it doesn't exist
-            String createTableSQL = """
-                CREATE TABLE IF NOT EXISTS player_data (
-                    player_uuid TEXT PRIMARY KEY,
-                    last_server TEXT NOT NULL,
-                    last_updated TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-                )
-                """;
+            // Create database connection; the driver is loaded from backends/ on first use
+            connection = openConnection();
 
+            // Enable WAL mode for better concurrent access
             try (Statement stmt = connection.createStatement()) {
-                stmt.execute(createTableSQL);
+                // Takes effect right away for a new database, otherwise with the next VACUUM
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("PRAGMA busy_timeout=5000");
+                profile.apply(stmt);
             }
 
-            // Create index on last_updated for potential cleanup queries
-            String createIndexSQL = "CREATE INDEX IF NOT EXISTS idx_last_updated ON player_data(last_updated)";
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute(createIndexSQL);
+            // Create or upgrade the schema
+            upgradeSchema();
+            if (convertToIncrementalVacuum) {
+                enableIncrementalVacuum();
             }
+            loadServerDictionary();
 
-            // Enable WAL mode for better concurrent access
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute("PRAGMA journal_mode=WAL");
+            // Dedicated connection for the writer thread; WAL lets reads continue while it commits
+            writeConnection = openConnection();
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout=5000");
+                profile.apply(stmt);
             }
+            writeConnection.setAutoCommit(false);
+            readStatements = new StatementCache(connection);
+            writeStatements = new StatementCache(writeConnection);
+            writer.start();
 
             initialized = true;
-            logger.info("SQLite storage backend initialized successfully at: " + databaseFile.getAbsolutePath());
+            logger.info("SQLite storage backend initialized successfully at: " + databaseFile.getAbsolutePath()
+                    + " (profile: " + profile.configName() + ")");
         } catch (SQLException e) {
             logger.error("Failed to initialize SQLite storage backend", e);
             throw e;
@@ -119,8 +414,19 @@ public class SQLiteStorageBackend implements StorageBackend {
 
     @Override
     public void shutdown() {
+        // Drain queued writes before checkpointing so nothing is left out of the database
+        writer.shutdown();
+
         if (connection != null) {
             try {
+                if (writeConnection != null) {
+                    writeStatements.close();
+                    writeConnection.close();
+                }
+                if (readStatements != null) {
+                    readStatements.close();
+                }
+
                 // Close WAL file to ensure data integrity
                 try (Statement stmt = connection.createStatement()) {
                     stmt.execute("PRAGMA wal_checkpoint(TRUNCATE)");
@@ -149,39 +455,360 @@ public class SQLiteStorageBackend implements StorageBackend {
         if (source == this) {
             throw new IllegalArgumentException("Cannot migrate from the same backend");
         }
+        ensureInitialized();
 
         logger.info("Starting migration from " + source.getBackendName() + " to SQLite...");
         callback.onProgress(0, 0, "Starting migration...");
 
-        // Get all data from source
-        if (source instanceof YAMLStorageBackend yamlBackend) {
-            var allData = yamlBackend.getAllData();
-            int total = allData.size();
-            int count = 0;
+        ChunkedImport importer;
+        if (source instanceof YAMLStorageBackend yamlBackend && !yamlBackend.isLoaded()) {
+            // data.yml always streams in the same order, so a crashed migration can skip what it already committed
+            File dataFile = yamlBackend.getDataFile();
+            long resumeFrom = beginYamlMigration(dataFile.length() + ":" + dataFile.lastModified());
+            if (resumeFrom > 0) {
+                logger.info("Resuming interrupted migration after " + resumeFrom + " already migrated players.");
+                callback.onProgress((int) resumeFrom, 0, "Resuming migration after " + resumeFrom + " players...");
+            }
+            importer = new ChunkedImport(resumeFrom, true, callback);
+            yamlBackend.streamDataFile(importer::accept);
+        } else {
+            importer = new ChunkedImport(0, false, callback);
+            source.forEachTimedEntry((uuid, server, updatedAt) -> {
+                try {
+                    importer.accept(uuid, server, updatedAt);
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Failed to migrate player " + uuid, e);
+                }
+            });
+        }
+        importer.flush();
+        endYamlMigration();
+
+        int count = (int) importer.seen;
+        logger.info("Migration completed successfully: " + count + " players migrated in " + importer.elapsedSeconds() + "s ("
+                + importer.rate() + " players/s).");
+        callback.onProgress(count, count, "Migration completed: " + count + " players.");
+        return count;
+    }
+
+    /**
+     * Copies migrated entries in chunks, each chunk one JDBC batch in its own transaction.
+     * For a YAML migration the number of entries read so far is committed with every chunk.
+     */
+    private final class ChunkedImport {
+        private final long skip;
+        private final boolean trackProgress;
+        private final MigrationCallback callback;
+        private final List<UUID> players = new ArrayList<>(MIGRATION_CHUNK);
+        private final List<String> servers = new ArrayList<>(MIGRATION_CHUNK);
+        private final List<Long> times = new ArrayList<>(MIGRATION_CHUNK);
+        private final long startNanos = System.nanoTime();
+        private long seen = 0;
+        private long imported = 0;
+
+        ChunkedImport(long skip, boolean trackProgress, MigrationCallback callback) {
+            this.skip = skip;
+            this.trackProgress = trackProgress;
+            this.callback = callback;
+        }
+
+        void accept(UUID playerUuid, String serverName) throws SQLException {
+            accept(playerUuid, serverName, 0);
+        }
+
+        /**
+         * @param updatedAt When the source last updated the player, 0 if it does not record it
+         */
+        void accept(UUID playerUuid, String serverName, long updatedAt) throws SQLException {
+            if (seen++ < skip) {
+                return;
+            }
+            players.add(playerUuid);
+            servers.add(serverName);
+            times.add(updatedAt);
+            if (players.size() >= MIGRATION_CHUNK) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (players.isEmpty()) {
+                return;
+            }
+
+            long now = System.currentTimeMillis();
+            synchronized (writeLock) {
+                PreparedStatement stmt = writeStatements.get(UPSERT_SQL);
+                try {
+                    for (int i = 0; i < players.size(); i++) {
+                        stmt.setBytes(1, UuidCodec.toBytes(players.get(i)));
+                        stmt.setInt(2, resolveServerId(servers.get(i)));
+                        stmt.setLong(3, times.get(i) > 0 ? times.get(i) : now);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+
+                    if (trackProgress) {
+                        try (PreparedStatement progress = writeConnection.prepareStatement("UPDATE yaml_migration SET committed = ? WHERE id = 0")) {
+                            progress.setLong(1, seen);
+                            progress.executeUpdate();
+                        }
+                    }
+                    commitWrites();
+                } catch (SQLException e) {
+                    stmt.clearBatch();
+                    rollbackWrites();
+                    throw e;
+                }
+            }
+
+            imported += players.size();
+            players.clear();
+            servers.clear();
+            times.clear();
+            callback.onProgress((int) seen, 0, "Migrated " + seen + " players (" + rate() + " players/s)...");
+        }
+
+        long rate() {
+            double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+            return seconds > 0 ? Math.round(imported / seconds) : imported;
+        }
+
+        String elapsedSeconds() {
+            return String.format("%.1f", (System.nanoTime() - startNanos) / 1_000_000_000.0);
+        }
+    }
+
+    /**
+     * Record that a YAML migration is running, or pick up an interrupted one for the same file.
+     * @param source Identifies the data.yml being migrated, so a changed file starts over
+     * @return The number of entries already committed by an interrupted migration
+     */
+    private long beginYamlMigration(String source) throws SQLException {
+        synchronized (writeLock) {
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS yaml_migration (" +
+                        "id INTEGER PRIMARY KEY CHECK (id = 0), " +
+                        "source TEXT NOT NULL, " +
+                        "committed INTEGER NOT NULL" +
+                        ")");
+                try (ResultSet rs = stmt.executeQuery("SELECT source, committed FROM yaml_migration WHERE id = 0")) {
+                    if (rs.next() && source.equals(rs.getString(1))) {
+                        long committed = rs.getLong(2);
+                        commitWrites();
+                        return committed;
+                    }
+                }
+                try (PreparedStatement insert = writeConnection.prepareStatement("INSERT OR REPLACE INTO yaml_migration (id, source, committed) VALUES (0, ?, 0)")) {
+                    insert.setString(1, source);
+                    insert.executeUpdate();
+                }
+                commitWrites();
+                return 0;
+            } catch (SQLException e) {
+                rollbackWrites();
+                throw e;
+            }
+        }
+    }
+
+    private void endYamlMigration() throws SQLException {
+        synchronized (writeLock) {
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("DROP TABLE IF EXISTS yaml_migration");
+                commitWrites();
+            } catch (SQLException e) {
+                rollbackWrites();
+                throw e;
+            }
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        return JdbcDrivers.connect(SQLiteBackendProvider.DRIVER_CLASS, "jdbc:sqlite:" + databaseFile.getAbsolutePath(), new Properties());
+    }
+
+    /**
+     * Check whether a YAML migration into this database was interrupted and should be resumed.
+     * Works before {@link #initialize()}, using a short-lived connection.
+     */
+    public boolean hasIncompleteMigration() {
+        if (!databaseFile.exists()) {
+            return false;
+        }
+        if (!SQLiteBackendProvider.isDriverAvailable()) {
+            return false;
+        }
+        try (Connection probe = openConnection();
+             PreparedStatement stmt = probe.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'yaml_migration'");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next();
+        } catch (SQLException e) {
+            logger.warn("Could not check " + databaseFile.getName() + " for an interrupted migration: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws SQLException {
+        ensureInitialized();
+        String sql = "SELECT player_uuid, server_id FROM player_data";
 
-            String sql = "INSERT OR REPLACE INTO player_data (player_uuid, last_server, last_updated) VALUES (?, ?, ?)";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                String serverName = serverName(rs.getInt(2));
+                if (serverName != null) {
+                    consumer.accept(UuidCodec.fromBytes(rs.getBytes(1)), serverName);
+                }
+            }
+        }
+    }
 
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                for (Map.Entry<UUID, String> entry : allData.entrySet()) {
-                    stmt.setString(1, entry.getKey().toString());
-                    stmt.setString(2, entry.getValue());
-                    stmt.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
-                    stmt.executeUpdate();
+    @Override
+    public void forEachTimedEntry(TimedEntryConsumer consumer) throws SQLException {
+        ensureInitialized();
+        String sql = "SELECT player_uuid, server_id, last_updated FROM player_data";
 
-                    count++;
-                    if (count % 100 == 0 || count == total) {
-                        callback.onProgress(count, total, "Migrated " + count + " of " + total + " players...");
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                String serverName = serverName(rs.getInt(2));
+                if (serverName != null) {
+                    consumer.accept(UuidCodec.fromBytes(rs.getBytes(1)), serverName, rs.getLong(3));
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the database with VACUUM INTO on a connection of its own. The copy reads a single WAL
+     * snapshot, so the writer keeps committing and lookups keep running while it is made.
+     * Queued writes that were not committed yet are not part of the copy.
+     */
+    @Override
+    public List<File> backupTo(File directory) throws SQLException {
+        ensureInitialized();
+        File target = new File(directory, databaseFile.getName());
+        try (Connection backup = openConnection()) {
+            try (Statement stmt = backup.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout=5000");
+            }
+            try (PreparedStatement vacuum = backup.prepareStatement("VACUUM INTO ?")) {
+                vacuum.setString(1, target.getAbsolutePath());
+                vacuum.execute();
+            }
+        }
+        return List.of(target);
+    }
+
+    /**
+     * Page through the players in key order, {@value #CURSOR_PAGE} at a time. Each page is a short
+     * query of its own, so no read transaction stays open while the caller works through it.
+     */
+    @Override
+    public StorageCursor openCursor() {
+        ensureInitialized();
+        return new KeysetCursor();
+    }
+
+    private final class KeysetCursor implements StorageCursor {
+
+        private final List<UUID> players = new ArrayList<>(CURSOR_PAGE);
+        private final List<String> servers = new ArrayList<>(CURSOR_PAGE);
+        private byte[] lastKey = new byte[0];
+        private boolean exhausted = false;
+        private int position = 0;
+
+        @Override
+        public boolean next() throws SQLException {
+            if (++position < players.size()) {
+                return true;
+            }
+            position = 0;
+            players.clear();
+            while (players.isEmpty() && !exhausted) {
+                loadPage();
+            }
+            return !players.isEmpty();
+        }
+
+        private void loadPage() throws SQLException {
+            players.clear();
+            servers.clear();
+            List<Integer> serverIdsFound = new ArrayList<>(CURSOR_PAGE);
+            PreparedStatement stmt = readStatements.get(CURSOR_SQL);
+            synchronized (stmt) {
+                stmt.setBytes(1, lastKey);
+                stmt.setInt(2, CURSOR_PAGE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        lastKey = rs.getBytes(1);
+                        players.add(UuidCodec.fromBytes(lastKey));
+                        serverIdsFound.add(rs.getInt(2));
                     }
                 }
             }
+            exhausted = players.size() < CURSOR_PAGE;
+            for (int i = 0; i < serverIdsFound.size(); i++) {
+                servers.add(SQLiteStorageBackend.this.serverName(serverIdsFound.get(i)));
+            }
+            // Drop players whose server is missing from the dictionary, like forEachEntry does
+            for (int i = players.size() - 1; i >= 0; i--) {
+                if (servers.get(i) == null) {
+                    players.remove(i);
+                    servers.remove(i);
+                }
+            }
+        }
 
-            logger.info("Migration completed successfully: " + count + " players migrated.");
-            callback.onProgress(count, count, "Migration completed: " + count + " players.");
+        @Override
+        public UUID playerUuid() {
+            return players.get(position);
+        }
 
-            return count;
+        @Override
+        public String serverName() {
+            return servers.get(position);
         }
 
-        throw new UnsupportedOperationException("Migration from " + source.getBackendName() + " is not supported");
+        @Override
+        public void close() {
+            players.clear();
+            servers.clear();
+            exhausted = true;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>(writer.getStatistics());
+        stats.put("profile", profile.configName());
+        stats.put("cached_statements", initialized ? readStatements.size() + writeStatements.size() : 0);
+        return stats;
+    }
+
+    /**
+     * Visit the most recently updated players, newest first, using the last_updated index.
+     * Used to warm caches at startup.
+     * @param limit Maximum number of players to visit
+     * @param consumer Receives each player UUID and server name
+     */
+    public void forEachRecentEntry(int limit, BiConsumer<UUID, String> consumer) throws SQLException {
+        ensureInitialized();
+        String sql = "SELECT player_uuid, server_id FROM player_data ORDER BY last_updated DESC LIMIT ?";
+
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String serverName = serverName(rs.getInt(2));
+                    if (serverName != null) {
+                        consumer.accept(UuidCodec.fromBytes(rs.getBytes(1)), serverName);
+                    }
+                }
+            }
+        }
     }
 
     /**
@@ -206,15 +833,315 @@ public class SQLiteStorageBackend implements StorageBackend {
 
     /**
      * Optimize the database. Useful for maintenance.
+     * Free pages are reclaimed incrementally, so writes keep flowing while it runs.
      */
     public void optimize() {
         ensureInitialized();
+        try {
+            long reclaimed = reclaimSpace(Long.MAX_VALUE);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("ANALYZE");
+            }
+            logger.info("SQLite database optimized, reclaimed " + reclaimed / 1024 + " KB.");
+        } catch (SQLException e) {
+            logger.error("Failed to optimize database", e);
+        }
+    }
+
+    @Override
+    public boolean supportsRetention() {
+        return true;
+    }
+
+    /**
+     * Delete the oldest players last updated before the cutoff, walking idx_last_updated.
+     * Runs on the writer connection in its own short transaction; a queued write for a
+     * pruned player is simply inserted again with its new update time.
+     */
+    @Override
+    public int pruneOlderThan(long cutoffMillis, int limit, Consumer<UUID> pruned) throws SQLException {
+        ensureInitialized();
+        List<UUID> deleted = new ArrayList<>();
+        synchronized (writeLock) {
+            try {
+                // Select and delete in the same transaction, so the deleted players are known
+                PreparedStatement select = writeStatements.get(PRUNE_SELECT_SQL);
+                select.setLong(1, cutoffMillis);
+                select.setInt(2, limit);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        deleted.add(UuidCodec.fromBytes(rs.getBytes(1)));
+                    }
+                }
+                if (!deleted.isEmpty()) {
+                    PreparedStatement delete = writeStatements.get(PRUNE_DELETE_SQL);
+                    for (UUID playerUuid : deleted) {
+                        delete.setBytes(1, UuidCodec.toBytes(playerUuid));
+                        delete.addBatch();
+                    }
+                    delete.executeBatch();
+                }
+                commitWrites();
+            } catch (SQLException e) {
+                rollbackWrites();
+                throw e;
+            }
+        }
+        deleted.forEach(pruned);
+        return deleted.size();
+    }
+
+    /**
+     * Release free pages with incremental_vacuum, {@value #VACUUM_STEP_PAGES} pages per transaction,
+     * so the batch writer can commit between steps.
+     */
+    @Override
+    public long reclaimSpace(long maxMillis) throws SQLException {
+        ensureInitialized();
+        long start = System.currentTimeMillis();
+        long pageSize = pragmaValue("page_size");
+        long before = pragmaValue("freelist_count");
+        long remaining = before;
+
+        while (remaining > 0 && System.currentTimeMillis() - start < maxMillis) {
+            long previous = remaining;
+            synchronized (writeLock) {
+                // Every execution steps the pragma once, which frees exactly one page
+                try (PreparedStatement vacuum = writeConnection.prepareStatement("PRAGMA incremental_vacuum(1)")) {
+                    for (int i = 0; i < VACUUM_STEP_PAGES && i < remaining; i++) {
+                        vacuum.execute();
+                    }
+                    commitWrites();
+                } catch (SQLException e) {
+                    rollbackWrites();
+                    throw e;
+                }
+            }
+            remaining = pragmaValue("freelist_count");
+            if (remaining >= previous) {
+                break; // Incremental vacuum is not enabled on this database
+            }
+        }
+        return (before - remaining) * pageSize;
+    }
+
+    private long pragmaValue(String pragma) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Databases created before incremental vacuum was used can only be switched over by one full VACUUM.
+     * It runs before the writer starts, so no write waits on it, and never again once converted.
+     */
+    private void enableIncrementalVacuum() throws SQLException {
+        if (pragmaValue("auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+            return;
+        }
+        logger.info("Retention is enabled: converting " + databaseFile.getName() + " to incremental vacuum with a one-time full VACUUM...");
+        long start = System.currentTimeMillis();
         try (Statement stmt = connection.createStatement()) {
             stmt.execute("VACUUM");
-            stmt.execute("ANALYZE");
-            logger.info("SQLite database optimized.");
+        }
+        logger.info("Converted " + databaseFile.getName() + " to incremental vacuum in " + (System.currentTimeMillis() - start) + "ms. This is not needed again.");
+    }
+
+    // --- Schema ---
+
+    /**
+     * Bring the database to the compact schema, creating it or migrating legacy data as needed.
+     * The schema version is tracked in PRAGMA user_version.
+     */
+    private void upgradeSchema() throws SQLException {
+        int version = getSchemaVersion();
+
+        if (version == SCHEMA_LEGACY) {
+            if (!tableExists("player_data")) {
+                createCompactSchema();
+                setSchemaVersion(SCHEMA_COMPACT);
+                return;
+            }
+
+            // Move the legacy table aside and create the new schema in one transaction
+            logger.info("Upgrading SQLite database to the compact schema. This only happens once...");
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DROP INDEX IF EXISTS idx_last_updated");
+                stmt.execute("ALTER TABLE player_data RENAME TO player_data_v1");
+                createCompactSchema();
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_migration (last_rowid INTEGER NOT NULL)");
+                stmt.execute("INSERT INTO schema_migration (last_rowid) VALUES (0)");
+                setSchemaVersion(SCHEMA_MIGRATING);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+            version = SCHEMA_MIGRATING;
+        }
+
+        if (version == SCHEMA_MIGRATING) {
+            migrateLegacyRows();
+        }
+    }
+
+    private void createCompactSchema() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS servers (
+                    id INTEGER PRIMARY KEY,
+                    name TEXT NOT NULL UNIQUE
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS player_data (
+                    player_uuid BLOB PRIMARY KEY,
+                    server_id INTEGER NOT NULL,
+                    last_updated INTEGER NOT NULL
+                ) WITHOUT ROWID
+                """);
+
+            // Create index on last_updated for cache warming and cleanup queries
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_last_updated ON player_data(last_updated)");
+        }
+    }
+
+    /**
+     * Copy legacy rows into the compact table in chunks. Each chunk commits together with the
+     * position reached, so an interrupted migration continues from the last committed chunk.
+     */
+    private void migrateLegacyRows() throws SQLException {
+        long lastRowId;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT last_rowid FROM schema_migration")) {
+            lastRowId = rs.next() ? rs.getLong(1) : 0;
+        }
+        if (lastRowId > 0) {
+            logger.info("Resuming SQLite schema upgrade after row " + lastRowId + "...");
+        }
+
+        // Server ids are resolved through the writer connection, so run the copy there as well
+        writeConnection = openConnection();
+        writeConnection.setAutoCommit(false);
+        writeStatements = new StatementCache(writeConnection);
+
+        long start = System.currentTimeMillis();
+        int migrated = 0;
+        String selectSql = "SELECT rowid, player_uuid, last_server, last_updated FROM player_data_v1 WHERE rowid > ? ORDER BY rowid LIMIT ?";
+        try (PreparedStatement select = writeConnection.prepareStatement(selectSql);
+             PreparedStatement insert = writeConnection.prepareStatement(UPSERT_SQL);
+             PreparedStatement progress = writeConnection.prepareStatement("UPDATE schema_migration SET last_rowid = ?")) {
+            while (true) {
+                select.setLong(1, lastRowId);
+                select.setInt(2, SCHEMA_MIGRATION_CHUNK);
+                int rows = 0;
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastRowId = rs.getLong(1);
+                        String uuid = rs.getString(2);
+                        try {
+                            insert.setBytes(1, UuidCodec.toBytes(UUID.fromString(uuid)));
+                        } catch (IllegalArgumentException e) {
+                            logger.warn("Skipping invalid UUID in SQLite database: " + uuid);
+                            continue;
+                        }
+                        insert.setInt(2, resolveServerId(rs.getString(3)));
+                        insert.setLong(3, parseLegacyTimestamp(rs.getObject(4)));
+                        insert.addBatch();
+                        migrated++;
+                    }
+                }
+                if (rows == 0) {
+                    break;
+                }
+
+                insert.executeBatch();
+                progress.setLong(1, lastRowId);
+                progress.executeUpdate();
+                commitWrites();
+                logger.info("Upgraded " + migrated + " player records...");
+            }
+
+            try (Statement stmt = writeConnection.createStatement()) {
+                stmt.execute("DROP TABLE player_data_v1");
+                stmt.execute("DROP TABLE schema_migration");
+                stmt.execute("PRAGMA user_version = " + SCHEMA_COMPACT);
+            }
+            commitWrites();
         } catch (SQLException e) {
-            logger.error("Failed to optimize database", e);
+            rollbackWrites();
+            throw e;
+        } finally {
+            writeStatements.close();
+            writeStatements = null;
+            writeConnection.close();
+            writeConnection = null;
+        }
+
+        logger.info("SQLite schema upgrade completed: " + migrated + " players in " + (System.currentTimeMillis() - start) + "ms.");
+
+        // Give the space held by the legacy table back to the file system
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("VACUUM");
+        }
+    }
+
+    /**
+     * Legacy rows hold either epoch milliseconds (written by the JDBC driver) or
+     * 'yyyy-MM-dd HH:mm:ss' text in UTC (written by the column default).
+     */
+    private static long parseLegacyTimestamp(Object value) {
+        if (value instanceof Number number) {
+            return number.longValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                try {
+                    return LocalDateTime.parse(text, LEGACY_TIMESTAMP_FORMAT).toInstant(ZoneOffset.UTC).toEpochMilli();
+                } catch (DateTimeParseException ignored) {
+                    // Fall through to the current time
+                }
+            }
+        }
+        return System.currentTimeMillis();
+    }
+
+    private void loadServerDictionary() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, name FROM servers")) {
+            while (rs.next()) {
+                serverIds.put(rs.getString(2), rs.getInt(1));
+                serverNames.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+    }
+
+    private int getSchemaVersion() throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : SCHEMA_LEGACY;
+        }
+    }
+
+    private void setSchemaVersion(int version) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA user_version = " + version);
+        }
+    }
+
+    private boolean tableExists(String table) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
         }
     }
 
@@ -0,0 +1,56 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns server names and assigns each distinct name a small, stable int id.
+ * There are only ever a handful of backend servers, so every player entry can refer to
+ * its server by id instead of holding its own String.
+ */
+public class ServerNameTable {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private int count = 0;
+
+    /**
+     * Get the id of a server name, assigning the next free id if the name is new.
+     */
+    public int idOf(String serverName) {
+        Integer id = ids.get(serverName);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = ids.get(serverName);
+            if (id != null) {
+                return id;
+            }
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+            }
+            names[count] = serverName;
+            ids.put(serverName, count);
+            return count++;
+        }
+    }
+
+    /**
+     * Get the server name for an id.
+     * @return The name, or null if the id was never assigned
+     */
+    public String nameOf(int id) {
+        String[] current = names;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * Get the number of distinct server names.
+     */
+    public synchronized int size() {
+        return count;
+    }
+}
@@ -0,0 +1,607 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQLite storage split over several database files by a hash of the player UUID.
+ * <p>
+ * SQLite allows a single writer per database file. Each shard here is a complete
+ * {@link SQLiteStorageBackend} with its own connections and batch writer thread, so writes to
+ * different shards are committed, and synced to disk, in parallel.
+ * <p>
+ * Shards live in {@code sqlite-shards/} as {@code shard-<i>-of-<n>.db}, so the files record the
+ * shard count they were written with. A player always hashes to the same shard for a given count;
+ * changing the count moves players between files, which {@link SQLiteShardRebalancer} does offline.
+ */
+public class ShardedSQLiteStorageBackend implements StorageBackend {
+
+    public static final String SHARD_DIRECTORY = "sqlite-shards";
+    private static final Pattern SHARD_FILE = Pattern.compile("shard-(\\d+)-of-(\\d+)\\.db");
+    // Present while a migration into the shards is running, so an interrupted one is started over
+    private static final String MIGRATION_MARKER = "migration.pending";
+    private static final int IMPORT_CHUNK = 10000;
+
+    private final Logger logger;
+    private final File directory;
+    private final SQLiteStorageBackend[] shards;
+    private final AtomicInteger pruneCursor = new AtomicInteger();
+    private volatile boolean initialized = false;
+
+    /**
+     * @param shardCount Number of database files, at least 2
+     * @param batchSize Maximum number of writes committed in one transaction, per shard
+     * @param maxBatchDelayMillis Maximum time a write waits before its batch is committed
+     * @param queueCapacity Maximum number of queued writes before callers block, per shard
+     */
+    public ShardedSQLiteStorageBackend(Logger logger, Path dataDirectory, int shardCount,
+                                       int batchSize, long maxBatchDelayMillis, int queueCapacity) {
+        this(logger, dataDirectory, shardCount, batchSize, maxBatchDelayMillis, queueCapacity, SQLiteProfile.BALANCED);
+    }
+
+    /**
+     * @param profile Pragmas applied to the connections of every shard
+     */
+    public ShardedSQLiteStorageBackend(Logger logger, Path dataDirectory, int shardCount,
+                                       int batchSize, long maxBatchDelayMillis, int queueCapacity, SQLiteProfile profile) {
+        this(logger, dataDirectory, shardCount, batchSize, maxBatchDelayMillis, queueCapacity, profile, false);
+    }
+
+    /**
+     * @param convertToIncrementalVacuum Whether shards without incremental vacuum are converted at startup
+     */
+    public ShardedSQLiteStorageBackend(Logger logger, Path dataDirectory, int shardCount,
+                                       int batchSize, long maxBatchDelayMillis, int queueCapacity, SQLiteProfile profile,
+                                       boolean convertToIncrementalVacuum) {
+        this(logger, dataDirectory.resolve(SHARD_DIRECTORY).toFile(), shardCount, batchSize, maxBatchDelayMillis, queueCapacity, profile,
+                convertToIncrementalVacuum);
+    }
+
+    ShardedSQLiteStorageBackend(Logger logger, File directory, int shardCount,
+                                int batchSize, long maxBatchDelayMillis, int queueCapacity, SQLiteProfile profile,
+                                boolean convertToIncrementalVacuum) {
+        if (shardCount < 2) {
+            throw new IllegalArgumentException("A sharded SQLite backend needs at least 2 shards, got " + shardCount);
+        }
+        this.logger = logger;
+        this.directory = directory;
+        this.shards = new SQLiteStorageBackend[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new SQLiteStorageBackend(logger, new File(directory, shardFileName(i, shardCount)),
+                    "SQLite-" + i, batchSize, maxBatchDelayMillis, queueCapacity, profile, convertToIncrementalVacuum);
+        }
+    }
+
+    static String shardFileName(int shard, int shardCount) {
+        return String.format("shard-%02d-of-%02d.db", shard, shardCount);
+    }
+
+    /**
+     * Get the shard a player is stored in. This is part of the file layout: changing it
+     * would put every existing player in the wrong shard.
+     */
+    static int shardOf(UUID playerUuid, int shardCount) {
+        long hash = playerUuid.getMostSignificantBits() ^ playerUuid.getLeastSignificantBits();
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return (int) Long.remainderUnsigned(hash, shardCount);
+    }
+
+    private SQLiteStorageBackend shardFor(UUID playerUuid) {
+        return shards[shardOf(playerUuid, shards.length)];
+    }
+
+    /**
+     * Split players by shard, keeping the order of the input within each shard.
+     */
+    private <V> List<Map<UUID, V>> groupByShard(Map<UUID, V> entries) {
+        List<Map<UUID, V>> groups = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            groups.add(new LinkedHashMap<>());
+        }
+        entries.forEach((playerUuid, value) -> groups.get(shardOf(playerUuid, shards.length)).put(playerUuid, value));
+        return groups;
+    }
+
+    /**
+     * Find the shard count of the shard files in a directory.
+     * @return The shard count, or 0 if there are no shard files
+     * @throws IOException if the directory holds shards of more than one count
+     */
+    public static int findShardCount(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int found = 0;
+        for (File file : files) {
+            Matcher matcher = SHARD_FILE.matcher(file.getName());
+            if (!matcher.matches()) {
+                continue;
+            }
+            int count = Integer.parseInt(matcher.group(2));
+            if (found != 0 && found != count) {
+                throw new IOException(directory.getName() + " holds shards for both " + found + " and " + count + " shards");
+            }
+            found = count;
+        }
+        return found;
+    }
+
+    @Override
+    public void setLastServer(UUID playerUuid, String serverName) {
+        shardFor(playerUuid).setLastServer(playerUuid, serverName);
+    }
+
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        List<Map<UUID, String>> groups = groupByShard(lastServers);
+        for (int i = 0; i < shards.length; i++) {
+            if (!groups.get(i).isEmpty()) {
+                shards[i].setLastServers(groups.get(i));
+            }
+        }
+    }
+
+    @Override
+    public Optional<String> getLastServer(UUID playerUuid) {
+        return shardFor(playerUuid).getLastServer(playerUuid);
+    }
+
+    @Override
+    public Map<UUID, String> getLastServers(Collection<UUID> playerUuids) {
+        List<List<UUID>> groups = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (UUID playerUuid : playerUuids) {
+            groups.get(shardOf(playerUuid, shards.length)).add(playerUuid);
+        }
+
+        Map<UUID, String> lastServers = new HashMap<>();
+        for (int i = 0; i < shards.length; i++) {
+            if (!groups.get(i).isEmpty()) {
+                lastServers.putAll(shards[i].getLastServers(groups.get(i)));
+            }
+        }
+        return lastServers;
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        if (initialized) {
+            return;
+        }
+
+        Files.createDirectories(directory.toPath());
+        int existing = findShardCount(directory);
+        if (existing != 0 && existing != shards.length) {
+            throw new IllegalStateException(directory.getName() + " holds " + existing + " shards, but " + shards.length
+                    + " are configured. Restart with the new count to rebalance, or set storage.sqlite.shards back to " + existing + ".");
+        }
+
+        int started = 0;
+        try {
+            for (SQLiteStorageBackend shard : shards) {
+                shard.initialize();
+                started++;
+            }
+        } catch (Exception e) {
+            for (int i = 0; i < started; i++) {
+                shards[i].shutdown();
+            }
+            throw e;
+        }
+
+        initialized = true;
+        logger.info("Sharded SQLite storage backend initialized with " + shards.length + " shards in " + directory.getAbsolutePath());
+    }
+
+    @Override
+    public void shutdown() {
+        if (!initialized) {
+            return;
+        }
+        for (SQLiteStorageBackend shard : shards) {
+            shard.shutdown();
+        }
+        initialized = false;
+    }
+
+    @Override
+    public String getBackendName() {
+        return "SQLite (" + shards.length + " shards)";
+    }
+
+    @Override
+    public boolean supportsMigration() {
+        return true;
+    }
+
+    /**
+     * Read the source once and import every shard's players on its own thread,
+     * so the shards commit in parallel.
+     */
+    @Override
+    public int migrateFrom(StorageBackend source, MigrationCallback callback) throws Exception {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot migrate from the same backend");
+        }
+        ensureInitialized();
+
+        logger.info("Starting migration from " + source.getBackendName() + " to " + getBackendName() + "...");
+        callback.onProgress(0, 0, "Starting migration...");
+
+        Path marker = directory.toPath().resolve(MIGRATION_MARKER);
+        Files.writeString(marker, source.getBackendName());
+
+        ShardedImport importer = new ShardedImport(callback);
+        try {
+            source.forEachTimedEntry(importer::accept);
+            importer.finish();
+        } finally {
+            importer.close();
+        }
+        Files.deleteIfExists(marker);
+
+        int count = (int) importer.imported.get();
+        logger.info("Migration completed successfully: " + count + " players migrated in " + importer.elapsedSeconds() + "s ("
+                + importer.rate() + " players/s).");
+        callback.onProgress(count, count, "Migration completed: " + count + " players.");
+        return count;
+    }
+
+    /**
+     * Collects entries per shard and commits each full chunk on a worker thread.
+     * Chunks of the same shard are committed in order; a bounded number is in flight at once.
+     */
+    private final class ShardedImport {
+        private final MigrationCallback callback;
+        private final List<Map<UUID, String>> buffers = new ArrayList<>(shards.length);
+        // Update times from the source, so a rebalance does not restart the retention clock
+        private final List<Map<UUID, Long>> times = new ArrayList<>(shards.length);
+        private final CompletableFuture<?>[] tails = new CompletableFuture<?>[shards.length];
+        private final ExecutorService workers;
+        private final Semaphore inFlight = new Semaphore(shards.length * 2);
+        private final AtomicLong imported = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+
+        ShardedImport(MigrationCallback callback) {
+            this.callback = callback;
+            int threads = Math.min(shards.length, Runtime.getRuntime().availableProcessors());
+            AtomicInteger counter = new AtomicInteger();
+            this.workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+                Thread thread = new Thread(runnable, "SmartRejoin-SQLite-Import-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < shards.length; i++) {
+                buffers.add(new HashMap<>());
+                times.add(new HashMap<>());
+                tails[i] = CompletableFuture.completedFuture(null);
+            }
+        }
+
+        void accept(UUID playerUuid, String serverName, long updatedAt) {
+            int shard = shardOf(playerUuid, shards.length);
+            Map<UUID, String> buffer = buffers.get(shard);
+            buffer.put(playerUuid, serverName);
+            if (updatedAt > 0) {
+                times.get(shard).put(playerUuid, updatedAt);
+            }
+            if (buffer.size() >= IMPORT_CHUNK) {
+                submit(shard);
+                callback.onProgress((int) imported.get(), 0, "Migrated " + imported.get() + " players (" + rate() + " players/s)...");
+            }
+        }
+
+        private void submit(int shard) {
+            // Stop reading the source as soon as a shard has failed
+            if (tails[shard].isCompletedExceptionally()) {
+                tails[shard].join();
+            }
+            Map<UUID, String> chunk = buffers.get(shard);
+            Map<UUID, Long> chunkTimes = times.get(shard);
+            buffers.set(shard, new HashMap<>());
+            times.set(shard, new HashMap<>());
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while migrating", e);
+            }
+            tails[shard] = tails[shard].thenRunAsync(() -> {
+                try {
+                    shards[shard].importBatch(chunk, chunkTimes);
+                    imported.addAndGet(chunk.size());
+                } catch (SQLException e) {
+                    throw new CompletionException("Failed to migrate " + chunk.size() + " players into shard " + shard, e);
+                }
+            }, workers).whenComplete((ignored, throwable) -> inFlight.release());
+        }
+
+        void finish() throws Exception {
+            for (int i = 0; i < shards.length; i++) {
+                if (!buffers.get(i).isEmpty()) {
+                    submit(i);
+                }
+            }
+            try {
+                CompletableFuture.allOf(tails).join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        void close() {
+            workers.shutdownNow();
+        }
+
+        long rate() {
+            double seconds = (System.nanoTime() - startNanos) / 1_000_000_000.0;
+            return seconds > 0 ? Math.round(imported.get() / seconds) : imported.get();
+        }
+
+        String elapsedSeconds() {
+            return String.format("%.1f", (System.nanoTime() - startNanos) / 1_000_000_000.0);
+        }
+    }
+
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws SQLException {
+        ensureInitialized();
+        for (SQLiteStorageBackend shard : shards) {
+            shard.forEachEntry(consumer);
+        }
+    }
+
+    @Override
+    public void forEachTimedEntry(TimedEntryConsumer consumer) throws SQLException {
+        ensureInitialized();
+        for (SQLiteStorageBackend shard : shards) {
+            shard.forEachTimedEntry(consumer);
+        }
+    }
+
+    /**
+     * Visit recently updated players of every shard. Players are spread evenly over the shards,
+     * so the most recent players of each shard together approximate the most recent overall.
+     * @param limit Maximum number of players to visit
+     */
+    public void forEachRecentEntry(int limit, BiConsumer<UUID, String> consumer) throws SQLException {
+        ensureInitialized();
+        int perShard = (limit + shards.length - 1) / shards.length;
+        for (SQLiteStorageBackend shard : shards) {
+            shard.forEachRecentEntry(perShard, consumer);
+        }
+    }
+
+    @Override
+    public boolean supportsRetention() {
+        return true;
+    }
+
+    /**
+     * Prune shard after shard until the limit is reached. Each call starts at the next shard,
+     * so one shard with many stale players does not hold back the others.
+     */
+    @Override
+    public int pruneOlderThan(long cutoffMillis, int limit, Consumer<UUID> pruned) throws SQLException {
+        ensureInitialized();
+        int start = Math.floorMod(pruneCursor.getAndIncrement(), shards.length);
+        int deleted = 0;
+        for (int i = 0; i < shards.length && deleted < limit; i++) {
+            deleted += shards[(start + i) % shards.length].pruneOlderThan(cutoffMillis, limit - deleted, pruned);
+        }
+        return deleted;
+    }
+
+    @Override
+    public long reclaimSpace(long maxMillis) throws SQLException {
+        ensureInitialized();
+        long start = System.currentTimeMillis();
+        long reclaimed = 0;
+        for (SQLiteStorageBackend shard : shards) {
+            long remaining = maxMillis - (System.currentTimeMillis() - start);
+            if (remaining <= 0) {
+                break;
+            }
+            reclaimed += shard.reclaimSpace(remaining);
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Read the shards one after the other, each through its own cursor.
+     */
+    @Override
+    public StorageCursor openCursor() {
+        ensureInitialized();
+        return new StorageCursor() {
+            private int shard = 0;
+            private StorageCursor current = shards[0].openCursor();
+
+            @Override
+            public boolean next() throws Exception {
+                if (shard == shards.length) {
+                    return false;
+                }
+                while (!current.next()) {
+                    current.close();
+                    if (++shard == shards.length) {
+                        return false;
+                    }
+                    current = shards[shard].openCursor();
+                }
+                return true;
+            }
+
+            @Override
+            public UUID playerUuid() {
+                return current.playerUuid();
+            }
+
+            @Override
+            public String serverName() {
+                return current.serverName();
+            }
+
+            @Override
+            public void close() {
+                current.close();
+            }
+        };
+    }
+
+    /**
+     * Copy every shard into a sqlite-shards directory inside the backup, one after the other.
+     * Each shard is a consistent snapshot of its own.
+     */
+    @Override
+    public List<File> backupTo(File directory) throws Exception {
+        ensureInitialized();
+        File shardBackup = new File(directory, SHARD_DIRECTORY);
+        Files.createDirectories(shardBackup.toPath());
+        List<File> files = new ArrayList<>(shards.length);
+        for (SQLiteStorageBackend shard : shards) {
+            files.addAll(shard.backupTo(shardBackup));
+        }
+        return files;
+    }
+
+    /**
+     * Get writer statistics summed over all shards.
+     */
+    @Override
+    public Map<String, Object> getStatistics() {
+        long queueDepth = 0;
+        long batches = 0;
+        long batchedWrites = 0;
+        long collapsedWrites = 0;
+        long failedBatches = 0;
+        long largestBatch = 0;
+        long busiestQueue = 0;
+        for (SQLiteStorageBackend shard : shards) {
+            Map<String, Object> shardStats = shard.getStatistics();
+            long depth = longValue(shardStats.get("queue_depth"));
+            queueDepth += depth;
+            busiestQueue = Math.max(busiestQueue, depth);
+            batches += longValue(shardStats.get("batches"));
+            batchedWrites += longValue(shardStats.get("batched_writes"));
+            collapsedWrites += longValue(shardStats.get("collapsed_writes"));
+            failedBatches += longValue(shardStats.get("failed_batches"));
+            largestBatch = Math.max(largestBatch, longValue(shardStats.get("largest_batch")));
+        }
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("shards", shards.length);
+        stats.put("profile", shards[0].getStatistics().get("profile"));
+        stats.put("queue_depth", queueDepth);
+        stats.put("busiest_queue_depth", busiestQueue);
+        stats.put("batches", batches);
+        stats.put("batched_writes", batchedWrites);
+        stats.put("collapsed_writes", collapsedWrites);
+        stats.put("average_batch_size", batches == 0 ? 0 : String.format("%.1f", (double) (batchedWrites - collapsedWrites) / batches));
+        stats.put("largest_batch", largestBatch);
+        stats.put("failed_batches", failedBatches);
+        return stats;
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number number ? number.longValue() : 0;
+    }
+
+    /**
+     * Get the total number of players over all shards.
+     */
+    public int getRecordCount() {
+        int count = 0;
+        for (SQLiteStorageBackend shard : shards) {
+            count += shard.getRecordCount();
+        }
+        return count;
+    }
+
+    /**
+     * Optimize every shard.
+     */
+    public void optimize() {
+        for (SQLiteStorageBackend shard : shards) {
+            shard.optimize();
+        }
+    }
+
+    /**
+     * Check whether shard files exist in the shard directory.
+     */
+    public boolean hasData() {
+        try {
+            return findShardCount(directory) > 0;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Check whether a migration into the shards was interrupted and should be started over.
+     */
+    public boolean hasIncompleteMigration() {
+        return new File(directory, MIGRATION_MARKER).exists();
+    }
+
+    /**
+     * Get the number of shards.
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Get the directory holding the shard files.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the database file of every shard.
+     */
+    public List<File> getDataFiles() {
+        List<File> files = new ArrayList<>(shards.length);
+        for (SQLiteStorageBackend shard : shards) {
+            files.add(shard.getDatabaseFile());
+        }
+        return files;
+    }
+
+    private void ensureInitialized() {
+        if (!initialized) {
+            throw new IllegalStateException("Storage backend has not been initialized");
+        }
+    }
+}
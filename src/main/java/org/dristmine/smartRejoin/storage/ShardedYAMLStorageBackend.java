@@ -0,0 +1,475 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.regex.Pattern;
+
+/**
+ * YAML storage split over 256 files in yaml-shards/, one for each first byte of the player UUID.
+ * A player's file is named after the first two characters of their UUID, from 00.yml to ff.yml,
+ * and has the same format as data.yml.
+ * <p>
+ * A write only marks its shard as dirty, and saving rewrites just the dirty shards, each through a
+ * temporary file and a rename like data.yml. Without write-behind every write saves the one shard
+ * it changed instead of every player. With write-behind the dirty shards are saved together on
+ * the flush interval. Shards are loaded in parallel at startup, on the common fork-join pool.
+ */
+public class ShardedYAMLStorageBackend implements StorageBackend {
+
+    public static final String SHARD_DIRECTORY = "yaml-shards";
+    private static final int SHARD_COUNT = 256;
+    private static final Pattern SHARD_FILE = Pattern.compile("[0-9a-f]{2}\\.yml");
+    // Present while data is migrated into the shards, so an interrupted migration is started over
+    private static final String MIGRATION_MARKER = "migration.pending";
+    // Each shard holds about 1/256 of the players, so a few lock stripes are enough
+    private static final int SHARD_SEGMENTS = 4;
+
+    private final Logger logger;
+    private final File directory;
+    private final Yaml yaml;
+    private final PlayerServerMap[] shards = new PlayerServerMap[SHARD_COUNT];
+    private final AtomicIntegerArray dirty = new AtomicIntegerArray(SHARD_COUNT);
+    private final Object[] saveLocks = new Object[SHARD_COUNT];
+    private volatile boolean loaded = false;
+
+    // Write-behind settings
+    private final boolean writeBehind;
+    private final long flushIntervalMillis;
+    private final int maxPendingWrites;
+
+    // Write-behind state; set to null by shutdown, so writers read it once
+    private volatile ScheduledExecutorService flushExecutor = null;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    // Counters
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong coalescedWrites = new AtomicLong();
+    private final AtomicLong shardSaves = new AtomicLong();
+    private volatile int lastFlushShards = 0;
+
+    /**
+     * @param writeBehind Whether to save in the background instead of on every write
+     * @param flushIntervalMillis How often dirty shards are saved in write-behind mode
+     * @param maxPendingWrites Number of pending writes that triggers an immediate flush in write-behind mode
+     */
+    public ShardedYAMLStorageBackend(Logger logger, Path dataDirectory, boolean writeBehind, long flushIntervalMillis, int maxPendingWrites) {
+        this.logger = logger;
+        this.directory = dataDirectory.resolve(SHARD_DIRECTORY).toFile();
+        this.yaml = YAMLStorageBackend.createYaml();
+        this.writeBehind = writeBehind;
+        this.flushIntervalMillis = Math.max(100, flushIntervalMillis);
+        this.maxPendingWrites = Math.max(1, maxPendingWrites);
+
+        // One server name table for all shards, so each server name is stored once
+        ServerNameTable serverNames = new ServerNameTable();
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            shards[i] = new PlayerServerMap(serverNames, SHARD_SEGMENTS);
+            saveLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Get the shard of a player: the first byte of the UUID, which is also the start of its text form.
+     */
+    private static int shardOf(UUID playerUuid) {
+        return (int) (playerUuid.getMostSignificantBits() >>> 56);
+    }
+
+    private File shardFile(int shard) {
+        return new File(directory, String.format("%02x.yml", shard));
+    }
+
+    @Override
+    public void setLastServer(UUID playerUuid, String serverName) {
+        int shard = shardOf(playerUuid);
+        shards[shard].put(playerUuid, serverName);
+        dirty.set(shard, 1);
+
+        ScheduledExecutorService executor = flushExecutor;
+        if (executor == null) {
+            saveShard(shard);
+            return;
+        }
+
+        // Write-behind: only mark dirty, and wake the writer early if too many writes are pending
+        if (pendingWrites.incrementAndGet() >= maxPendingWrites && flushQueued.compareAndSet(false, true)) {
+            queueFlush(executor);
+        }
+    }
+
+    /**
+     * Store every player first and then save each shard they touched once.
+     */
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        if (lastServers.isEmpty()) {
+            return;
+        }
+        lastServers.forEach((playerUuid, serverName) -> {
+            int shard = shardOf(playerUuid);
+            shards[shard].put(playerUuid, serverName);
+            dirty.set(shard, 1);
+        });
+
+        ScheduledExecutorService executor = flushExecutor;
+        if (executor == null) {
+            saveDirtyShards();
+            return;
+        }
+
+        if (pendingWrites.addAndGet(lastServers.size()) >= maxPendingWrites && flushQueued.compareAndSet(false, true)) {
+            queueFlush(executor);
+        }
+    }
+
+    /**
+     * Wake the writer, or flush on the calling thread if the writer is shutting down.
+     */
+    private void queueFlush(ScheduledExecutorService executor) {
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            flush();
+        }
+    }
+
+    @Override
+    public Optional<String> getLastServer(UUID playerUuid) {
+        return Optional.ofNullable(shards[shardOf(playerUuid)].get(playerUuid));
+    }
+
+    @Override
+    public CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid, Executor executor) {
+        // Served from memory, no need to hop threads
+        return CompletableFuture.completedFuture(getLastServer(playerUuid));
+    }
+
+    @Override
+    public void initialize() throws Exception {
+        if (!loaded) {
+            Files.createDirectories(directory.toPath());
+            loadShards();
+            loaded = true;
+        }
+
+        if (writeBehind && flushExecutor == null) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "SmartRejoin-YAML-Writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            flushExecutor = executor;
+            logger.info("YAML write-behind enabled (flush every " + flushIntervalMillis + "ms or " + maxPendingWrites + " pending writes).");
+        }
+    }
+
+    /**
+     * Parse the shard files in parallel, each with its own parser.
+     * A shard that cannot be read is moved aside, so saving it again does not overwrite the data.
+     */
+    private void loadShards() {
+        File[] files = directory.listFiles((dir, name) -> SHARD_FILE.matcher(name).matches());
+        if (files == null || files.length == 0) {
+            logger.info("No YAML shards found in " + directory.getName() + ". New ones will be created.");
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        // The common pool is bounded by the processor count, and the calling thread helps
+        Arrays.stream(files).parallel().forEach(this::loadShard);
+
+        logger.info("Successfully loaded " + size() + " player data entries from " + files.length + " YAML shards in "
+                + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    /**
+     * Load one shard file. Its players are only stored once the whole file has been read, so a file
+     * that fails partway adds no players that the next save would write back without the rest.
+     */
+    private void loadShard(File file) {
+        int fileShard = Integer.parseInt(file.getName().substring(0, 2), 16);
+        List<UUID> players = new ArrayList<>();
+        List<String> servers = new ArrayList<>();
+        try {
+            YAMLStorageBackend.streamFile(YAMLStorageBackend.createYaml(), logger, file, (playerUuid, serverName) -> {
+                players.add(playerUuid);
+                servers.add(serverName);
+            });
+        } catch (Exception e) {
+            File broken = new File(file.getPath() + ".broken");
+            logger.error("Could not load YAML shard " + file.getName() + ". Its players are unavailable; the file is kept as "
+                    + broken.getName() + ".", e);
+            if (!file.renameTo(broken)) {
+                logger.error("Could not rename " + file.getName() + ". Fix or remove it by hand before it is overwritten.");
+            }
+            return;
+        }
+
+        for (int i = 0; i < players.size(); i++) {
+            UUID playerUuid = players.get(i);
+            int shard = shardOf(playerUuid);
+            shards[shard].put(playerUuid, servers.get(i));
+            if (shard != fileShard) {
+                // Moved here by hand; both files are rewritten with the player in the right one
+                dirty.set(shard, 1);
+                dirty.set(fileShard, 1);
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (!loaded) {
+            // Never initialized, for example when only streamed as a migration source
+            return;
+        }
+        ScheduledExecutorService executor = flushExecutor;
+        if (executor == null) {
+            saveDirtyShards();
+            return;
+        }
+
+        // Writes from here on save synchronously
+        flushExecutor = null;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("YAML writer did not stop in time. Forcing final save.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Force out anything written since the last background flush
+        flush();
+        saveDirtyShards();
+        logger.info("YAML storage flushed " + flushCount.get() + " times, coalescing " + coalescedWrites.get()
+                + " writes into " + shardSaves.get() + " shard saves.");
+    }
+
+    /**
+     * Save the dirty shards. Runs on the writer thread in write-behind mode.
+     */
+    private void flush() {
+        flushQueued.set(false);
+        int pending = pendingWrites.getAndSet(0);
+        if (pending == 0) {
+            return;
+        }
+
+        long savesBefore = shardSaves.get();
+        if (saveDirtyShards()) {
+            flushCount.incrementAndGet();
+            coalescedWrites.addAndGet(pending);
+            lastFlushShards = (int) (shardSaves.get() - savesBefore);
+        } else {
+            // Failed shards stay dirty; keep the writes pending so the next flush retries them
+            pendingWrites.addAndGet(pending);
+        }
+    }
+
+    /**
+     * @return true if every dirty shard was saved
+     */
+    private boolean saveDirtyShards() {
+        boolean saved = true;
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            if (dirty.get(shard) != 0) {
+                saved &= saveShard(shard);
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Rewrite one shard file if it has changed since it was last saved.
+     * The dirty flag is cleared before the entries are read, so a write made during the save
+     * marks the shard dirty again and is picked up by the next save.
+     */
+    private boolean saveShard(int shard) {
+        synchronized (saveLocks[shard]) {
+            if (dirty.getAndSet(shard, 0) == 0) {
+                return true;
+            }
+            try {
+                YAMLStorageBackend.writeFile(shardFile(shard), shards[shard]);
+                shardSaves.incrementAndGet();
+                return true;
+            } catch (IOException e) {
+                dirty.set(shard, 1);
+                logger.error("Could not save YAML shard " + shardFile(shard).getName() + ".", e);
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public String getBackendName() {
+        return "YAML (sharded)";
+    }
+
+    @Override
+    public boolean isMemoryResident() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsMigration() {
+        return true;
+    }
+
+    /**
+     * Copy every entry of the source into memory and save each shard once at the end.
+     */
+    @Override
+    public int migrateFrom(StorageBackend source, MigrationCallback callback) throws Exception {
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot migrate from the same backend");
+        }
+
+        logger.info("Starting migration from " + source.getBackendName() + " to sharded YAML...");
+        callback.onProgress(0, 0, "Starting migration...");
+
+        Files.createDirectories(directory.toPath());
+        Path marker = directory.toPath().resolve(MIGRATION_MARKER);
+        Files.writeString(marker, source.getBackendName());
+
+        int[] count = {0};
+        source.forEachEntry((uuid, server) -> {
+            int shard = shardOf(uuid);
+            shards[shard].put(uuid, server);
+            dirty.set(shard, 1);
+            count[0]++;
+            if (count[0] % 10000 == 0) {
+                callback.onProgress(count[0], 0, "Migrated " + count[0] + " players...");
+            }
+        });
+        if (!saveDirtyShards()) {
+            throw new IOException("Could not save migrated players to " + directory.getName());
+        }
+        Files.deleteIfExists(marker);
+
+        logger.info("Migration completed successfully: " + count[0] + " players migrated.");
+        callback.onProgress(count[0], count[0], "Migration completed: " + count[0] + " players.");
+        return count[0];
+    }
+
+    /**
+     * Visit every entry. Before this backend is initialized, entries are streamed straight
+     * from the shard files, so migrating away never loads every shard into memory.
+     */
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws Exception {
+        if (loaded) {
+            for (PlayerServerMap shard : shards) {
+                shard.forEach(consumer);
+            }
+            return;
+        }
+        for (File file : getDataFiles()) {
+            YAMLStorageBackend.streamFile(yaml, logger, file, consumer::accept);
+        }
+    }
+
+    /**
+     * Get the number of players over all shards.
+     */
+    public int size() {
+        int size = 0;
+        for (PlayerServerMap shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Check whether shard files exist.
+     */
+    public boolean hasData() {
+        return !getDataFiles().isEmpty();
+    }
+
+    /**
+     * Check whether shard files exist in a plugin data directory, without creating the backend.
+     */
+    public static boolean hasData(Path dataDirectory) {
+        String[] files = dataDirectory.resolve(SHARD_DIRECTORY).toFile().list((dir, name) -> SHARD_FILE.matcher(name).matches());
+        return files != null && files.length > 0;
+    }
+
+    /**
+     * Check whether a migration into the shards was interrupted and should be started over.
+     */
+    public boolean hasIncompleteMigration() {
+        return new File(directory, MIGRATION_MARKER).exists();
+    }
+
+    /**
+     * Check whether a migration into the shards of a plugin data directory was interrupted, without creating the backend.
+     */
+    public static boolean hasIncompleteMigration(Path dataDirectory) {
+        return dataDirectory.resolve(SHARD_DIRECTORY).resolve(MIGRATION_MARKER).toFile().exists();
+    }
+
+    /**
+     * Get the existing shard files, in shard order.
+     */
+    public List<File> getDataFiles() {
+        File[] files = directory.listFiles((dir, name) -> SHARD_FILE.matcher(name).matches());
+        if (files == null) {
+            return List.of();
+        }
+        Arrays.sort(files);
+        return List.of(files);
+    }
+
+    /**
+     * Get the directory holding the shard files.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        int dirtyShards = 0;
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            dirtyShards += dirty.get(i);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", size());
+        stats.put("write_behind", flushExecutor != null);
+        stats.put("pending_writes", pendingWrites.get());
+        stats.put("dirty_shards", dirtyShards);
+        stats.put("flushes", flushCount.get());
+        stats.put("coalesced_writes", coalescedWrites.get());
+        stats.put("shard_saves", shardSaves.get());
+        stats.put("last_flush_shards", lastFlushShards);
+        return stats;
+    }
+}
@@ -0,0 +1,61 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prepared statements of one connection, each prepared on first use and then kept open.
+ * <p>
+ * Saves SQLite from parsing and planning the same SQL for every lookup and batch. A statement
+ * holds its parameters, so a statement used by several threads must be locked while its parameters
+ * are set and its results are read. Statements are closed with the cache and never by callers.
+ */
+final class StatementCache implements AutoCloseable {
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new ConcurrentHashMap<>();
+
+    StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Get the statement for some SQL, preparing it if this is its first use.
+     */
+    PreparedStatement get(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt != null) {
+            return stmt;
+        }
+        synchronized (this) {
+            stmt = statements.get(sql);
+            if (stmt == null) {
+                stmt = connection.prepareStatement(sql);
+                statements.put(sql, stmt);
+            }
+            return stmt;
+        }
+    }
+
+    /**
+     * Get the number of statements kept open.
+     */
+    int size() {
+        return statements.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException ignored) {
+                // The connection is closed next, which releases the statement anyway
+            }
+        }
+        statements.clear();
+    }
+}
@@ -1,7 +1,17 @@
 package org.dristmine.smartRejoin.storage;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
  * Interface for storage backends that handle player data persistence.
@@ -23,6 +33,55 @@ public interface StorageBackend {
      */
     Optional<String> getLastServer(UUID playerUuid);
 
+    /**
+     * Set the last servers of many players at once.
+     * The default implementation calls {@link #setLastServer(UUID, String)} for each player;
+     * backends override it to save the whole group in one write.
+     * @param lastServers Server name by player UUID
+     */
+    default void setLastServers(Map<UUID, String> lastServers) {
+        lastServers.forEach(this::setLastServer);
+    }
+
+    /**
+     * Get the last servers of many players at once.
+     * The default implementation calls {@link #getLastServer(UUID)} for each player;
+     * backends override it to look the whole group up in as few queries as possible.
+     * @param playerUuids The players to look up
+     * @return Server name by player UUID, containing only players that were found
+     */
+    default Map<UUID, String> getLastServers(Collection<UUID> playerUuids) {
+        Map<UUID, String> lastServers = new HashMap<>();
+        for (UUID playerUuid : playerUuids) {
+            getLastServer(playerUuid).ifPresent(serverName -> lastServers.put(playerUuid, serverName));
+        }
+        return lastServers;
+    }
+
+    /**
+     * Asynchronously set the last server a player was on.
+     * The default implementation runs {@link #setLastServer(UUID, String)} on the given executor.
+     * @param playerUuid The player's UUID
+     * @param serverName The server name
+     * @param executor The executor to run blocking I/O on
+     * @return Future completed once the write has been handed to the backend
+     */
+    default CompletableFuture<Void> setLastServerAsync(UUID playerUuid, String serverName, Executor executor) {
+        return CompletableFuture.runAsync(() -> setLastServer(playerUuid, serverName), executor);
+    }
+
+    /**
+     * Asynchronously get the last server a player was on.
+     * The default implementation runs {@link #getLastServer(UUID)} on the given executor.
+     * Backends that answer from memory should override this to complete immediately.
+     * @param playerUuid The player's UUID
+     * @param executor The executor to run blocking I/O on
+     * @return Future containing the server name, or empty if not found
+     */
+    default CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getLastServer(playerUuid), executor);
+    }
+
     /**
      * Initialize the storage backend.
      * This is called once when the plugin starts up.
@@ -30,6 +89,16 @@ public interface StorageBackend {
      */
     void initialize() throws Exception;
 
+    /**
+     * Get a future completed once the data of this backend is loaded. Backends that load in the
+     * background return from {@link #initialize()} early; until the future completes, lookups only
+     * see the players loaded so far and writes made meanwhile.
+     * @return Future completed once every stored player can be found
+     */
+    default CompletableFuture<Void> whenLoaded() {
+        return CompletableFuture.completedFuture(null);
+    }
+
     /**
      * Shutdown the storage backend.
      * This is called when the plugin is disabled.
@@ -43,6 +112,24 @@ public interface StorageBackend {
      */
     String getBackendName();
 
+    /**
+     * Check whether this backend answers reads from memory.
+     * A read cache in front of such a backend would only duplicate data.
+     * @return true if reads never touch disk or network
+     */
+    default boolean isMemoryResident() {
+        return false;
+    }
+
+    /**
+     * Check whether other proxies may write to the same storage.
+     * Values read from such a backend can go stale and must not be cached indefinitely.
+     * @return true if the data is shared with other proxies
+     */
+    default boolean isSharedAcrossProxies() {
+        return false;
+    }
+
     /**
      * Check if this backend supports data migration from another backend.
      * @return true if migration is supported
@@ -58,6 +145,110 @@ public interface StorageBackend {
      */
     int migrateFrom(StorageBackend source, MigrationCallback callback) throws Exception;
 
+    /**
+     * Visit every stored player entry.
+     * Used as the data source when migrating to another backend.
+     * @param consumer Receives each player UUID and server name
+     * @throws Exception if reading fails
+     */
+    default void forEachEntry(BiConsumer<UUID, String> consumer) throws Exception {
+        throw new UnsupportedOperationException(getBackendName() + " backend does not support iterating entries");
+    }
+
+    /**
+     * Visit every stored player together with when it was last updated.
+     * Used by migrations into backends that keep update times.
+     * The default implementation reports 0, for an unknown time, through {@link #forEachEntry}.
+     * @param consumer Receives each player UUID, server name and update time in epoch milliseconds
+     * @throws Exception if reading fails
+     */
+    default void forEachTimedEntry(TimedEntryConsumer consumer) throws Exception {
+        forEachEntry((playerUuid, serverName) -> consumer.accept(playerUuid, serverName, 0));
+    }
+
+    /**
+     * Open a cursor over every stored player, for reading millions of players without holding them all.
+     * The default implementation walks {@link #forEachEntry} on a background thread that stays a few
+     * chunks ahead of the reader; backends override it to read in chunks themselves.
+     * @return A cursor, which the caller must close
+     * @throws Exception if the cursor cannot be opened
+     */
+    default StorageCursor openCursor() throws Exception {
+        return new ForEachCursor(this);
+    }
+
+    /**
+     * Check whether this backend records when each player was last updated,
+     * which is required to prune players that have not been seen for a while.
+     * @return true if {@link #pruneOlderThan(long, int, Consumer)} is supported
+     */
+    default boolean supportsRetention() {
+        return false;
+    }
+
+    /**
+     * Delete players that were last updated before the cutoff, at most {@code limit} at a time.
+     * Called repeatedly in small batches, so each call should hold locks only briefly.
+     * @param cutoffMillis Players last updated before this epoch millisecond are deleted
+     * @param limit Maximum number of players to delete in this call
+     * @param pruned Receives each deleted player, so caches in front of the backend can drop it
+     * @return The number of players deleted; fewer than the limit means none are left
+     * @throws Exception if deleting fails
+     */
+    default int pruneOlderThan(long cutoffMillis, int limit, Consumer<UUID> pruned) throws Exception {
+        throw new UnsupportedOperationException(getBackendName() + " backend does not support retention");
+    }
+
+    /**
+     * Give space freed by deleted players back to the file system.
+     * @param maxMillis Maximum time to spend
+     * @return The number of bytes reclaimed
+     * @throws Exception if reclaiming fails
+     */
+    default long reclaimSpace(long maxMillis) throws Exception {
+        return 0;
+    }
+
+    /**
+     * Write a copy of every stored player into a directory while the backend stays in use.
+     * The default implementation writes a data.yml on the calling thread. A memory-resident backend
+     * is copied in one pass first, so the backup holds each player once, as of one moment. Other
+     * backends are streamed from {@link #openCursor()}, so a large or shared store is never held in
+     * memory. Any backend migrates from a data.yml found on startup, which makes the copy restorable everywhere.
+     * @param directory Existing, empty directory to write the copy into
+     * @return The files written
+     * @throws Exception if reading or writing fails
+     */
+    default List<File> backupTo(File directory) throws Exception {
+        File file = new File(directory, YAMLStorageBackend.DATA_FILE);
+        if (isMemoryResident()) {
+            PlayerServerMap snapshot = new PlayerServerMap();
+            forEachEntry(snapshot::put);
+            YAMLStorageBackend.writeFile(file, snapshot);
+        } else {
+            try (StorageCursor cursor = openCursor()) {
+                YAMLStorageBackend.writeFile(file, cursor);
+            }
+        }
+        return List.of(file);
+    }
+
+    /**
+     * Get runtime statistics for this backend, such as counters and queue sizes.
+     * @return Ordered map of statistic name to value, empty if the backend has none
+     */
+    default Map<String, Object> getStatistics() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Receives a stored player together with when it was last updated, 0 if unknown.
+     */
+    @FunctionalInterface
+    interface TimedEntryConsumer {
+        void accept(UUID playerUuid, String serverName, long updatedAt);
+    }
+
     /**
      * Callback interface for migration progress reporting.
      */
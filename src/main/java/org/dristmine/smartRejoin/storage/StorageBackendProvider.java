@@ -0,0 +1,37 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Adds a storage backend that is not built into SmartRejoin. Its type selects it in storage.type.
+ * <p>
+ * Providers are found with {@link java.util.ServiceLoader}. Ship the provider in a jar that lists it in
+ * {@code META-INF/services/org.dristmine.smartRejoin.storage.StorageBackendProvider}, and place the jar
+ * in the plugin's backends/ folder. Providers need a public no-argument constructor.
+ * <p>
+ * Only the provider of the configured type is asked for a backend, so installed providers cost
+ * little more than loading their class. Keep heavy classes, like drivers, out of the provider itself.
+ */
+public interface StorageBackendProvider {
+
+    /**
+     * Get the storage type that selects this backend, matched without regard to case.
+     * Built-in types cannot be replaced.
+     */
+    String getType();
+
+    /**
+     * Create a new, uninitialized backend. SmartRejoin calls {@link StorageBackend#initialize()} on it.
+     */
+    StorageBackend create(Context context) throws Exception;
+
+    /**
+     * @param dataDirectory The plugin folder, for backends that keep files
+     * @param options The storage.&lt;type&gt; section of config.yml, empty if there is none
+     */
+    record Context(Logger logger, Path dataDirectory, Map<String, Object> options) {
+    }
+}
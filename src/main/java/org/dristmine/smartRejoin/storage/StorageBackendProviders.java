@@ -0,0 +1,149 @@
+package org.dristmine.smartRejoin.storage;
+
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link StorageBackendProvider}s found in the plugin jar and in the jars of the backends/ folder.
+ * <p>
+ * Each provider is instantiated once to learn its type. The backends themselves are only created
+ * for the configured type, so the classes of other backends are never loaded.
+ * <p>
+ * Built-in types, such as 'sqlite', are only taken from providers in the plugin jar. The jars of
+ * the backends/ folder also serve JDBC drivers, such as the SQLite driver.
+ */
+public final class StorageBackendProviders implements AutoCloseable {
+
+    public static final String BACKENDS_DIRECTORY = "backends";
+
+    private final Logger logger;
+    private final Map<String, StorageBackendProvider> providers = new TreeMap<>();
+    private final Set<String> builtInTypes = new HashSet<>();
+    private final Map<Class<?>, String> createdTypes = new ConcurrentHashMap<>();
+    private URLClassLoader jarLoader = null;
+
+    /**
+     * @param parent The plugin's class loader
+     * @param reservedTypes Types of the built-in backends, which only providers in the plugin jar can take
+     */
+    public StorageBackendProviders(Logger logger, Path dataDirectory, ClassLoader parent, Collection<String> reservedTypes) {
+        this.logger = logger;
+
+        ClassLoader loader = parent;
+        URL[] jars = findJars(dataDirectory.resolve(BACKENDS_DIRECTORY).toFile());
+        if (jars.length > 0) {
+            jarLoader = new URLClassLoader(jars, parent);
+            loader = jarLoader;
+            JdbcDrivers.setBackendsLoader(jarLoader);
+        }
+
+        ServiceLoader<StorageBackendProvider> serviceLoader = ServiceLoader.load(StorageBackendProvider.class, loader);
+        for (ServiceLoader.Provider<StorageBackendProvider> candidate : serviceLoader.stream().toList()) {
+            try {
+                StorageBackendProvider provider = candidate.get();
+                String type = provider.getType().toLowerCase();
+                boolean builtIn = candidate.type().getClassLoader() == parent;
+                if (reservedTypes.contains(type) && !builtIn) {
+                    logger.warn("Ignoring storage backend provider " + candidate.type().getName() + ": '" + type + "' is a built-in storage type.");
+                } else if (providers.putIfAbsent(type, provider) != null) {
+                    logger.warn("Ignoring storage backend provider " + candidate.type().getName() + ": another provider already has type '" + type + "'.");
+                } else if (reservedTypes.contains(type)) {
+                    builtInTypes.add(type);
+                }
+            } catch (ServiceConfigurationError | RuntimeException e) {
+                logger.warn("Could not load a storage backend provider: " + e.getMessage());
+            }
+        }
+        if (!getTypes().isEmpty()) {
+            logger.info("Storage backend providers found: " + String.join(", ", getTypes()));
+        }
+    }
+
+    private URL[] findJars(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".jar"));
+        if (files == null) {
+            return new URL[0];
+        }
+        Arrays.sort(files);
+        List<URL> urls = new ArrayList<>();
+        for (File file : files) {
+            try {
+                urls.add(file.toURI().toURL());
+            } catch (MalformedURLException e) {
+                logger.warn("Skipping " + BACKENDS_DIRECTORY + "/" + file.getName() + ": " + e.getMessage());
+            }
+        }
+        return urls.toArray(URL[]::new);
+    }
+
+    /**
+     * Get the provider of a storage type, or null if no provider has it.
+     */
+    public StorageBackendProvider get(String type) {
+        return type == null ? null : providers.get(type.toLowerCase());
+    }
+
+    /**
+     * Get the storage types of the providers outside the plugin, sorted.
+     */
+    public Collection<String> getTypes() {
+        List<String> types = new ArrayList<>(providers.keySet());
+        types.removeAll(builtInTypes);
+        return types;
+    }
+
+    /**
+     * Create a new, uninitialized backend of a provided storage type.
+     * @throws IllegalArgumentException if no provider has the type
+     */
+    public StorageBackend create(String type, StorageBackendProvider.Context context) throws Exception {
+        StorageBackendProvider provider = get(type);
+        if (provider == null) {
+            throw new IllegalArgumentException("No storage backend provider has type '" + type + "'");
+        }
+        StorageBackend backend = provider.create(context);
+        createdTypes.put(backend.getClass(), type.toLowerCase());
+        return backend;
+    }
+
+    /**
+     * Get the type of a backend created by {@link #create}.
+     * @return The type, or null if the backend does not come from a provider
+     */
+    public String typeOf(StorageBackend backend) {
+        return createdTypes.get(backend.getClass());
+    }
+
+    /**
+     * Close the jars of the backends/ folder. Call only once no provided backend is in use.
+     */
+    @Override
+    public void close() {
+        if (jarLoader != null) {
+            JdbcDrivers.setBackendsLoader(null);
+            try {
+                jarLoader.close();
+            } catch (IOException e) {
+                logger.warn("Could not close the jars in " + BACKENDS_DIRECTORY + "/: " + e.getMessage());
+            }
+            jarLoader = null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.util.UUID;
+
+/**
+ * Reads the stored players of a backend one at a time, opened with {@link StorageBackend#openCursor()}.
+ * <p>
+ * A cursor holds at most a chunk of players in memory and does not keep the backend locked
+ * between chunks, so it can walk millions of players while the backend stays in use. Players
+ * written while the cursor is open may or may not be seen.
+ * <pre>
+ * try (StorageCursor cursor = backend.openCursor()) {
+ *     while (cursor.next()) {
+ *         use(cursor.playerUuid(), cursor.serverName());
+ *     }
+ * }
+ * </pre>
+ */
+public interface StorageCursor extends AutoCloseable {
+
+    /**
+     * Move to the next player.
+     * @return false once every player has been read
+     * @throws Exception if reading fails
+     */
+    boolean next() throws Exception;
+
+    /**
+     * Get the UUID of the current player.
+     */
+    UUID playerUuid();
+
+    /**
+     * Get the last server of the current player.
+     */
+    String serverName();
+
+    /**
+     * Release the cursor. Safe to call before every player has been read.
+     */
+    @Override
+    void close();
+}
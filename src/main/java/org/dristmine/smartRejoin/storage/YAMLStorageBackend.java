@@ -1,45 +1,179 @@
 package org.dristmine.smartRejoin.storage;
 
 import org.slf4j.Logger;
-import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.LoaderOptions;
 import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 /**
  * YAML-based storage backend for player data.
  * Reads from and writes to data.yml file.
+ * <p>
+ * In write-behind mode, writes only mark the data as dirty. A background thread
+ * rewrites data.yml on a fixed interval, or as soon as enough writes are pending,
+ * so a burst of logins results in a single save instead of one save per player.
+ * <p>
+ * Entries are held in a {@link PlayerServerMap}, so the whole data set stays resident
+ * at roughly a fifth of the heap a map of UUID and String objects would need.
+ * <p>
+ * data.yml is read with SnakeYAML's event parser, one entry at a time, so neither loading
+ * nor migrating to another backend ever builds an intermediate map of the whole file.
+ * A file in the layout this backend writes is loaded in parallel chunks instead.
+ * <p>
+ * With async loading, {@link #initialize()} returns at once and data.yml is loaded in the background.
+ * Writes made meanwhile are kept over the loaded values, and data.yml is not saved until the load
+ * has finished, so a partly loaded map never overwrites it.
  */
 public class YAMLStorageBackend implements StorageBackend {
 
+    public static final String DATA_FILE = "data.yml";
+
     private final Logger logger;
     private final File dataFile;
     private final Yaml yaml;
-    private final Map<UUID, String> lastServerMap = new ConcurrentHashMap<>();
+    // Also keeps when each player was last set while the proxy runs; data.yml itself has no times
+    private final PlayerServerMap lastServerMap = new PlayerServerMap(true);
     private final ReentrantLock fileLock = new ReentrantLock();
+    private volatile boolean loaded = false;
+    private final boolean asyncLoad;
+    private volatile CompletableFuture<Void> loadFuture = CompletableFuture.completedFuture(null);
+    // Set when a save was held back because the data was still loading; guarded by fileLock
+    private boolean saveAfterLoad = false;
+    private volatile long loadMillis = 0;
+
+    // Write-behind settings
+    private final boolean writeBehind;
+    private final long flushIntervalMillis;
+    private final int maxPendingWrites;
+
+    // Write-behind state; set to null by shutdown, so writers read it once
+    private volatile ScheduledExecutorService flushExecutor = null;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+
+    // Counters
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong coalescedWrites = new AtomicLong();
+    private volatile int lastFlushCoalesced = 0;
 
     public YAMLStorageBackend(Logger logger, Path dataDirectory) {
+        this(logger, dataDirectory, false, 5000, 1000);
+    }
+
+    /**
+     * @param writeBehind Whether to save in the background instead of on every write
+     * @param flushIntervalMillis How often pending writes are flushed in write-behind mode
+     * @param maxPendingWrites Number of pending writes that triggers an immediate flush in write-behind mode
+     */
+    public YAMLStorageBackend(Logger logger, Path dataDirectory, boolean writeBehind, long flushIntervalMillis, int maxPendingWrites) {
+        this(logger, dataDirectory, writeBehind, flushIntervalMillis, maxPendingWrites, false);
+    }
+
+    /**
+     * @param asyncLoad Whether {@link #initialize()} loads data.yml in the background instead of before returning
+     */
+    public YAMLStorageBackend(Logger logger, Path dataDirectory, boolean writeBehind, long flushIntervalMillis, int maxPendingWrites,
+                              boolean asyncLoad) {
         this.logger = logger;
-        this.dataFile = new File(dataDirectory.toFile(), "data.yml");
+        this.asyncLoad = asyncLoad;
+        this.dataFile = new File(dataDirectory.toFile(), DATA_FILE);
+        this.writeBehind = writeBehind;
+        this.flushIntervalMillis = Math.max(100, flushIntervalMillis);
+        this.maxPendingWrites = Math.max(1, maxPendingWrites);
 
-        DumperOptions options = new DumperOptions();
-        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-        this.yaml = new Yaml(options);
+        this.yaml = createYaml();
+    }
+
+    /**
+     * Create a parser for player data files. Parsers are not thread-safe, so each thread needs its own.
+     */
+    static Yaml createYaml() {
+        // data.yml holds one line per player, so lift SnakeYAML's 3 MB default document limit
+        LoaderOptions options = new LoaderOptions();
+        options.setCodePointLimit(Integer.MAX_VALUE);
+        return new Yaml(options);
+    }
+
+    /**
+     * Receives entries streamed from data.yml.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(UUID playerUuid, String serverName) throws Exception;
     }
 
     @Override
     public void setLastServer(UUID playerUuid, String serverName) {
-        lastServerMap.put(playerUuid, serverName);
-        saveData();
+        lastServerMap.put(playerUuid, serverName, System.currentTimeMillis());
+
+        ScheduledExecutorService executor = flushExecutor;
+        if (executor == null) {
+            saveData();
+            return;
+        }
+
+        // Write-behind: only mark dirty, and wake the writer early if too many writes are pending
+        if (pendingWrites.incrementAndGet() >= maxPendingWrites && flushQueued.compareAndSet(false, true)) {
+            queueFlush(executor);
+        }
+    }
+
+    /**
+     * Store every player first and then save data.yml once, instead of once per player.
+     */
+    @Override
+    public void setLastServers(Map<UUID, String> lastServers) {
+        if (lastServers.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lastServers.forEach((playerUuid, serverName) -> lastServerMap.put(playerUuid, serverName, now));
+
+        ScheduledExecutorService executor = flushExecutor;
+        if (executor == null) {
+            saveData();
+            return;
+        }
+
+        if (pendingWrites.addAndGet(lastServers.size()) >= maxPendingWrites && flushQueued.compareAndSet(false, true)) {
+            queueFlush(executor);
+        }
+    }
+
+    /**
+     * Wake the writer, or flush on the calling thread if the writer is shutting down.
+     */
+    private void queueFlush(ScheduledExecutorService executor) {
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            flush();
+        }
     }
 
     @Override
@@ -47,14 +181,70 @@ public class YAMLStorageBackend implements StorageBackend {
         return Optional.ofNullable(lastServerMap.get(playerUuid));
     }
 
+    @Override
+    public CompletableFuture<Optional<String>> getLastServerAsync(UUID playerUuid, Executor executor) {
+        // Served from memory, no need to hop threads
+        return CompletableFuture.completedFuture(getLastServer(playerUuid));
+    }
+
     @Override
     public void initialize() throws Exception {
-        loadData();
+        if (!loaded && loadFuture.isDone()) {
+            if (asyncLoad && dataFile.exists()) {
+                startLoad();
+            } else {
+                loadData();
+                loaded = true;
+            }
+        }
+
+        if (writeBehind && flushExecutor == null) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "SmartRejoin-YAML-Writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            flushExecutor = executor;
+            logger.info("YAML write-behind enabled (flush every " + flushIntervalMillis + "ms or " + maxPendingWrites + " pending writes).");
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> whenLoaded() {
+        return loadFuture;
     }
 
     @Override
     public void shutdown() {
-        saveData();
+        if (!loadFuture.isDone()) {
+            logger.info("Waiting for data.yml to finish loading before saving...");
+            loadFuture.join();
+        }
+        if (!loaded) {
+            // Never initialized, for example when only streamed as a migration source; saving would empty data.yml
+            return;
+        }
+        ScheduledExecutorService executor = flushExecutor;
+        if (executor == null) {
+            saveData();
+            return;
+        }
+
+        // Writes from here on save synchronously
+        flushExecutor = null;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("YAML writer did not stop in time. Forcing final save.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Force out anything written since the last background flush
+        flush();
+        logger.info("YAML storage flushed " + flushCount.get() + " times, coalescing " + coalescedWrites.get() + " writes.");
     }
 
     @Override
@@ -62,64 +252,336 @@ public class YAMLStorageBackend implements StorageBackend {
         return "YAML";
     }
 
+    @Override
+    public boolean isMemoryResident() {
+        return true;
+    }
+
     @Override
     public boolean supportsMigration() {
-        return false; // YAML is the source, not a destination for migration
+        return true;
     }
 
+    /**
+     * Copy every entry of the source into memory and write data.yml once at the end.
+     */
     @Override
     public int migrateFrom(StorageBackend source, MigrationCallback callback) throws Exception {
-        throw new UnsupportedOperationException("YAML backend does not support migration as destination");
+        if (source == this) {
+            throw new IllegalArgumentException("Cannot migrate from the same backend");
+        }
+
+        loadFuture.join();
+        logger.info("Starting migration from " + source.getBackendName() + " to YAML...");
+        callback.onProgress(0, 0, "Starting migration...");
+
+        int[] count = {0};
+        source.forEachTimedEntry((uuid, server, updatedAt) -> {
+            lastServerMap.put(uuid, server, updatedAt);
+            count[0]++;
+            if (count[0] % 10000 == 0) {
+                callback.onProgress(count[0], 0, "Migrated " + count[0] + " players...");
+            }
+        });
+        if (!saveData()) {
+            throw new IOException("Could not save migrated players to " + dataFile.getName());
+        }
+
+        logger.info("Migration completed successfully: " + count[0] + " players migrated.");
+        callback.onProgress(count[0], count[0], "Migration completed: " + count[0] + " players.");
+        return count[0];
     }
 
-    @SuppressWarnings("unchecked")
-    private void loadData() {
-        if (!dataFile.exists()) {
-            logger.info("Player data file (data.yml) not found. A new one will be created.");
-            return;
+    /**
+     * Visit every entry. Before this backend is initialized, entries are streamed straight
+     * from data.yml, so migrating away from YAML never loads the whole file into memory.
+     */
+    @Override
+    public void forEachEntry(BiConsumer<UUID, String> consumer) throws Exception {
+        loadFuture.join();
+        if (loaded) {
+            lastServerMap.forEach(consumer);
+        } else {
+            streamDataFile(consumer::accept);
         }
-        try (InputStream is = new FileInputStream(dataFile)) {
-            Map<String, String> rawData = yaml.load(is);
-            if (rawData != null) {
-                rawData.forEach((key, value) -> {
+    }
+
+    /**
+     * Visit every entry with the time it was last set since the proxy started, or by a migration.
+     * Players only loaded from data.yml report 0, since the file does not record times.
+     */
+    @Override
+    public void forEachTimedEntry(TimedEntryConsumer consumer) throws Exception {
+        loadFuture.join();
+        if (loaded) {
+            lastServerMap.forEach(consumer);
+        } else {
+            streamDataFile((playerUuid, serverName) -> consumer.accept(playerUuid, serverName, 0));
+        }
+    }
+
+    /**
+     * Check whether data.yml has been loaded into memory by {@link #initialize()}.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Parse data.yml event by event and hand each valid entry to the consumer, in file order.
+     * Entries with an invalid UUID or a non-text value are skipped.
+     * @return The number of entries passed to the consumer
+     */
+    public int streamDataFile(EntryConsumer consumer) throws Exception {
+        return streamFile(yaml, logger, dataFile, consumer);
+    }
+
+    /**
+     * Parse a player data file event by event, see {@link #streamDataFile(EntryConsumer)}.
+     */
+    static int streamFile(Yaml yaml, Logger logger, File file, EntryConsumer consumer) throws Exception {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            int depth = 0;
+            String key = null;
+            for (Event event : yaml.parse(reader)) {
+                if (event instanceof CollectionStartEvent) {
+                    if (depth == 1 && key != null) {
+                        logger.warn("Skipping non-text value in " + file.getName() + " for: " + key);
+                        key = null;
+                    }
+                    depth++;
+                } else if (event instanceof CollectionEndEvent) {
+                    depth--;
+                } else if (depth == 1 && event instanceof ScalarEvent scalar) {
+                    if (key == null) {
+                        key = scalar.getValue();
+                        continue;
+                    }
+
+                    String entryKey = key;
+                    key = null;
+                    String value = scalar.getValue();
+                    if (scalar.isPlain() && (value.isEmpty() || value.equals("~") || value.equalsIgnoreCase("null"))) {
+                        continue;
+                    }
+
+                    UUID playerUuid;
                     try {
-                        lastServerMap.put(UUID.fromString(key), value);
+                        playerUuid = UUID.fromString(entryKey);
                     } catch (IllegalArgumentException e) {
-                        logger.warn("Skipping invalid UUID in data.yml: " + key);
+                        logger.warn("Skipping invalid UUID in " + file.getName() + ": " + entryKey);
+                        continue;
                     }
-                });
+                    consumer.accept(playerUuid, value);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Load data.yml on a background thread. Saves wait until it is done.
+     */
+    private void startLoad() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        loadFuture = future;
+        Thread thread = new Thread(() -> {
+            boolean complete = false;
+            try {
+                complete = loadData();
+            } finally {
+                fileLock.lock();
+                try {
+                    loaded = true;
+                    future.complete(null);
+                    // After a failed load the map holds only part of data.yml, which must not replace it yet
+                    if (saveAfterLoad && complete) {
+                        saveAfterLoad = false;
+                        saveData();
+                    }
+                } finally {
+                    fileLock.unlock();
+                }
+            }
+        }, "SmartRejoin-YAML-Load");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Loading data.yml in the background.");
+    }
+
+    /**
+     * @return false if data.yml exists but could not be read completely
+     */
+    private boolean loadData() {
+        if (!dataFile.exists()) {
+            logger.info("Player data file (data.yml) not found. A new one will be created.");
+            return true;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            int parallelism = Math.min(8, Runtime.getRuntime().availableProcessors());
+            String method = "in parallel chunks";
+            if (YamlChunkLoader.load(dataFile, lastServerMap, parallelism) < 0) {
+                method = "with the YAML parser";
+                streamDataFile(lastServerMap::putIfAbsent);
             }
-            logger.info("Successfully loaded " + lastServerMap.size() + " player data entries.");
-        } catch (IOException | YAMLException e) {
+            loadMillis = System.currentTimeMillis() - start;
+            logger.info("Successfully loaded " + lastServerMap.size() + " player data entries " + method + " in " + loadMillis + "ms.");
+            return true;
+        } catch (Exception e) {
             logger.error("Could not load player data from data.yml.", e);
+            keepBrokenDataFile();
+            return false;
+        }
+    }
+
+    /**
+     * Keep a copy of a data.yml that could not be loaded, since the next save replaces it
+     * with only the players that were read.
+     */
+    private void keepBrokenDataFile() {
+        File broken = new File(dataFile.getPath() + ".broken");
+        try {
+            Files.copy(dataFile.toPath(), broken.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            logger.error("A copy of the unreadable data.yml was kept as " + broken.getName() + ".");
+        } catch (IOException e) {
+            logger.error("Could not copy the unreadable data.yml to " + broken.getName() + ". Back it up by hand before it is overwritten.", e);
         }
     }
 
-    private void saveData() {
+    /**
+     * Save all pending writes. Runs on the writer thread in write-behind mode.
+     */
+    private void flush() {
+        flushQueued.set(false);
+        int pending = pendingWrites.getAndSet(0);
+        if (pending == 0) {
+            return;
+        }
+
+        if (saveData()) {
+            flushCount.incrementAndGet();
+            coalescedWrites.addAndGet(pending);
+            lastFlushCoalesced = pending;
+        } else {
+            // Keep the writes pending so the next flush retries them
+            pendingWrites.addAndGet(pending);
+        }
+    }
+
+    private boolean saveData() {
         fileLock.lock();
         try {
-            // Write to a temporary file first, then rename for atomic operation
-            File tempFile = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
-            try (Writer writer = new FileWriter(tempFile)) {
-                // Convert UUID keys to String for YAML serialization
-                Map<String, String> dataToSave = new LinkedHashMap<>();
-                lastServerMap.forEach((uuid, server) -> dataToSave.put(uuid.toString(), server));
-                yaml.dump(dataToSave, writer);
-            }
-            // Atomic rename - on Windows, we need to delete target first
-            if (dataFile.exists()) {
-                dataFile.delete();
-            }
-            if (!tempFile.renameTo(dataFile)) {
-                throw new IOException("Failed to rename temporary file to " + dataFile.getAbsolutePath());
+            if (!loadFuture.isDone()) {
+                // Saving now would drop the players not loaded yet; the load saves once it is done
+                saveAfterLoad = true;
+                return false;
             }
+            writeFile(dataFile, lastServerMap);
+            return true;
         } catch (IOException e) {
             logger.error("Could not save player data to data.yml.", e);
+            return false;
         } finally {
             fileLock.unlock();
         }
     }
 
+    /**
+     * Write every entry of a map to a player data file.
+     * The entries go to a temporary file first, which then replaces the file in one rename.
+     */
+    static void writeFile(File file, PlayerServerMap entries) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            writeEntries(writer, entries);
+        }
+        replaceFile(tempFile, file);
+    }
+
+    /**
+     * Write every player a cursor returns to a file in data.yml format, one player at a time,
+     * so the players are never all held in memory.
+     */
+    static void writeFile(File file, StorageCursor cursor) throws Exception {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            boolean empty = true;
+            while (cursor.next()) {
+                writeEntry(writer, cursor.playerUuid(), cursor.serverName());
+                empty = false;
+            }
+            if (empty) {
+                writer.write("{}\n");
+            }
+        }
+        replaceFile(tempFile, file);
+    }
+
+    private static void replaceFile(File tempFile, File file) throws IOException {
+        // Atomic rename - on Windows, we need to delete target first
+        if (file.exists()) {
+            file.delete();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Failed to rename temporary file to " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Stream the map straight to the writer as a block-style YAML mapping.
+     * This avoids building a second copy of the whole map just to hand it to SnakeYAML.
+     */
+    private static void writeEntries(Writer writer, PlayerServerMap entries) throws IOException {
+        if (entries.isEmpty()) {
+            writer.write("{}\n");
+            return;
+        }
+        try {
+            entries.forEach((playerUuid, serverName) -> {
+                try {
+                    writeEntry(writer, playerUuid, serverName);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeEntry(Writer writer, UUID playerUuid, String serverName) throws IOException {
+        writer.write(playerUuid.toString());
+        writer.write(": ");
+        writeQuoted(writer, serverName);
+        writer.write('\n');
+    }
+
+    /**
+     * Write a value as a double-quoted YAML scalar, so any server name round-trips safely.
+     */
+    private static void writeQuoted(Writer writer, String value) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\x%02x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+
     /**
      * Get the data file for this backend.
      * Useful for migration purposes.
@@ -135,6 +597,43 @@ public class YAMLStorageBackend implements StorageBackend {
      * @return Map of player UUID to server name
      */
     public Map<UUID, String> getAllData() {
-        return new ConcurrentHashMap<>(lastServerMap);
+        Map<UUID, String> data = new ConcurrentHashMap<>();
+        lastServerMap.forEach(data::put);
+        return data;
+    }
+
+    @Override
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", lastServerMap.size());
+        stats.put("loading", !loadFuture.isDone());
+        stats.put("load_ms", loadMillis);
+        stats.put("write_behind", flushExecutor != null);
+        stats.put("pending_writes", pendingWrites.get());
+        stats.put("flushes", flushCount.get());
+        stats.put("coalesced_writes", coalescedWrites.get());
+        stats.put("last_flush_coalesced", lastFlushCoalesced);
+        return stats;
+    }
+
+    /**
+     * Get the number of background flushes performed in write-behind mode.
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Get the total number of writes that were persisted by background flushes.
+     */
+    public long getCoalescedWriteCount() {
+        return coalescedWrites.get();
+    }
+
+    /**
+     * Get the number of writes persisted by the most recent flush.
+     */
+    public int getLastFlushCoalesced() {
+        return lastFlushCoalesced;
     }
 }
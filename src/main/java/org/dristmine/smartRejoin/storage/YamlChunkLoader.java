@@ -0,0 +1,270 @@
+package org.dristmine.smartRejoin.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads a player data file written by {@link YAMLStorageBackend} in parallel chunks.
+ * <p>
+ * SmartRejoin always writes one {@code uuid: "server"} line per player, so the file can be cut at
+ * line breaks and each chunk parsed on its own thread, without a YAML parser. Files in any other
+ * layout, such as hand-edited ones, are reported so the caller can read them with SnakeYAML instead.
+ */
+final class YamlChunkLoader {
+
+    // Smaller files are not worth splitting
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int UUID_LENGTH = 36;
+    // uuid, colon, space, and the two quotes around the server name
+    private static final int MIN_LINE_LENGTH = UUID_LENGTH + 4;
+    private static final int NOT_CANONICAL = -1;
+
+    private YamlChunkLoader() {
+    }
+
+    /**
+     * Add every player of the file to the map. Players already in the map keep their server, since
+     * it was written while the file was loading and is newer.
+     * @param parallelism Number of threads to parse with
+     * @return The number of lines read, or -1 if the file is not in the layout SmartRejoin writes.
+     *         Players read before that was noticed stay in the map.
+     */
+    static int load(File file, PlayerServerMap target, int parallelism) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int chunks = (int) Math.max(1, Math.min(parallelism * 4L, size / MIN_CHUNK_SIZE));
+            if (chunks == 1) {
+                return parseRange(channel, 0, size, target, new AtomicBoolean());
+            }
+
+            // Start each chunk at the beginning of a line
+            long[] bounds = new long[chunks + 1];
+            bounds[chunks] = size;
+            for (int i = 1; i < chunks; i++) {
+                bounds[i] = Math.max(bounds[i - 1], nextLineStart(channel, size * i / chunks, size));
+            }
+
+            // Positional reads do not share a file pointer, so all threads read through one channel.
+            // The threads are never interrupted, since that would close the channel.
+            AtomicBoolean abort = new AtomicBoolean();
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, chunks), runnable -> {
+                Thread thread = new Thread(runnable, "SmartRejoin-YAML-Loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<Integer>> results = new ArrayList<>(chunks);
+                for (int i = 0; i < chunks; i++) {
+                    long start = bounds[i];
+                    long end = bounds[i + 1];
+                    results.add(executor.submit(() -> parseRange(channel, start, end, target, abort)));
+                }
+
+                int count = 0;
+                for (Future<Integer> result : results) {
+                    int chunkCount = result.get();
+                    if (chunkCount == NOT_CANONICAL) {
+                        abort.set(true);
+                        count = NOT_CANONICAL;
+                    } else if (count != NOT_CANONICAL) {
+                        count += chunkCount;
+                    }
+                }
+                return count;
+            } catch (InterruptedException e) {
+                abort.set(true);
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + file.getName(), e);
+            } catch (ExecutionException e) {
+                abort.set(true);
+                throw e.getCause() instanceof IOException io ? io : new IOException("Failed to load " + file.getName(), e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Find the first line that starts at or after a position.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long offset = position - 1;
+        while (offset < size) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parse the lines between two positions, reading a block at a time.
+     */
+    private static int parseRange(FileChannel channel, long start, long end, PlayerServerMap target, AtomicBoolean abort) throws IOException {
+        byte[] block = new byte[(int) Math.min(BLOCK_SIZE, Math.max(1, end - start))];
+        int filled = 0;
+        long position = start;
+        int count = 0;
+
+        while (true) {
+            if (abort.get()) {
+                return NOT_CANONICAL;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(block, filled, (int) Math.min(block.length - filled, end - position));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position() - filled) < 0) {
+                    break;
+                }
+            }
+            int read = buffer.position() - filled;
+            position += read;
+            filled += read;
+            boolean last = position >= end || read == 0;
+
+            int lineStart = 0;
+            for (int i = 0; i < filled; i++) {
+                if (block[i] == '\n') {
+                    if (!parseLine(block, lineStart, i, target)) {
+                        return NOT_CANONICAL;
+                    }
+                    count++;
+                    lineStart = i + 1;
+                }
+            }
+
+            if (last) {
+                // The file may not end with a line break
+                if (lineStart < filled) {
+                    if (!parseLine(block, lineStart, filled, target)) {
+                        return NOT_CANONICAL;
+                    }
+                    count++;
+                }
+                return count;
+            }
+            if (lineStart == 0 && filled == block.length) {
+                // No line fits in a block
+                return NOT_CANONICAL;
+            }
+            System.arraycopy(block, lineStart, block, 0, filled - lineStart);
+            filled -= lineStart;
+        }
+    }
+
+    /**
+     * Parse one {@code uuid: "server"} line, the exact form {@link YAMLStorageBackend} writes.
+     * @return false if the line has any other form
+     */
+    private static boolean parseLine(byte[] line, int start, int end, PlayerServerMap target) {
+        if (end - start < MIN_LINE_LENGTH || line[start + UUID_LENGTH] != ':' || line[start + UUID_LENGTH + 1] != ' '
+                || line[start + UUID_LENGTH + 2] != '"' || line[end - 1] != '"') {
+            return false;
+        }
+        UUID playerUuid = parseUuid(line, start);
+        if (playerUuid == null) {
+            return false;
+        }
+        String serverName = parseQuoted(line, start + UUID_LENGTH + 3, end - 1);
+        if (serverName == null) {
+            return false;
+        }
+        target.putIfAbsent(playerUuid, serverName);
+        return true;
+    }
+
+    private static UUID parseUuid(byte[] text, int start) {
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            byte c = text[start + i];
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return null;
+            }
+            if (i < 18) {
+                msb = (msb << 4) | digit;
+            } else {
+                lsb = (lsb << 4) | digit;
+            }
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Undo the escapes of {@link YAMLStorageBackend}'s double-quoted server names.
+     * @return The server name, or null if it holds anything SmartRejoin does not write
+     */
+    private static String parseQuoted(byte[] text, int start, int end) {
+        boolean plain = true;
+        for (int i = start; i < end; i++) {
+            if (text[i] == '\\' || text[i] == '"' || (text[i] >= 0 && text[i] < 0x20)) {
+                plain = false;
+                break;
+            }
+        }
+        if (plain) {
+            // Most server names are plain ASCII, and UTF-8 decoding handles the rest
+            return new String(text, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            byte c = text[i];
+            if (c == '"' || (c >= 0 && c < 0x20)) {
+                return null;
+            }
+            if (c != '\\') {
+                bytes[length++] = c;
+                continue;
+            }
+            if (i + 1 >= end) {
+                return null;
+            }
+            byte escaped = text[++i];
+            if (escaped == '"' || escaped == '\\') {
+                bytes[length++] = escaped;
+            } else if (escaped == 'x' && i + 2 < end) {
+                int high = Character.digit(text[i + 1], 16);
+                int low = Character.digit(text[i + 2], 16);
+                // Only control characters are written as \x escapes
+                if (high < 0 || low < 0 || high > 1) {
+                    return null;
+                }
+                bytes[length++] = (byte) (high << 4 | low);
+                i += 2;
+            } else {
+                return null;
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+}